@@ -0,0 +1,45 @@
+package com.example.nagoyameshi.admission;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+// 受付制御の設定
+// 分類ごとに同時実行数・待ち行列の長さ・待ち時間の上限を持ち、互いの混雑に巻き込まれないようにする
+// 優先度の低い画面は同時実行数を小さくして、コネクションプール（最大5）を使い切らないようにする
+@Configuration
+public class AdmissionConfig {
+
+    // 画像の配信（ImageServingFilter）の後、Spring Securityのフィルターより前に置く
+    @Bean
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlFilter(
+            PoolSaturation poolSaturation,
+            @Value("${nagoyameshi.admission.enabled:true}") boolean enabled,
+            @Value("${nagoyameshi.admission.critical.max-concurrent:40}") int criticalMaxConcurrent,
+            @Value("${nagoyameshi.admission.critical.max-queue:400}") int criticalMaxQueue,
+            @Value("${nagoyameshi.admission.critical.max-wait-ms:5000}") long criticalMaxWaitMillis,
+            @Value("${nagoyameshi.admission.normal.max-concurrent:40}") int normalMaxConcurrent,
+            @Value("${nagoyameshi.admission.normal.max-queue:200}") int normalMaxQueue,
+            @Value("${nagoyameshi.admission.normal.max-wait-ms:3000}") long normalMaxWaitMillis,
+            @Value("${nagoyameshi.admission.low.max-concurrent:2}") int lowMaxConcurrent,
+            @Value("${nagoyameshi.admission.low.max-queue:4}") int lowMaxQueue,
+            @Value("${nagoyameshi.admission.low.max-wait-ms:500}") long lowMaxWaitMillis,
+            @Value("${nagoyameshi.admission.pool-reserve:2}") int poolReserve,
+            @Value("${nagoyameshi.admission.acquire-wait-threshold-ms:20}") long acquireWaitThresholdMillis,
+            @Value("${nagoyameshi.admission.retry-after-seconds:5}") long retryAfterSeconds) {
+        Map<RouteClass, AdmissionLane> lanes = Map.of(
+                RouteClass.CRITICAL, new AdmissionLane(RouteClass.CRITICAL, criticalMaxConcurrent, criticalMaxQueue, criticalMaxWaitMillis),
+                RouteClass.NORMAL, new AdmissionLane(RouteClass.NORMAL, normalMaxConcurrent, normalMaxQueue, normalMaxWaitMillis),
+                RouteClass.LOW, new AdmissionLane(RouteClass.LOW, lowMaxConcurrent, lowMaxQueue, lowMaxWaitMillis));
+        FilterRegistrationBean<AdmissionControlFilter> registration = new FilterRegistrationBean<>(
+                new AdmissionControlFilter(lanes, poolSaturation, poolReserve, acquireWaitThresholdMillis, retryAfterSeconds));
+        registration.addUrlPatterns("/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 20);
+        registration.setEnabled(enabled);
+        return registration;
+    }
+}
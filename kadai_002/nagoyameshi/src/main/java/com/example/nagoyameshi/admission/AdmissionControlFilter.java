@@ -0,0 +1,95 @@
+package com.example.nagoyameshi.admission;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+// リクエストをルートの分類ごとに受け付け、混雑時は503（Retry-After付き）ですぐに断る
+// コネクションプールの取得待ちでタイムアウトするまで待たせるより、優先度の低い画面を先に断って店舗詳細・予約の応答時間を守る
+// 静的ファイルと計測値の取得（混雑時こそ必要になる）は分類せずにそのまま通す
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    private static final Pattern STATIC_PATH = Pattern.compile("^/(css|js|images|storage)/.*|^/favicon\\.ico$|^/error$|^/admin/metrics$");
+    private static final Pattern CRITICAL_PATH = Pattern.compile("^/shops/\\d+(/reservations/.*)?$");
+    private static final Pattern LOW_GET_PATH = Pattern.compile("^/admin(/.*)?$|^/shops/\\d+/reviews$");
+    private static final String MESSAGE = "ただいま混み合っています。しばらくしてから再度お試しください。";
+
+    private final Map<RouteClass, AdmissionLane> lanes;
+    private final PoolSaturation poolSaturation;
+    private final int poolReserve;
+    private final long acquireWaitThresholdMillis;
+    private final long retryAfterSeconds;
+
+    public AdmissionControlFilter(Map<RouteClass, AdmissionLane> lanes, PoolSaturation poolSaturation,
+                                  int poolReserve, long acquireWaitThresholdMillis, long retryAfterSeconds) {
+        this.lanes = new EnumMap<>(lanes);
+        this.poolSaturation = poolSaturation;
+        this.poolReserve = poolReserve;
+        this.acquireWaitThresholdMillis = acquireWaitThresholdMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (STATIC_PATH.matcher(path).matches()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        AdmissionLane lane = lanes.get(classify(request.getMethod(), path));
+
+        // 優先度の低い画面は、プールが一杯になる前（予備の接続を残した時点）で断る
+        if (lane.getRouteClass() == RouteClass.LOW && poolSaturation.isSaturated(poolReserve, acquireWaitThresholdMillis)) {
+            lane.reject();
+            reject(response);
+            return;
+        }
+        boolean admitted;
+        try {
+            admitted = lane.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            reject(response);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            lane.release();
+        }
+    }
+
+    static RouteClass classify(String method, String path) {
+        if (CRITICAL_PATH.matcher(path).matches()) {
+            return RouteClass.CRITICAL;
+        }
+        if (HttpMethod.GET.matches(method) && LOW_GET_PATH.matcher(path).matches()) {
+            return RouteClass.LOW;
+        }
+        return RouteClass.NORMAL;
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write(MESSAGE);
+    }
+
+    public Map<RouteClass, AdmissionLane> getLanes() {
+        return lanes;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.nagoyameshi.admission;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ルートの分類ごとの同時実行数と待ち行列
+// 同時実行数を超えたリクエストは待ち行列で待たせ、行列が一杯の場合と待ち時間を超えた場合は断る
+public class AdmissionLane {
+    private final RouteClass routeClass;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long maxWaitMillis;
+
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong admittedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public AdmissionLane(RouteClass routeClass, int maxConcurrent, int maxQueue, long maxWaitMillis) {
+        this.routeClass = routeClass;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+        this.permits = new Semaphore(this.maxConcurrent, true);
+    }
+
+    // 受け付けた場合はtrue（処理の後で必ずrelease()を呼ぶこと）
+    public boolean tryAcquire() throws InterruptedException {
+        if (permits.tryAcquire()) {
+            admittedCount.incrementAndGet();
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        try {
+            if (permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                admittedCount.incrementAndGet();
+                return true;
+            }
+            rejectedCount.incrementAndGet();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    // 同時実行数と待ち行列に関係なく断った場合（コネクションプールの混雑など）
+    public void reject() {
+        rejectedCount.incrementAndGet();
+    }
+
+    public RouteClass getRouteClass() {
+        return routeClass;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getInFlight() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
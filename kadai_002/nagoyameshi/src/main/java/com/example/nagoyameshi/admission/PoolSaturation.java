@@ -0,0 +1,133 @@
+package com.example.nagoyameshi.admission;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+// Hikariのコネクションプールの混雑具合（貸出中の数・取得待ちのスレッド数・取得にかかった時間）を集計する
+// HikariDataSourceの作成時にメトリクスの記録先として登録し、貸出と返却のたびに数える
+@Component
+public class PoolSaturation implements BeanPostProcessor {
+    // 取得にかかった時間の移動平均は、直近この時間内に取得があった場合だけ使う
+    private static final long RECENT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource dataSource) {
+            MetricsTrackerFactory delegate = dataSource.getMetricsTrackerFactory();
+            dataSource.setMetricsTrackerFactory((poolName, poolStats) -> {
+                Pool pool = new Pool(poolStats, delegate != null ? delegate.create(poolName, poolStats) : null);
+                pools.put(poolName, pool);
+                return pool;
+            });
+        }
+        return bean;
+    }
+
+    // 貸出中の数が（最大数 - reserve）以上、取得待ちのスレッドがある、または直近の取得に時間がかかっているプールがあればtrue
+    public boolean isSaturated(int reserve, long acquireWaitThresholdMillis) {
+        long now = System.nanoTime();
+        for (Pool pool : pools.values()) {
+            int maxConnections = pool.poolStats.getMaxConnections();
+            if (maxConnections > 0 && pool.inUse.get() >= Math.max(1, maxConnections - reserve)) {
+                return true;
+            }
+            if (pool.poolStats.getPendingThreads() > 0) {
+                return true;
+            }
+            if (now - pool.lastAcquiredAt.get() < RECENT_NANOS
+                    && TimeUnit.NANOSECONDS.toMillis(pool.averageAcquireNanos.get()) >= acquireWaitThresholdMillis) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getInUseConnections() {
+        return pools.values().stream().mapToInt(pool -> pool.inUse.get()).sum();
+    }
+
+    public int getMaxConnections() {
+        return pools.values().stream().mapToInt(pool -> pool.poolStats.getMaxConnections()).sum();
+    }
+
+    // 取得待ちのスレッド数（Hikariの集計は約1秒ごとに更新される）
+    public int getPendingThreads() {
+        return pools.values().stream().mapToInt(pool -> pool.poolStats.getPendingThreads()).sum();
+    }
+
+    public long getAverageAcquireMillis() {
+        return pools.values().stream().mapToLong(pool -> TimeUnit.NANOSECONDS.toMillis(pool.averageAcquireNanos.get())).max().orElse(0);
+    }
+
+    public long getTimeoutCount() {
+        return pools.values().stream().mapToLong(pool -> pool.timeouts.get()).sum();
+    }
+
+    private static final class Pool implements IMetricsTracker {
+        private final PoolStats poolStats;
+        private final IMetricsTracker delegate;
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicLong averageAcquireNanos = new AtomicLong();
+        private final AtomicLong lastAcquiredAt = new AtomicLong(System.nanoTime() - RECENT_NANOS);
+        private final AtomicLong timeouts = new AtomicLong();
+
+        private Pool(PoolStats poolStats, IMetricsTracker delegate) {
+            this.poolStats = poolStats;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            inUse.incrementAndGet();
+            // 直近の値ほど重く見る移動平均（重み1/4）
+            averageAcquireNanos.updateAndGet(average -> average + (elapsedAcquiredNanos - average) / 4);
+            lastAcquiredAt.set(System.nanoTime());
+            if (delegate != null) {
+                delegate.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+            }
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            inUse.updateAndGet(count -> Math.max(0, count - 1));
+            if (delegate != null) {
+                delegate.recordConnectionUsageMillis(elapsedBorrowedMillis);
+            }
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            if (delegate != null) {
+                delegate.recordConnectionCreatedMillis(connectionCreatedMillis);
+            }
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.incrementAndGet();
+            if (delegate != null) {
+                delegate.recordConnectionTimeout();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (delegate != null) {
+                delegate.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.nagoyameshi.admission;
+
+// 混雑時の扱いを決めるルートの分類
+public enum RouteClass {
+    // 店舗詳細・予約（応答時間を守る）
+    CRITICAL,
+    // 上記以外の画面
+    NORMAL,
+    // 管理画面・レビュー一覧（コネクションプールが混み始めたら先に断る）
+    LOW
+}
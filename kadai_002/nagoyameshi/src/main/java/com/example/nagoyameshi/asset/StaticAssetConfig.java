@@ -0,0 +1,70 @@
+package com.example.nagoyameshi.asset;
+
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+
+// CSS・JavaScript・サイトの画像（/css/**、/js/**、/images/**）の配信設定
+// ファイル名に内容のハッシュ値を付けたURL（style-<MD5>.css）で配信し、テンプレートの @{} のリンクもそのURLに書き換える
+// ハッシュ値付きのURLは内容が変わらないため1年間キャッシュさせ、付いていないURLは毎回ETagで確認させる
+@Configuration
+public class StaticAssetConfig implements WebMvcConfigurer {
+    // ContentVersionStrategyが付けるハッシュ値（MD5）の部分
+    public static final Pattern FINGERPRINT = Pattern.compile("-[0-9a-f]{32}(?=\\.[^./]+$)");
+
+    public static final String IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable().getHeaderValue();
+    private static final String REVALIDATE = CacheControl.noCache().cachePublic().getHeaderValue();
+
+    private final StaticAssetPrecompressor staticAssetPrecompressor;
+
+    public StaticAssetConfig(StaticAssetPrecompressor staticAssetPrecompressor) {
+        this.staticAssetPrecompressor = staticAssetPrecompressor;
+    }
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        for (String name : StaticAssetPrecompressor.DIRECTORIES) {
+            registry.addResourceHandler("/" + name + "/**")
+                    .addResourceLocations(staticAssetPrecompressor.getDirectory().resolve(name).toUri().toString(), "classpath:/static/" + name + "/")
+                    .resourceChain(true)
+                    .addResolver(new EncodedResourceResolver())
+                    .addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"));
+        }
+        registry.addResourceHandler("/images/**")
+                .addResourceLocations("classpath:/static/images/")
+                .resourceChain(true)
+                .addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"));
+    }
+
+    // Spring Securityは Cache-Control が未設定のレスポンスにだけキャッシュ禁止のヘッダーを付けるため、先に設定しておく
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, FINGERPRINT.matcher(request.getRequestURI()).find() ? IMMUTABLE : REVALIDATE);
+                return true;
+            }
+        }).addPathPatterns("/css/**", "/js/**", "/images/**");
+    }
+
+    // テンプレートの @{/css/style.css} などをハッシュ値付きのURLに書き換える
+    @Bean
+    public ResourceUrlEncodingFilter resourceUrlEncodingFilter() {
+        return new ResourceUrlEncodingFilter();
+    }
+}
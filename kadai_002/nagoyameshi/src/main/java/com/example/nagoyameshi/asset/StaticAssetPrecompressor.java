@@ -0,0 +1,101 @@
+package com.example.nagoyameshi.asset;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+// CSS・JavaScriptをgzipで圧縮したファイル（.gz）を用意する
+// クラスパスの static/css・static/js を一時ディレクトリに書き出し、圧縮した方が小さいファイルは隣に .gz を作る
+// 配信時はEncodedResourceResolverがブラウザのAccept-Encodingに合わせて .gz を選ぶ（リクエストごとの圧縮は行わない）
+@Component
+public class StaticAssetPrecompressor {
+    private static final Logger logger = LoggerFactory.getLogger(StaticAssetPrecompressor.class);
+
+    public static final List<String> DIRECTORIES = List.of("css", "js");
+    private static final Set<String> EXTENSIONS = Set.of("css", "js", "svg", "json", "txt");
+
+    private final Path directory;
+
+    public StaticAssetPrecompressor() throws IOException {
+        this.directory = Files.createTempDirectory("nagoyameshi-assets-");
+        int compressed = 0;
+        long originalBytes = 0;
+        long compressedBytes = 0;
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        for (String name : DIRECTORIES) {
+            String location = "/static/" + name + "/";
+            for (Resource resource : resolver.getResources("classpath:" + location + "**")) {
+                String url = resource.getURL().toString();
+                if (url.endsWith("/") || !resource.isReadable()) {
+                    continue;
+                }
+                Path target = directory.resolve(name).resolve(url.substring(url.lastIndexOf(location) + location.length())).normalize();
+                if (!target.startsWith(directory)) {
+                    continue;
+                }
+                Files.createDirectories(target.getParent());
+                try (InputStream inputStream = resource.getInputStream()) {
+                    Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (EXTENSIONS.contains(extensionOf(target))) {
+                    Path gzip = target.resolveSibling(target.getFileName() + ".gz");
+                    if (compress(target, gzip)) {
+                        compressed++;
+                        originalBytes += Files.size(target);
+                        compressedBytes += Files.size(gzip);
+                    }
+                }
+            }
+        }
+        logger.info("静的ファイルを圧縮しました（{}件、{}バイト → {}バイト）", compressed, originalBytes, compressedBytes);
+    }
+
+    // 書き出したディレクトリ（css・jsのサブディレクトリを含む）
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // 圧縮しても小さくならない場合は .gz を残さない
+    private boolean compress(Path source, Path gzip) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(source);
+             OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(gzip)) {
+                 {
+                     def.setLevel(Deflater.BEST_COMPRESSION);
+                 }
+             }) {
+            inputStream.transferTo(outputStream);
+        }
+        if (Files.size(gzip) >= Files.size(source)) {
+            Files.delete(gzip);
+            return false;
+        }
+        return true;
+    }
+
+    private static String extensionOf(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    @PreDestroy
+    public void delete() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+}
@@ -64,7 +64,7 @@ public class AdminCategoryController {
         }
 
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
         return "admin/categories/index";
@@ -108,7 +108,7 @@ public class AdminCategoryController {
         List<Shop> shopList = shopRepository.findByCategoryId(id);
 
         if (shopList.isEmpty()) {
-            categoryRepository.deleteById(id);
+            categoryService.deleteCategoryById(id);
             redirectAttributes.addFlashAttribute("successMessage", "カテゴリを削除しました。");
         } else {
             redirectAttributes.addFlashAttribute("errorMessage", "そのカテゴリは店舗が登録されているため削除できません。");
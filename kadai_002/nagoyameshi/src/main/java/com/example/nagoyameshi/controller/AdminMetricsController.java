@@ -0,0 +1,35 @@
+package com.example.nagoyameshi.controller;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import com.example.nagoyameshi.metrics.Metrics;
+
+// 計測値をPrometheusのテキスト形式で返す（管理者のみ）
+@Controller
+@RequestMapping("/admin/metrics")
+public class AdminMetricsController {
+    private final Metrics metrics;
+
+    public AdminMetricsController(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @GetMapping
+    public void scrape(HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+        metrics.scrape(writer);
+        writer.flush();
+    }
+}
@@ -22,6 +22,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import com.example.nagoyameshi.dto.ShopListItem;
 import com.example.nagoyameshi.entity.Shop;
 import com.example.nagoyameshi.form.ShopEditForm;
 import com.example.nagoyameshi.form.ShopRegisterForm;
@@ -34,6 +35,8 @@ import com.example.nagoyameshi.service.ShopService;
 @Controller
 @RequestMapping("/admin/shops")
 public class AdminShopController {
+    private static final String IMAGE_FILE_ERROR_MESSAGE = "店舗画像はJPEG・PNG・GIF形式のファイルを選択してください。";
+
     private final ShopRepository shopRepository;   
     private final ShopService shopService;
     private final CategoryService categoryService;
@@ -50,19 +53,19 @@ public class AdminShopController {
                         @RequestParam(name = "keyword", required = false) String keyword,
                         @AuthenticationPrincipal UserDetailsImpl userDetailsImpl)
     {
-        Page<Shop> shopPage;
+        Page<ShopListItem> shopPage;
 
         if (keyword != null && !keyword.isEmpty()) {
             shopPage = shopRepository.findByNameLike("%" + keyword + "%", pageable);                
         } else {
-            shopPage = shopRepository.findAll(pageable);
+            shopPage = shopRepository.findAllListItems(pageable);
         }  
 
         model.addAttribute("shopPage", shopPage);   
         model.addAttribute("keyword", keyword);
 
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
         return "admin/shops/index";
@@ -77,7 +80,7 @@ public class AdminShopController {
         model.addAttribute("shop", shop);
 
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
         return "admin/shops/show";
@@ -91,7 +94,7 @@ public class AdminShopController {
         model.addAttribute("timeOptions", generateTimeOptions());
         
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
         
         return "admin/shops/register";
@@ -99,6 +102,10 @@ public class AdminShopController {
     
     @PostMapping("/create")
     public String create(@ModelAttribute @Validated ShopRegisterForm shopRegisterForm, BindingResult bindingResult, RedirectAttributes redirectAttributes, Model model) {        
+        if (!shopService.isSupportedImageFile(shopRegisterForm.getImageFile())) {
+            bindingResult.addError(new FieldError(bindingResult.getObjectName(), "imageFile", IMAGE_FILE_ERROR_MESSAGE));
+        }
+
         if (bindingResult.hasErrors()) {
         	model.addAttribute("categories", categoryService.getAllCategories());
         	model.addAttribute("holidays", generateHolidayOptions());
@@ -158,7 +165,7 @@ public class AdminShopController {
         model.addAttribute("timeOptions", generateTimeOptions());
 
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
         return "admin/shops/edit";
@@ -175,6 +182,10 @@ public class AdminShopController {
 
         Shop shop = shopRepository.getReferenceById(id);
 
+        if (!shopService.isSupportedImageFile(shopEditForm.getImageFile())) {
+            bindingResult.addError(new FieldError(bindingResult.getObjectName(), "imageFile", IMAGE_FILE_ERROR_MESSAGE));
+        }
+
         if (bindingResult.hasErrors()) {
             model.addAttribute("shop", shop); 
             model.addAttribute("categories", categoryService.getAllCategories());
@@ -182,7 +193,7 @@ public class AdminShopController {
         	model.addAttribute("holidays", generateHolidayOptions());
 
             if (userDetailsImpl != null) {
-                model.addAttribute("userName", userDetailsImpl.getUser().getName());
+                model.addAttribute("userName", userDetailsImpl.getName());
             }
 
             return "admin/shops/edit";
@@ -203,7 +214,7 @@ public class AdminShopController {
         	model.addAttribute("holidays", generateHolidayOptions());
 
             if (userDetailsImpl != null) {
-                model.addAttribute("userName", userDetailsImpl.getUser().getName());
+                model.addAttribute("userName", userDetailsImpl.getName());
             }
 
             return "admin/shops/edit";
@@ -45,7 +45,7 @@ public class AdminUserController {
         model.addAttribute("keyword", keyword);
 
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
         return "admin/users/index";
@@ -69,7 +69,7 @@ public class AdminUserController {
         model.addAttribute("user", user);
 
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
         return "admin/users/show";
@@ -37,7 +37,7 @@ public class AuthController {
     public String login(@AuthenticationPrincipal com.example.nagoyameshi.security.UserDetailsImpl userDetailsImpl,
                         Model model) {
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
         return "auth/login";
     }
@@ -49,7 +49,7 @@ public class AuthController {
         model.addAttribute("signupForm", new SignupForm());
 
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
         return "auth/signup";
@@ -104,7 +104,7 @@ public class AuthController {
         }
 
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
         return "auth/verify";         
@@ -14,9 +14,9 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import com.example.nagoyameshi.entity.Favorite;
-import com.example.nagoyameshi.entity.User;
 import com.example.nagoyameshi.security.UserDetailsImpl;
 import com.example.nagoyameshi.service.FavoriteService;
+import com.example.nagoyameshi.sql.StatementBudget;
 
 @Controller
 @RequestMapping("/favorites")
@@ -29,16 +29,17 @@ public class FavoriteController {
     }
 	
 //	お気に入り一覧にアクセスされたときに表示する
+    // お気に入りと店舗（カテゴリを含む）は1回の問い合わせで読み込む
+    @StatementBudget(4)
     @GetMapping
     public String list(@AuthenticationPrincipal UserDetailsImpl userDetailsImpl,
                        @PageableDefault(page = 0, size = 10, sort = "id", direction = Direction.ASC) Pageable pageable,
                        Model model) {
-        Integer userId = userDetailsImpl.getUser().getId();
+        Integer userId = userDetailsImpl.getUserId();
         Page<Favorite> favoritePage = favoriteService.getFavoritesByUserWithShop(userId, pageable);
         
         if (userDetailsImpl != null) {
-    	    User user = userDetailsImpl.getUser();
-    	    String userName = user.getName();
+    	    String userName = userDetailsImpl.getName();
     	    model.addAttribute("userName", userName);
     	}
         
@@ -51,7 +52,7 @@ public class FavoriteController {
     public String addFavorite(@RequestParam("shopId") Integer shopId,
                                @AuthenticationPrincipal UserDetailsImpl userDetails,
                                RedirectAttributes redirectAttributes) {
-        favoriteService.addFavorite(userDetails.getUser().getId(), shopId);
+        favoriteService.addFavorite(userDetails.getUserId(), shopId);
         return "redirect:/shops/" + shopId;
     }
     
@@ -60,7 +61,7 @@ public class FavoriteController {
     public String removeFavorite(@RequestParam("shopId") Integer shopId,
                                   @AuthenticationPrincipal UserDetailsImpl userDetails,
                                   RedirectAttributes redirectAttributes) {
-        favoriteService.removeFavorite(userDetails.getUser().getId(), shopId);
+        favoriteService.removeFavorite(userDetails.getUserId(), shopId);
         return "redirect:/shops/" + shopId;
     }
 }
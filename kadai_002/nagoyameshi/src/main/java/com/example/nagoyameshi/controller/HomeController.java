@@ -7,34 +7,33 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 
+import com.example.nagoyameshi.dto.ShopListItem;
 import com.example.nagoyameshi.entity.Category;
-import com.example.nagoyameshi.entity.Shop;
-import com.example.nagoyameshi.entity.User;
-import com.example.nagoyameshi.repository.CategoryRepository;
 import com.example.nagoyameshi.security.UserDetailsImpl;
-import com.example.nagoyameshi.service.ShopService;
-import com.example.nagoyameshi.service.UserService;
+import com.example.nagoyameshi.service.CategoryService;
+import com.example.nagoyameshi.service.HomeShopCache;
+import com.example.nagoyameshi.sql.StatementBudget;
 
 @Controller
 public class HomeController {
-    private final ShopService shopService;
-    private final CategoryRepository categoryRepository;
-    private final UserService userService;
-
-    public HomeController(ShopService shopService,
-				            CategoryRepository categoryRepository,
-				            UserService userService) { 
-			this.shopService = shopService;
-			this.categoryRepository = categoryRepository;
-			this.userService = userService;
+    private final HomeShopCache homeShopCache;
+    private final CategoryService categoryService;
+
+    public HomeController(HomeShopCache homeShopCache,
+				            CategoryService categoryService) { 
+			this.homeShopCache = homeShopCache;
+			this.categoryService = categoryService;
 		}
     
+    // キャッシュの読み込み直後（カテゴリ・新着・ランキング）でもこの件数に収まる
+    @StatementBudget(4)
     @GetMapping("/")
     public String index(Model model, @AuthenticationPrincipal UserDetailsImpl userDetails) {
-        List<Shop> newShops = shopService.findTop10ShopsByOrderByCreatedAtDesc();
-        List<Shop> rankingShops = shopService.findTop10ShopsByAverageRating();
+        // 新着・ランキングはユーザーごとに変わらないため、キャッシュした一覧を使う
+        List<ShopListItem> newShops = homeShopCache.getNewShops();
+        List<ShopListItem> rankingShops = homeShopCache.getRankingShops();
 
-        List<Category> categories = categoryRepository.findAll();
+        List<Category> categories = categoryService.getAllCategories();
         List<String> imageCategoryNames = List.of("焼き肉", "テイクアウト", "居酒屋", "海鮮料理", "ラーメン", "和食");
 
         model.addAttribute("newShops", newShops);
@@ -42,9 +41,9 @@ public class HomeController {
         model.addAttribute("categories", categories);
         model.addAttribute("imageCategoryNames", imageCategoryNames);
 
+        // 氏名はセッションの認証情報から表示する（会員情報の変更はPrincipalRefreshFilterが反映する）
         if (userDetails != null) {
-            User user = userService.findUserByEmail(userDetails.getUsername());
-            model.addAttribute("userName", user.getName());
+            model.addAttribute("userName", userDetails.getName());
         }
 
         return "index";
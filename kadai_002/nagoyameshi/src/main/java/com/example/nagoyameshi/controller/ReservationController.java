@@ -1,14 +1,20 @@
 package com.example.nagoyameshi.controller;
 
+import java.time.YearMonth;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.DigestUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.validation.annotation.Validated;
@@ -16,8 +22,10 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import com.example.nagoyameshi.dto.AvailabilityCalendar;
 import com.example.nagoyameshi.entity.Reservation;
 import com.example.nagoyameshi.entity.Shop;
 import com.example.nagoyameshi.entity.User;
@@ -25,15 +33,23 @@ import com.example.nagoyameshi.form.ReservationInputForm;
 import com.example.nagoyameshi.security.UserDetailsImpl;
 import com.example.nagoyameshi.service.ReservationService;
 import com.example.nagoyameshi.service.ShopService;
+import com.example.nagoyameshi.service.UserService;
+import com.example.nagoyameshi.sql.StatementBudget;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Controller
 public class ReservationController {
     private final ReservationService reservationService;
     private final ShopService shopService;
+    private final ObjectMapper objectMapper;
+    private final UserService userService;
 
-    public ReservationController(ReservationService reservationService, ShopService shopService) {
+    public ReservationController(ReservationService reservationService, ShopService shopService, ObjectMapper objectMapper, UserService userService) {
         this.reservationService = reservationService;
         this.shopService = shopService;
+        this.objectMapper = objectMapper;
+        this.userService = userService;
     }
 
     // 店舗詳細＋予約フォーム表示
@@ -54,13 +70,33 @@ public class ReservationController {
         model.addAttribute("reservationInputForm", new ReservationInputForm());
 
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
         return "shops/show";
     }
 
 
+    // 予約カレンダー（1か月分の空席状況）をJSONで返す
+    // 内容のハッシュ値をETagとし、予約の登録・取消で空席状況が変わるまではブラウザのキャッシュ（304）を使わせる
+    @GetMapping("/shops/{shopId}/reservations/availability")
+    public ResponseEntity<byte[]> availability(@PathVariable(name = "shopId") Integer shopId,
+                                               @RequestParam(name = "month", required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth month) throws JsonProcessingException {
+        Optional<Shop> optionalShop = shopService.findShopById(shopId);
+        if (optionalShop.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        AvailabilityCalendar calendar = reservationService.getAvailabilityCalendar(optionalShop.get(), month != null ? month : YearMonth.now());
+        byte[] body = objectMapper.writeValueAsBytes(calendar);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(DigestUtils.md5DigestAsHex(body))
+                .body(body);
+    }
+
     // 予約登録処理
     @PostMapping("/shops/{id}/reservations/create")
     public String create(@PathVariable(name = "id") Integer id,
@@ -77,9 +113,7 @@ public class ReservationController {
         }
 
         Shop shop = optionalShop.get();
-        User user = userDetailsImpl.getUser();
-        
-        if (!"ROLE_PREMIUM".equals(user.getRole().getName())) {
+        if (!"ROLE_PREMIUM".equals(userDetailsImpl.getRoleName())) {
             redirectAttributes.addFlashAttribute("errorMessage", "この機能は有料会員限定です。");
             return "redirect:/shops/" + id;
         }
@@ -100,30 +134,40 @@ public class ReservationController {
         }
         
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
-        reservationService.createReservation(reservationInputForm, shop, userDetailsImpl.getUser());
+        // 空席の確認と確保は同時に行う（確認してから登録するまでの間に他の予約で埋まらないようにするため）
+        if (!reservationService.createReservation(reservationInputForm, shop, userService.getUserReference(userDetailsImpl.getUserId()))) {
+            bindingResult.addError(new FieldError("reservationInputForm", "numberOfPeople", "選択した日時は満席のため予約できません。"));
+            model.addAttribute("shop", shop);
+            model.addAttribute("reservationInputForm", reservationInputForm);
+            model.addAttribute("errorMessage", "予約内容に不備があります。");
+
+            return "shops/show";
+        }
         redirectAttributes.addFlashAttribute("successMessage", "予約が完了しました。");
 
         return "redirect:/reservations";
     }
 
     // 予約一覧
+    // 予約と店舗（カテゴリを含む）は1回の問い合わせで読み込む
+    @StatementBudget(4)
     @GetMapping("/reservations")
     public String index(@AuthenticationPrincipal UserDetailsImpl userDetailsImpl,
                         @PageableDefault(page = 0, size = 10, sort = "id", direction = Direction.ASC) Pageable pageable,
                         Model model) {
-        User user = userDetailsImpl.getUser();
+        User user = userService.getUserReference(userDetailsImpl.getUserId());
         Page<Reservation> reservationPage = reservationService.findReservationsByUserOrderByCreatedAtDesc(user, pageable);
         
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
 
         model.addAttribute("reservationPage", reservationPage);
         model.addAttribute("reservations", reservationPage.getContent());
-        model.addAttribute("userName", user.getName());
+        model.addAttribute("userName", userDetailsImpl.getName());
 
         return "reservations/index";
     }
@@ -140,7 +184,7 @@ public class ReservationController {
         }
 
         Reservation reservation = optionalReservation.get();
-        if (!reservation.getUser().getId().equals(userDetailsImpl.getUser().getId())) {
+        if (!reservation.getUser().getId().equals(userDetailsImpl.getUserId())) {
             redirectAttributes.addFlashAttribute("errorMessage", "不正なアクセスです。");
             return "redirect:/reservations";
         }
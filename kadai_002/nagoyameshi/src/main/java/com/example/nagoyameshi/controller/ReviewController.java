@@ -18,6 +18,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import com.example.nagoyameshi.dto.ReviewListItem;
 import com.example.nagoyameshi.entity.Review;
 import com.example.nagoyameshi.entity.Shop;
 import com.example.nagoyameshi.entity.User;
@@ -26,16 +27,19 @@ import com.example.nagoyameshi.form.ReviewRegisterForm;
 import com.example.nagoyameshi.security.UserDetailsImpl;
 import com.example.nagoyameshi.service.ReviewService;
 import com.example.nagoyameshi.service.ShopService;
+import com.example.nagoyameshi.service.UserService;
 
 @Controller
 @RequestMapping("/shops/{shopId}/reviews")
 public class ReviewController {
    private final ShopService shopService;
    private final ReviewService reviewService;
+   private final UserService userService;
 
-   public ReviewController(ShopService shopService, ReviewService reviewService) {
+   public ReviewController(ShopService shopService, ReviewService reviewService, UserService userService) {
        this.shopService = shopService;
        this.reviewService = reviewService;
+       this.userService = userService;
    }
 
    @GetMapping
@@ -54,13 +58,12 @@ public class ReviewController {
        }
        
        if (userDetailsImpl != null) {
-    	    User user = userDetailsImpl.getUser();
-    	    String userName = user.getName();
+    	    String userName = userDetailsImpl.getName();
     	    model.addAttribute("userName", userName);
     	}
 
        Shop shop = optionalShop.get();
-       Page<Review> reviewPage = reviewService.findReviewsByShopOrderByCreatedAtDesc(shop, pageable);
+       Page<ReviewListItem> reviewPage = reviewService.findReviewsByShopOrderByCreatedAtDesc(shop, pageable);
 
        model.addAttribute("shop", shop);
        model.addAttribute("reviewPage", reviewPage);
@@ -112,7 +115,7 @@ public class ReviewController {
            return "reviews/register";
        }
 
-       User user = userDetailsImpl.getUser();
+       User user = userService.getUserReference(userDetailsImpl.getUserId());
 
        reviewService.createReview(reviewRegisterForm, shop, user);
        redirectAttributes.addFlashAttribute("successMessage", "レビューを投稿しました。");
@@ -139,9 +142,7 @@ public class ReviewController {
 
        Shop shop = optionalShop.get();
        Review review = optionalReview.get();
-       User user = userDetailsImpl.getUser();
-
-       if (!review.getShop().equals(shop) || !review.getUser().equals(user)) {
+       if (!review.getShop().equals(shop) || !review.getUser().getId().equals(userDetailsImpl.getUserId())) {
            redirectAttributes.addFlashAttribute("errorMessage", "不正なアクセスです。");
 
            return "redirect:/shops/{shopId}";
@@ -177,9 +178,7 @@ public class ReviewController {
 
        Shop shop = optionalShop.get();
        Review review = optionalReview.get();
-       User user = userDetailsImpl.getUser();
-
-       if (!review.getShop().equals(shop) || !review.getUser().equals(user)) {
+       if (!review.getShop().equals(shop) || !review.getUser().getId().equals(userDetailsImpl.getUserId())) {
            redirectAttributes.addFlashAttribute("errorMessage", "不正なアクセスです。");
 
            return "redirect:/shops/{shopId}";
@@ -217,9 +216,7 @@ public class ReviewController {
 
        Shop shop = optionalShop.get();
        Review review = optionalReview.get();
-       User user = userDetailsImpl.getUser();
-
-       if (!review.getShop().equals(shop) || !review.getUser().equals(user)) {
+       if (!review.getShop().equals(shop) || !review.getUser().getId().equals(userDetailsImpl.getUserId())) {
            redirectAttributes.addFlashAttribute("errorMessage", "不正なアクセスです。");
 
            return "redirect:/shops/{shopId}";
@@ -5,6 +5,8 @@ import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -16,78 +18,147 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import com.example.nagoyameshi.dto.ReviewListItem;
+import com.example.nagoyameshi.dto.ShopListCursor;
+import com.example.nagoyameshi.dto.ShopListItem;
 import com.example.nagoyameshi.entity.Category;
-import com.example.nagoyameshi.entity.Review;
 import com.example.nagoyameshi.entity.Shop;
-import com.example.nagoyameshi.entity.User;
 import com.example.nagoyameshi.form.ReservationInputForm;
-import com.example.nagoyameshi.repository.CategoryRepository;
 import com.example.nagoyameshi.security.UserDetailsImpl;
+import com.example.nagoyameshi.service.CategoryService;
 import com.example.nagoyameshi.service.FavoriteService;
 import com.example.nagoyameshi.service.ReviewService;
 import com.example.nagoyameshi.service.ShopService;
+import com.example.nagoyameshi.service.UserService;
+import com.example.nagoyameshi.sql.StatementBudget;
 
 @Controller
 @RequestMapping("/shops")
 public class ShopController {
 
     private final ShopService shopService;
-    private final CategoryRepository categoryRepository;
+    private final CategoryService categoryService;
     private final ReviewService reviewService;
     private final FavoriteService favoriteService;
+    private final UserService userService;
 
-    public ShopController(ShopService shopService, CategoryRepository categoryRepository, ReviewService reviewService, FavoriteService favoriteService) {
+    public ShopController(ShopService shopService, CategoryService categoryService, ReviewService reviewService, FavoriteService favoriteService, UserService userService) {
         this.shopService = shopService;
-        this.categoryRepository = categoryRepository;
+        this.categoryService = categoryService;
         this.reviewService = reviewService;
         this.favoriteService = favoriteService;
+        this.userService = userService;
     }
 
+    // 一覧1ページ分と件数・カテゴリ
+    @StatementBudget(6)
     @GetMapping
     public String index(@RequestParam(name = "keyword", required = false) String keyword,
                         @RequestParam(name = "area", required = false) String area,
                         @RequestParam(name = "category", required = false) String category,
                         @RequestParam(name = "order", required = false) String order,
+                        @RequestParam(name = "cursor", required = false) String cursor,
                         @PageableDefault(page = 0, size = 6, sort = "id", direction = Direction.ASC) Pageable pageable,
+                        @AuthenticationPrincipal UserDetailsImpl userDetailsImpl,
                         Model model) {
 
-        Page<Shop> shopPage;
-
-        if (order != null && order.equals("ratingDesc")) {
-            if (keyword != null && !keyword.isEmpty()) {
-                shopPage = shopService.findShopsByNameLikeOrAddressLikeOrCategoryNameLikeOrderByAverageRatingDesc(keyword, keyword, keyword, pageable);
-            } else if (category != null && !category.isEmpty()) {
-                try {
-                    Integer categoryId = Integer.parseInt(category);
-                    shopPage = shopService.findShopsByCategoryIdOrderByAverageRatingDesc(categoryId, pageable);
-                } catch (NumberFormatException e) {
-                    shopPage = shopService.findAllShopsByOrderByAverageRatingDesc(pageable); // fallback
-                }
-            } else {
-                shopPage = shopService.findAllShopsByOrderByAverageRatingDesc(pageable);
-            }
-        } else if (keyword != null && !keyword.isEmpty()) {
-            shopPage = shopService.findShopsByNameLikeOrAddressLikeOrderByCreatedAtDesc(keyword, keyword, pageable);
-        } else if (area != null && !area.isEmpty()) {
-            shopPage = shopService.findShopsByAddressLikeOrderByCreatedAtDesc(area, pageable);
-        } else if (category != null && !category.isEmpty()) {
-            shopPage = shopService.findByCategoryNameOrderByCreatedAtDesc(category, pageable);
-        } else {
-            shopPage = shopService.findAllShopsByOrderByCreatedAtDesc(pageable);
-        }
-
         // カテゴリ一覧を取得
-        List<Category> categories = categoryRepository.findAll();
-        
+        List<Category> categories = categoryService.getAllCategories();
+
         model.addAttribute("categories", categories);
-        model.addAttribute("shopPage", shopPage);
         model.addAttribute("keyword", keyword);
+        model.addAttribute("area", area);
         model.addAttribute("category", category);
         model.addAttribute("order", order);
+        addFavoriteShopIds(model, userDetailsImpl);
+
+        // キーワード検索は検索インデックスの結果をページ番号で表示する
+        if (keyword != null && !keyword.isEmpty()) {
+            Page<ShopListItem> shopPage = "ratingDesc".equals(order)
+                    ? shopService.searchShopsOrderByAverageRatingDesc(keyword, pageable)
+                    : shopService.searchShops(keyword, pageable);
+
+            model.addAttribute("shopPage", shopPage);
+            return "shops/index";
+        }
+
+        // それ以外はキーセットページングで取得し、続きは無限スクロールで読み込む
+        Optional<ShopListCursor> after = ShopListCursor.decode(cursor);
+        Integer categoryId = addShopSlice(model, categories, area, category, order, after.orElse(ShopListCursor.FIRST), pageable.getPageSize());
+        model.addAttribute("firstPage", after.isEmpty());
+
+        // 件数は1ページ目を表示するときだけ数える
+        if (after.isEmpty()) {
+            boolean unknownCategory = category != null && !category.isEmpty() && categoryId == null;
+            model.addAttribute("totalCount", unknownCategory ? 0 : shopService.countShops(categoryId, area));
+        }
 
         return "shops/index";
     }
+
+    // 無限スクロール用に、カーソルより後ろの店舗カードだけを返す
+    @GetMapping("/more")
+    public String more(@RequestParam(name = "area", required = false) String area,
+                       @RequestParam(name = "category", required = false) String category,
+                       @RequestParam(name = "order", required = false) String order,
+                       @RequestParam(name = "cursor", required = false) String cursor,
+                       @PageableDefault(page = 0, size = 6) Pageable pageable,
+                       @AuthenticationPrincipal UserDetailsImpl userDetailsImpl,
+                       Model model) {
+
+        model.addAttribute("area", area);
+        model.addAttribute("category", category);
+        model.addAttribute("order", order);
+        addFavoriteShopIds(model, userDetailsImpl);
+        addShopSlice(model, categoryService.getAllCategories(), area, category, order,
+                ShopListCursor.decode(cursor).orElse(ShopListCursor.FIRST), pageable.getPageSize());
+
+        return "shops/index :: shopCards";
+    }
+
+    // 並び順と絞り込み条件に応じて1ページ分の店舗と次のページのカーソルをモデルに設定し、絞り込んだカテゴリのidを返す
+    private Integer addShopSlice(Model model, List<Category> categories, String area, String category, String order, ShopListCursor cursor, int size) {
+        Integer categoryId = findCategoryId(categories, category);
+        Slice<ShopListItem> shopSlice;
+
+        if (category != null && !category.isEmpty() && categoryId == null) {
+            shopSlice = new SliceImpl<>(List.of());
+        } else if ("ratingDesc".equals(order)) {
+            shopSlice = shopService.findShopsByOrderByAverageRatingDesc(categoryId, area, cursor, size);
+        } else {
+            shopSlice = shopService.findShopsByOrderByCreatedAtDesc(categoryId, area, cursor, size);
+        }
+
+        model.addAttribute("shopSlice", shopSlice);
+        if (shopSlice.hasNext()) {
+            ShopListItem last = shopSlice.getContent().get(shopSlice.getNumberOfElements() - 1);
+            model.addAttribute("nextCursor", ShopListCursor.after(last).encode());
+        }
+        return categoryId;
+    }
+
+    // ログイン中は店舗カードにお気に入り状態を表示する（キャッシュから取得するためクエリは発行しない）
+    private void addFavoriteShopIds(Model model, UserDetailsImpl userDetailsImpl) {
+        if (userDetailsImpl != null) {
+            model.addAttribute("favoriteShopIds", favoriteService.getFavoriteShopIds(userDetailsImpl.getUserId()));
+        }
+    }
+
+    // カテゴリ指定はカテゴリ名（検索フォーム）とid（URL直接指定）の両方を受け付ける
+    private Integer findCategoryId(List<Category> categories, String category) {
+        if (category == null || category.isEmpty()) {
+            return null;
+        }
+        for (Category c : categories) {
+            if (category.equals(c.getName()) || category.equals(String.valueOf(c.getId()))) {
+                return c.getId();
+            }
+        }
+        return null;
+    }
     
+    // 店舗・最新のレビュー・お気に入りの状態
+    @StatementBudget(8)
     @GetMapping("/{id}")
     public String show(@PathVariable(name = "id") Integer id,
                        @AuthenticationPrincipal UserDetailsImpl userDetailsImpl,
@@ -109,26 +180,26 @@ public class ShopController {
 
         if (userDetailsImpl != null) {
             // ログイン中：レビューを全件取得
-            List<Review> newReviews = reviewService.findTop6ReviewsByShopId(shop.getId());
+            List<ReviewListItem> newReviews = reviewService.findTop6ReviewsByShopId(shop.getId());
             model.addAttribute("newReviews", newReviews);
 
             // レビュー投稿済みかどうか確認
-            User user = userDetailsImpl.getUser();
-            hasUserAlreadyReviewed = reviewService.hasUserAlreadyReviewed(shop, user);
+            hasUserAlreadyReviewed = reviewService.hasUserAlreadyReviewed(shop, userService.getUserReference(userDetailsImpl.getUserId()));
 
-            String userName = user.getName();
+            String userName = userDetailsImpl.getName();
             model.addAttribute("userName", userName);
 
             // お気に入り状態を取得してビューに渡す
-            boolean isFavorite = favoriteService.isFavorite(user.getId(), shop.getId());
+            boolean isFavorite = favoriteService.isFavorite(userDetailsImpl.getUserId(), shop.getId());
             model.addAttribute("isFavorite", isFavorite);
 
         } else {
             // ゲスト：レビューを最新6件だけ取得
-            List<Review> guestReviews = reviewService.findTop6ReviewsByShopId(shop.getId());
+            List<ReviewListItem> guestReviews = reviewService.findTop6ReviewsByShopId(shop.getId());
             model.addAttribute("guestReviews", guestReviews);
         }
 
+        // レビュー件数は数え直さず、店舗に保存している件数を使う
         long totalReviewCount = reviewService.countReviewsByShop(shop);
         model.addAttribute("totalReviewCount", totalReviewCount);
         model.addAttribute("hasUserAlreadyReviewed", hasUserAlreadyReviewed);
@@ -9,7 +9,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 
-import com.example.nagoyameshi.service.StripeService;
+import com.example.nagoyameshi.service.StripeWebhookService;
 import com.stripe.Stripe;
 import com.stripe.exception.SignatureVerificationException;
 import com.stripe.model.Event;
@@ -18,7 +18,7 @@ import com.stripe.net.Webhook;
 @Controller
 @RequestMapping("/stripe")
 public class StripeWebhookController {
-    private final StripeService stripeService;
+    private final StripeWebhookService stripeWebhookService;
 
     @Value("${stripe.api-key}")
     private String stripeApiKey;
@@ -26,8 +26,8 @@ public class StripeWebhookController {
     @Value("${stripe.webhook-secret}")
     private String webhookSecret;
 
-    public StripeWebhookController(StripeService stripeService) {
-        this.stripeService = stripeService;
+    public StripeWebhookController(StripeWebhookService stripeWebhookService) {
+        this.stripeWebhookService = stripeWebhookService;
     }
 
     @PostMapping("/webhook")
@@ -41,9 +41,8 @@ public class StripeWebhookController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
 
-        if ("checkout.session.completed".equals(event.getType())) {
-            stripeService.processSessionCompleted(event);
-        }
+        // 受け取ったイベントを登録してすぐに応答し、会員情報の更新はStripeWebhookProcessorで行う
+        stripeWebhookService.receive(event, payload);
 
         return new ResponseEntity<>("Success", HttpStatus.OK);
     }
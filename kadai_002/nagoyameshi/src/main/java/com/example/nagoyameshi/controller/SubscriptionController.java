@@ -4,6 +4,8 @@ import java.security.Principal;
 
 import jakarta.servlet.http.HttpServletRequest;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -25,6 +27,7 @@ import com.stripe.exception.StripeException;
 @Controller
 @RequestMapping("/subscription")
 public class SubscriptionController {
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionController.class);
 
     private final StripeService stripeService;
     private final UserService userService;
@@ -39,7 +42,7 @@ public class SubscriptionController {
     public String showSubscriptionPlanPage(@AuthenticationPrincipal UserDetailsImpl userDetailsImpl, Model model) {
 
         if (userDetailsImpl != null) {
-            String userName = userDetailsImpl.getUser().getName();
+            String userName = userDetailsImpl.getName();
             model.addAttribute("userName", userName);
         }
 
@@ -48,11 +51,10 @@ public class SubscriptionController {
 
     // Stripe Checkout セッション作成 → リダイレクト
     @PostMapping("/create-session")
-    public String createStripeSession(@AuthenticationPrincipal UserDetails userDetails,
+    public String createStripeSession(@AuthenticationPrincipal UserDetailsImpl userDetailsImpl,
                                       HttpServletRequest request,
                                       Model model) {
-        User user = userService.findUserByEmail(userDetails.getUsername());
-        String sessionUrl = stripeService.createStripeSession(user, request);
+        String sessionUrl = stripeService.createStripeSession(userDetailsImpl.getUserId(), request);
 
         if (sessionUrl == null) {
             model.addAttribute("error", "Stripeセッションの作成に失敗しました。");
@@ -77,7 +79,7 @@ public class SubscriptionController {
         }
 
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         } else {
             model.addAttribute("error", "ユーザー情報が見つかりません。");
         }
@@ -92,7 +94,7 @@ public class SubscriptionController {
     public String subscriptionCancel(@AuthenticationPrincipal UserDetailsImpl userDetailsImpl, Model model) {
     	
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
     	
         return "subscription/cancel";
@@ -118,7 +120,7 @@ public class SubscriptionController {
                 Object newPrincipal = newAuth.getPrincipal();
 
                 if (newPrincipal instanceof UserDetailsImpl updatedUserDetails) {
-                    model.addAttribute("userName", updatedUserDetails.getUser().getName());
+                    model.addAttribute("userName", updatedUserDetails.getName());
                 } else {
                     model.addAttribute("userName", user.getName());
                 }
@@ -132,7 +134,7 @@ public class SubscriptionController {
     @GetMapping("/edit")
     public String showSubscriptionEditPage(@AuthenticationPrincipal UserDetailsImpl userDetailsImpl, Model model) {
         if (userDetailsImpl != null) {
-            model.addAttribute("userName", userDetailsImpl.getUser().getName());
+            model.addAttribute("userName", userDetailsImpl.getName());
         }
         return "subscription/edit";
     }
@@ -140,11 +142,12 @@ public class SubscriptionController {
     @PostMapping("/customer-portal")
     public String customerPortal(@AuthenticationPrincipal UserDetailsImpl userDetailsImpl, RedirectAttributes redirectAttributes) {
         try {
-            User user = userDetailsImpl.getUser();
+            // 顧客idは認証情報に含めていないため、ここでだけ読み込む
+            User user = userService.findUserById(userDetailsImpl.getUserId()).orElseThrow();
             String portalUrl = stripeService.createCustomerPortalUrl(user);
             return "redirect:" + portalUrl;
         } catch (StripeException e) {
-            e.printStackTrace();
+            logger.error("カスタマーポータルのURLを作成できませんでした（ユーザーID {}）", userDetailsImpl.getUserId(), e);
             redirectAttributes.addFlashAttribute("error", "ポータルの表示に失敗しました。");
             return "redirect:/subscription/plan";
         }
@@ -35,7 +35,7 @@ public class UserController {
 	
     @GetMapping
     public String index(@AuthenticationPrincipal UserDetailsImpl userDetailsImpl, Model model) {
-    	User user = userRepository.findById(userDetailsImpl.getUser().getId()).orElseThrow();
+    	User user = userRepository.findById(userDetailsImpl.getUserId()).orElseThrow();
     	
 
         model.addAttribute("user", user);
@@ -46,7 +46,7 @@ public class UserController {
     
     @GetMapping("/edit")
     public String edit(@AuthenticationPrincipal UserDetailsImpl userDetailsImpl, Model model) {
-        User user = userRepository.getReferenceById(userDetailsImpl.getUser().getId());
+        User user = userRepository.getReferenceById(userDetailsImpl.getUserId());
 
         String birthdayStr = user.getBirthday() != null ? user.getBirthday().format(DateTimeFormatter.ofPattern("yyyyMMdd")) : "";
 
@@ -0,0 +1,73 @@
+package com.example.nagoyameshi.datasource;
+
+import javax.sql.DataSource;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+// レプリカの接続先（nagoyameshi.datasource.replica.jdbc-url）が設定されている場合だけ、読み書きを振り分けるデータソースを使う
+// プライマリは spring.datasource.*、レプリカは nagoyameshi.datasource.replica.*（Hikariの設定名）で設定する
+// 設定がない場合はSpring Bootが作成する1つのデータソースをそのまま使う
+@Configuration
+@ConditionalOnProperty(prefix = "nagoyameshi.datasource.replica", name = "jdbc-url")
+public class ReadWriteDataSourceConfig {
+
+    // マイグレーションはプライマリに対して行う
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("nagoyameshi.datasource.replica")
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    // Spring Bootが自動で設定するトランザクションマネージャーに、コミットのリスナーとして登録される
+    @Bean
+    public ReadYourWrites readYourWrites(@Value("${nagoyameshi.datasource.read-your-writes-ms:5000}") long stickyMillis) {
+        return new ReadYourWrites(stickyMillis);
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                                                 @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                                                 ReadYourWrites readYourWrites) {
+        return new ReadWriteRoutingDataSource(primaryDataSource, replicaDataSource, readYourWrites);
+    }
+
+    // Open Session in Viewでは1リクエストの間セッションがコネクションを持ち続けるため、最初の読み取りでレプリカを掴むと
+    // 同じリクエストの書き込みもレプリカに向かってしまう。トランザクションごとにコネクションを返し、次のトランザクションで選び直させる
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+}
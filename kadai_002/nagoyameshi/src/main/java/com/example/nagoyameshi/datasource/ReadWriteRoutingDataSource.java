@@ -0,0 +1,62 @@
+package com.example.nagoyameshi.datasource;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// 読み取り専用のトランザクション（@Transactional(readOnly = true)）をレプリカへ、それ以外をプライマリへ振り分ける
+// 振り分けはコネクションを実際に使う時点で決める必要があるため、LazyConnectionDataSourceProxyで包んで使う
+// 自分で書き込んだ直後のユーザー（ReadYourWrites）と、共有のキャッシュを読み込む処理（usePrimary）はプライマリから読む
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+    public static final String PRIMARY = "primary";
+    public static final String REPLICA = "replica";
+
+    private static final ThreadLocal<Boolean> primaryRequired = new ThreadLocal<>();
+
+    private final ReadYourWrites readYourWrites;
+    private final AtomicLong primaryCount = new AtomicLong();
+    private final AtomicLong replicaCount = new AtomicLong();
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, ReadYourWrites readYourWrites) {
+        this.readYourWrites = readYourWrites;
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    // 変更の通知を受けて読み直すキャッシュなど、レプリカの遅れで古い値を保持してはいけない読み込みに使う
+    // レプリカを使わない構成では何もしない
+    public static <T> T usePrimary(Supplier<T> supplier) {
+        if (Boolean.TRUE.equals(primaryRequired.get())) {
+            return supplier.get();
+        }
+        primaryRequired.set(Boolean.TRUE);
+        try {
+            return supplier.get();
+        } finally {
+            primaryRequired.remove();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        boolean replica = TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !Boolean.TRUE.equals(primaryRequired.get())
+                && !readYourWrites.isRecentWriter();
+        (replica ? replicaCount : primaryCount).incrementAndGet();
+        return replica ? REPLICA : PRIMARY;
+    }
+
+    public long getPrimaryCount() {
+        return primaryCount.get();
+    }
+
+    public long getReplicaCount() {
+        return replicaCount.get();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.nagoyameshi.datasource;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+import com.example.nagoyameshi.security.UserDetailsImpl;
+
+// 書き込みをコミットしたログイン中のユーザーを一定時間覚えておき、その間の読み取りをプライマリに向ける
+// レビューの投稿やお気に入りの追加の直後の画面で、レプリカに反映される前の古い内容が表示されないようにする
+// トランザクションマネージャーのリスナーとして登録し、読み取り専用でないトランザクションのコミットを受け取る
+public class ReadYourWrites implements TransactionExecutionListener {
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private final long stickyMillis;
+    // ユーザーid → プライマリから読む期限（System.currentTimeMillis()）
+    private final Map<Integer, Long> stickyUntil = new ConcurrentHashMap<>();
+
+    public ReadYourWrites(long stickyMillis) {
+        this.stickyMillis = stickyMillis;
+    }
+
+    @Override
+    public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+        if (commitFailure != null || transaction.isReadOnly()) {
+            return;
+        }
+        Integer userId = currentUserId();
+        if (userId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (stickyUntil.size() >= PURGE_THRESHOLD) {
+            stickyUntil.values().removeIf(until -> until <= now);
+        }
+        stickyUntil.put(userId, now + stickyMillis);
+    }
+
+    public boolean isRecentWriter() {
+        Integer userId = currentUserId();
+        if (userId == null) {
+            return false;
+        }
+        Long until = stickyUntil.get(userId);
+        if (until == null) {
+            return false;
+        }
+        if (until <= System.currentTimeMillis()) {
+            stickyUntil.remove(userId, until);
+            return false;
+        }
+        return true;
+    }
+
+    private static Integer currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl userDetails ? userDetails.getUserId() : null;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.nagoyameshi.dto;
+
+import java.util.List;
+
+// 予約カレンダー（1か月分の空席状況）
+// 日ごとのseatsLeftは、firstTimeからslotMinutes分刻みの各時刻に予約した場合の残席数（定休日・予約できない日は空配列）
+public record AvailabilityCalendar(String month, int capacity, String firstTime, int slotMinutes, List<Day> days) {
+
+    public record Day(String date, boolean closed, int[] seatsLeft) {
+    }
+}
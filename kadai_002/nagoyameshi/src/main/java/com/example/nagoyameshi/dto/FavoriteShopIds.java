@@ -0,0 +1,52 @@
+package com.example.nagoyameshi.dto;
+
+import java.util.Arrays;
+
+// ユーザーがお気に入り登録している店舗idの集合
+// 昇順に並べたint配列で保持し、二分探索で判定する（変更時は配列を作り直すため、共有しても安全）
+public final class FavoriteShopIds {
+    public static final FavoriteShopIds EMPTY = new FavoriteShopIds(new int[0]);
+
+    private final int[] shopIds;
+
+    private FavoriteShopIds(int[] sortedShopIds) {
+        this.shopIds = sortedShopIds;
+    }
+
+    public static FavoriteShopIds of(int[] shopIds) {
+        int[] sorted = Arrays.stream(shopIds).sorted().distinct().toArray();
+        return new FavoriteShopIds(sorted);
+    }
+
+    public boolean contains(Integer shopId) {
+        return shopId != null && Arrays.binarySearch(shopIds, shopId) >= 0;
+    }
+
+    public int size() {
+        return shopIds.length;
+    }
+
+    public FavoriteShopIds with(int shopId) {
+        int index = Arrays.binarySearch(shopIds, shopId);
+        if (index >= 0) {
+            return this;
+        }
+        int insertAt = -index - 1;
+        int[] added = new int[shopIds.length + 1];
+        System.arraycopy(shopIds, 0, added, 0, insertAt);
+        added[insertAt] = shopId;
+        System.arraycopy(shopIds, insertAt, added, insertAt + 1, shopIds.length - insertAt);
+        return new FavoriteShopIds(added);
+    }
+
+    public FavoriteShopIds without(int shopId) {
+        int index = Arrays.binarySearch(shopIds, shopId);
+        if (index < 0) {
+            return this;
+        }
+        int[] removed = new int[shopIds.length - 1];
+        System.arraycopy(shopIds, 0, removed, 0, index);
+        System.arraycopy(shopIds, index + 1, removed, index, shopIds.length - index - 1);
+        return new FavoriteShopIds(removed);
+    }
+}
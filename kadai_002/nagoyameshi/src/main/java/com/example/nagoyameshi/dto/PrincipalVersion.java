@@ -0,0 +1,9 @@
+package com.example.nagoyameshi.dto;
+
+// 会員ごとの認証情報の版番号
+// PrincipalVersionsが最近変更された会員の版番号をまとめて読み直すときに使う
+public interface PrincipalVersion {
+    Integer getId();
+
+    Long getPrincipalVersion();
+}
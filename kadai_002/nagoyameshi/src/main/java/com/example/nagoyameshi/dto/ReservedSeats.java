@@ -0,0 +1,14 @@
+package com.example.nagoyameshi.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// 店舗・日付ごとの予約人数の集計結果（予約日・予約時刻ごとの合計人数）
+// SeatAvailabilityが空席数の配列を作るときに使う
+public interface ReservedSeats {
+    LocalDate getReservationDate();
+
+    LocalTime getReservationTime();
+
+    Long getNumberOfPeople();
+}
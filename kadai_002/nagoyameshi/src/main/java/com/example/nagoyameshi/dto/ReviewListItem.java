@@ -0,0 +1,19 @@
+package com.example.nagoyameshi.dto;
+
+import java.sql.Timestamp;
+
+// 店舗詳細・レビュー一覧の表示用の射影
+// Reviewエンティティ（と関連する店舗・ユーザー）を読み込まず、表示する列だけを1回のクエリで取得する
+public interface ReviewListItem {
+    Integer getId();
+
+    Integer getRating();
+
+    String getComment();
+
+    Integer getUserId();
+
+    String getUserName();
+
+    Timestamp getCreatedAt();
+}
@@ -0,0 +1,43 @@
+package com.example.nagoyameshi.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Optional;
+
+// 店舗一覧のキーセットページング用カーソル
+// 直前のページ末尾の店舗の並び替えキー（作成日時・平均評価）とidを保持し、画面にはBase64で符号化した文字列として渡す
+public record ShopListCursor(Timestamp createdAt, double averageRating, int id) {
+
+    // 1ページ目の取得に使う（すべての店舗がこの位置より後ろになる）
+    public static final ShopListCursor FIRST = new ShopListCursor(Timestamp.valueOf("9999-12-31 23:59:59"), Double.MAX_VALUE, Integer.MAX_VALUE);
+
+    private static final String SEPARATOR = "|";
+
+    public static ShopListCursor after(ShopListItem last) {
+        double averageRating = last.getAverageRating() != null ? last.getAverageRating() : 0.0;
+        return new ShopListCursor(last.getCreatedAt(), averageRating, last.getId());
+    }
+
+    public String encode() {
+        String value = createdAt + SEPARATOR + averageRating + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // 不正な値の場合は空を返す（呼び出し側で1ページ目として扱う）
+    public static Optional<ShopListCursor> decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = value.split("\\" + SEPARATOR);
+            if (parts.length != 3) {
+                return Optional.empty();
+            }
+            return Optional.of(new ShopListCursor(Timestamp.valueOf(parts[0]), Double.parseDouble(parts[1]), Integer.parseInt(parts[2])));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
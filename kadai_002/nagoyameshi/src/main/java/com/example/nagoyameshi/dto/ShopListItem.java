@@ -0,0 +1,35 @@
+package com.example.nagoyameshi.dto;
+
+import java.sql.Timestamp;
+
+// 店舗一覧・トップページ・管理画面の一覧表示用の射影
+// Shopエンティティを読み込まず、1ページ分の行だけを1回のクエリで取得する
+public interface ShopListItem {
+    Integer getId();
+
+    String getName();
+
+    String getImageName();
+
+    String getCategoryName();
+
+    String getDescription();
+
+    String getPostalCode();
+
+    String getAddress();
+
+    String getPhoneNumber();
+
+    Double getAverageRating();
+
+    Integer getReviewCount();
+
+    Timestamp getCreatedAt();
+
+    // 星マーク表示用に平均評価を四捨五入する
+    default int getRoundedAverageRating() {
+        if (getAverageRating() == null) return 0;
+        return (int) Math.round(getAverageRating());
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.nagoyameshi.entity;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// 店舗・日付・10分単位の枠ごとの予約済み人数（予約の確保で定員を判定する基準）
+@Entity
+@Table(name = "seat_slots")
+@IdClass(SeatSlot.Key.class)
+@Data
+public class SeatSlot {
+    @Id
+    @Column(name = "shop_id")
+    private Integer shopId;
+
+    @Id
+    @Column(name = "reservation_date")
+    private LocalDate reservationDate;
+
+    @Id
+    @Column(name = "slot")
+    private Integer slot;
+
+    @Column(name = "reserved_seats")
+    private Integer reservedSeats;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Integer shopId;
+        private LocalDate reservationDate;
+        private Integer slot;
+    }
+}
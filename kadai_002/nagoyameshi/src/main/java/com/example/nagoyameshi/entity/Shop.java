@@ -18,12 +18,14 @@ import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
 @Entity
 @Table(name = "shops")
 @Data
 @ToString(exclude = {"reservations", "reviews"})
+@EqualsAndHashCode(exclude = {"reservations", "reviews"})
 public class Shop {
    @Id
    @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -40,6 +42,11 @@ public class Shop {
    @JoinColumn(name = "category_id")
    private Category category;
 
+   // 一覧の絞り込み用（categoryと同じ列を読み取り専用で参照する）
+   // s.category.idで絞り込むと結合したcategoriesのidとの比較になり、shopsの(category_id, ...)インデックスが使われない
+   @Column(name = "category_id", insertable = false, updatable = false)
+   private Integer categoryId;
+
    @Column(name = "description")
    private String description;
 
@@ -70,28 +77,23 @@ public class Shop {
    @Column(name = "updated_at", insertable = false, updatable = false)
    private Timestamp updatedAt;
    
-   @OneToMany(mappedBy = "shop", fetch = FetchType.EAGER, cascade = CascadeType.REMOVE)
+   // 一覧表示では読み込まない（件数や評価は ShopListItem で取得する）
+   @OneToMany(mappedBy = "shop", fetch = FetchType.LAZY, cascade = CascadeType.REMOVE)
    private List<Reservation> reservations;
    
-   @OneToMany(mappedBy = "shop", fetch = FetchType.EAGER, cascade = CascadeType.REMOVE)
+   @OneToMany(mappedBy = "shop", fetch = FetchType.LAZY, cascade = CascadeType.REMOVE)
    private List<Review> reviews;
    
-   @Column(name = "average_rating")
+   // 平均評価とレビュー件数はReviewServiceが差分更新するため、エンティティの保存では書き込まない
+   @Column(name = "average_rating", insertable = false, updatable = false)
    private Double averageRating;
    
+   @Column(name = "review_count", insertable = false, updatable = false)
+   private Integer reviewCount;
+   
    @Transient
    public int getRoundedAverageRating() {
        if (getAverageRating() == null) return 0;
        return (int) Math.round(getAverageRating());
    }
-   @Transient
-   public Double getAverageRating() {
-       if (reviews == null || reviews.isEmpty()) {
-           return 0.0;
-       }
-       return reviews.stream()
-                     .mapToInt(Review::getRating)
-                     .average()
-                     .orElse(0.0);
-   }
 }
\ No newline at end of file
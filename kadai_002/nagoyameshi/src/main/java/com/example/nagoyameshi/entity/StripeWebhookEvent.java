@@ -0,0 +1,51 @@
+package com.example.nagoyameshi.entity;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import lombok.Data;
+
+@Entity
+@Table(name = "stripe_webhook_events")
+@Data
+public class StripeWebhookEvent {
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_PROCESSED = "PROCESSED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Id
+    @Column(name = "event_id")
+    private String eventId;
+
+    @Column(name = "event_type")
+    private String eventType;
+
+    @Column(name = "event_created")
+    private LocalDateTime eventCreated;
+
+    @Column(name = "payload")
+    private String payload;
+
+    @Column(name = "status")
+    private String status;
+
+    @Column(name = "attempts")
+    private Integer attempts;
+
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Column(name = "received_at", insertable = false, updatable = false)
+    private Timestamp receivedAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+}
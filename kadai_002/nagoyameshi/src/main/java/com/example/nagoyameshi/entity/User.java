@@ -60,6 +60,14 @@ public class User {
 	@Column(name = "stripe_customer_id")
 	private String stripeCustomerId;
 	
+	// 会員情報に反映した最後のStripeのイベントの作成日時（UserRepository.acceptStripeEventで更新する）
+	@Column(name = "stripe_event_created", insertable = false, updatable = false)
+	private Long stripeEventCreated;
+	
+	// 会員情報の変更のたびにUserRepository.incrementPrincipalVersionで増やす（エンティティの保存では変更しない）
+	@Column(name = "principal_version", insertable = false, updatable = false)
+	private Long principalVersion;
+	
 	@Column(name = "created_at", insertable = false, updatable = false)
 	private Timestamp createdAt;
 	
@@ -0,0 +1,20 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import lombok.Getter;
+
+// カテゴリの登録・名前の変更・削除を通知するイベント（カテゴリ名を保持する検索インデックスなどが購読する）
+@Getter
+public class CategoryChangedEvent extends ApplicationEvent {
+    private Integer categoryId;
+    private boolean deleted;
+
+    public CategoryChangedEvent(Object source, Integer categoryId, boolean deleted) {
+        super(source);
+
+        this.categoryId = categoryId;
+        this.deleted = deleted;
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+
+@Component
+public class CategoryChangedEventPublisher {
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public CategoryChangedEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    public void publishCategorySaved(Integer categoryId) {
+        applicationEventPublisher.publishEvent(new CategoryChangedEvent(this, categoryId, false));
+    }
+
+    public void publishCategoryDeleted(Integer categoryId) {
+        applicationEventPublisher.publishEvent(new CategoryChangedEvent(this, categoryId, true));
+    }
+}
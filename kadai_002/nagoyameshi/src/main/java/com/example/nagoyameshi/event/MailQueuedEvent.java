@@ -0,0 +1,12 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEvent;
+
+// 送信するメールをアウトボックスに登録したことを通知するイベント（MailOutboxDispatcherが購読し、すぐに送信を始める）
+public class MailQueuedEvent extends ApplicationEvent {
+
+    public MailQueuedEvent(Object source) {
+        super(source);
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+
+@Component
+public class MailQueuedEventPublisher {
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public MailQueuedEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    public void publishMailQueued() {
+        applicationEventPublisher.publishEvent(new MailQueuedEvent(this));
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import lombok.Getter;
+
+// レビューの投稿・編集・削除を通知するイベント（店舗の評価を表示するキャッシュなどが購読する）
+@Getter
+public class ReviewChangedEvent extends ApplicationEvent {
+    private Integer shopId;
+
+    public ReviewChangedEvent(Object source, Integer shopId) {
+        super(source);
+
+        this.shopId = shopId;
+    }
+
+}
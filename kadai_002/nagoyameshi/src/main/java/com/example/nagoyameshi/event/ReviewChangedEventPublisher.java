@@ -0,0 +1,18 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+
+@Component
+public class ReviewChangedEventPublisher {
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public ReviewChangedEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    public void publishReviewChanged(Integer shopId) {
+        applicationEventPublisher.publishEvent(new ReviewChangedEvent(this, shopId));
+    }
+}
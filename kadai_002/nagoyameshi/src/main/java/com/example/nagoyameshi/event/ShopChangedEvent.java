@@ -0,0 +1,20 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import lombok.Getter;
+
+// 店舗の登録・更新・削除を通知するイベント（検索インデックスなどが購読する）
+@Getter
+public class ShopChangedEvent extends ApplicationEvent {
+    private Integer shopId;
+    private boolean deleted;
+
+    public ShopChangedEvent(Object source, Integer shopId, boolean deleted) {
+        super(source);
+
+        this.shopId = shopId;
+        this.deleted = deleted;
+    }
+
+}
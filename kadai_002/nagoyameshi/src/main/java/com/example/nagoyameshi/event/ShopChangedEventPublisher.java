@@ -0,0 +1,22 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+
+@Component
+public class ShopChangedEventPublisher {
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public ShopChangedEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    public void publishShopSaved(Integer shopId) {
+        applicationEventPublisher.publishEvent(new ShopChangedEvent(this, shopId, false));
+    }
+
+    public void publishShopDeleted(Integer shopId) {
+        applicationEventPublisher.publishEvent(new ShopChangedEvent(this, shopId, true));
+    }
+}
@@ -3,22 +3,21 @@ package com.example.nagoyameshi.event;
 import java.util.UUID;
 
 import org.springframework.context.event.EventListener;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Component;
 
 import com.example.nagoyameshi.entity.User;
+import com.example.nagoyameshi.service.MailOutboxService;
 import com.example.nagoyameshi.service.VerificationTokenService;
 
 
 @Component
 public class SignupEventListener {
     private final VerificationTokenService verificationTokenService;
-    private final JavaMailSender javaMailSender;
+    private final MailOutboxService mailOutboxService;
 
-    public SignupEventListener(VerificationTokenService verificationTokenService, JavaMailSender mailSender) {
+    public SignupEventListener(VerificationTokenService verificationTokenService, MailOutboxService mailOutboxService) {
         this.verificationTokenService = verificationTokenService;
-        this.javaMailSender = mailSender;
+        this.mailOutboxService = mailOutboxService;
     }
 
     @EventListener
@@ -33,11 +32,7 @@ public class SignupEventListener {
         String confirmationUrl = signupEvent.getRequestUrl() + "/verify?token=" + token;
         String message = "以下のリンクをクリックして会員登録を完了してください。";
 
-        SimpleMailMessage mailMessage = new SimpleMailMessage();
-        mailMessage.setFrom(senderAddress);
-        mailMessage.setTo(recipientAddress);
-        mailMessage.setSubject(subject);
-        mailMessage.setText(message + "\n" + confirmationUrl);
-        javaMailSender.send(mailMessage);
+        // 送信はMailOutboxDispatcherが非同期に行う（メールサーバーの応答を会員登録のリクエストで待たない）
+        mailOutboxService.enqueue(senderAddress, recipientAddress, subject, message + "\n" + confirmationUrl);
     }
 }
\ No newline at end of file
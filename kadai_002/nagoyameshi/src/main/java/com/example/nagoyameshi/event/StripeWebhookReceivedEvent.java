@@ -0,0 +1,12 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEvent;
+
+// StripeのWebhookイベントをインボックスに登録したことを通知するイベント（StripeWebhookProcessorが購読し、すぐに処理を始める）
+public class StripeWebhookReceivedEvent extends ApplicationEvent {
+
+    public StripeWebhookReceivedEvent(Object source) {
+        super(source);
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+
+@Component
+public class StripeWebhookReceivedEventPublisher {
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public StripeWebhookReceivedEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    public void publishStripeWebhookReceived() {
+        applicationEventPublisher.publishEvent(new StripeWebhookReceivedEvent(this));
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import lombok.Getter;
+
+// 会員情報（氏名・メールアドレス・ロール・有効かどうか）の変更を通知するイベント（ログイン中の認証情報を読み直させる）
+@Getter
+public class UserChangedEvent extends ApplicationEvent {
+    private Integer userId;
+
+    public UserChangedEvent(Object source, Integer userId) {
+        super(source);
+
+        this.userId = userId;
+    }
+
+}
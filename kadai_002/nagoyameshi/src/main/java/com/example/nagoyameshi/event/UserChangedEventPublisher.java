@@ -0,0 +1,18 @@
+package com.example.nagoyameshi.event;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+
+@Component
+public class UserChangedEventPublisher {
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public UserChangedEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    public void publishUserChanged(Integer userId) {
+        applicationEventPublisher.publishEvent(new UserChangedEvent(this, userId));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.nagoyameshi.metrics;
+
+import java.util.Locale;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.stereotype.Component;
+
+import com.example.nagoyameshi.admission.AdmissionControlFilter;
+import com.example.nagoyameshi.admission.AdmissionLane;
+import com.example.nagoyameshi.datasource.ReadWriteRoutingDataSource;
+import com.example.nagoyameshi.service.CategoryService;
+import com.example.nagoyameshi.task.MailOutboxDispatcher;
+import com.example.nagoyameshi.task.StripeWebhookProcessor;
+import com.example.nagoyameshi.thread.PinnedThreadMonitor;
+
+// 各コンポーネントが既に集計している値（キャッシュ・送信待ちの件数・受付制御など）を計測値として登録する
+@Component
+public class ApplicationMetrics {
+
+    public ApplicationMetrics(Metrics metrics,
+                              CategoryService categoryService,
+                              MailOutboxDispatcher mailOutboxDispatcher,
+                              StripeWebhookProcessor stripeWebhookProcessor,
+                              PinnedThreadMonitor pinnedThreadMonitor,
+                              ObjectProvider<FilterRegistrationBean<AdmissionControlFilter>> admissionControlFilter,
+                              ObjectProvider<ReadWriteRoutingDataSource> readWriteRoutingDataSource) {
+        metrics.counter("nagoyameshi_category_cache_requests", "カテゴリ一覧のキャッシュの参照回数", categoryService::getCategoryCacheHitCount, "result", "hit");
+        metrics.counter("nagoyameshi_category_cache_requests", "カテゴリ一覧のキャッシュの参照回数", categoryService::getCategoryCacheMissCount, "result", "miss");
+
+        metrics.gauge("nagoyameshi_mail_outbox_pending", "送信待ちのメールの件数", mailOutboxDispatcher::getQueueDepth);
+        metrics.gauge("nagoyameshi_mail_outbox_dead", "再送を中止したメールの件数", mailOutboxDispatcher::getDeadCount);
+        metrics.gauge("nagoyameshi_mail_outbox_oldest_pending_seconds", "最も古い送信待ちのメールの待ち時間",
+                () -> mailOutboxDispatcher.getOldestPendingAgeMillis() / 1000.0);
+        metrics.gauge("nagoyameshi_mail_delivery_latency_seconds", "直近に送信したメールの登録から送信までの時間",
+                () -> mailOutboxDispatcher.getLastDeliveryLatencyMillis() / 1000.0);
+        metrics.counter("nagoyameshi_mail_messages", "送信したメールの件数", mailOutboxDispatcher::getSentCount, "result", "sent");
+        metrics.counter("nagoyameshi_mail_messages", "送信したメールの件数", mailOutboxDispatcher::getFailedCount, "result", "failed");
+
+        metrics.gauge("nagoyameshi_stripe_webhook_pending", "処理待ちのWebhookイベントの件数", stripeWebhookProcessor::getQueueDepth);
+        metrics.gauge("nagoyameshi_stripe_webhook_dead", "再試行を中止したWebhookイベントの件数", stripeWebhookProcessor::getDeadCount);
+        metrics.counter("nagoyameshi_stripe_webhook_events", "処理したWebhookイベントの件数", stripeWebhookProcessor::getProcessedCount, "result", "processed");
+        metrics.counter("nagoyameshi_stripe_webhook_events", "処理したWebhookイベントの件数", stripeWebhookProcessor::getFailedCount, "result", "failed");
+
+        metrics.counter("nagoyameshi_virtual_thread_pinned", "仮想スレッドがキャリアスレッドを固定した回数", pinnedThreadMonitor::getPinnedCount);
+        metrics.counter("nagoyameshi_virtual_thread_pinned_seconds", "仮想スレッドがキャリアスレッドを固定した時間の合計",
+                () -> pinnedThreadMonitor.getPinnedMillis() / 1000.0);
+
+        FilterRegistrationBean<AdmissionControlFilter> registration = admissionControlFilter.getIfAvailable();
+        if (registration != null && registration.isEnabled()) {
+            for (AdmissionLane lane : registration.getFilter().getLanes().values()) {
+                String routeClass = lane.getRouteClass().name().toLowerCase(Locale.ROOT);
+                metrics.gauge("nagoyameshi_admission_in_flight", "受け付けて処理中のリクエスト数", lane::getInFlight, "class", routeClass);
+                metrics.gauge("nagoyameshi_admission_queued", "受付を待っているリクエスト数", lane::getQueued, "class", routeClass);
+                metrics.counter("nagoyameshi_admission_requests", "受付制御の結果ごとのリクエスト数", lane::getAdmittedCount, "class", routeClass, "result", "admitted");
+                metrics.counter("nagoyameshi_admission_requests", "受付制御の結果ごとのリクエスト数", lane::getRejectedCount, "class", routeClass, "result", "rejected");
+            }
+        }
+
+        ReadWriteRoutingDataSource routing = readWriteRoutingDataSource.getIfAvailable();
+        if (routing != null) {
+            metrics.counter("nagoyameshi_datasource_routes", "振り分け先ごとのコネクションの取得回数", routing::getPrimaryCount, "target", ReadWriteRoutingDataSource.PRIMARY);
+            metrics.counter("nagoyameshi_datasource_routes", "振り分け先ごとのコネクションの取得回数", routing::getReplicaCount, "target", ReadWriteRoutingDataSource.REPLICA);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.nagoyameshi.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+// Hikariのコネクションプールごとに、コネクションの取得待ち・貸出時間・タイムアウトとプールの状態を記録する
+// PoolSaturationと同じく記録先を差し替え、既に登録されている記録先にもそのまま渡す
+@Component
+public class HikariPoolMetrics implements BeanPostProcessor {
+    private final ObjectProvider<Metrics> metrics;
+
+    public HikariPoolMetrics(ObjectProvider<Metrics> metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource dataSource) {
+            MetricsTrackerFactory delegate = dataSource.getMetricsTrackerFactory();
+            dataSource.setMetricsTrackerFactory((poolName, poolStats) ->
+                    new Tracker(metrics.getObject(), poolName, poolStats, delegate != null ? delegate.create(poolName, poolStats) : null));
+        }
+        return bean;
+    }
+
+    private static final class Tracker implements IMetricsTracker {
+        private final IMetricsTracker delegate;
+        private final Timer acquire;
+        private final Timer usage;
+        private final Timer creation;
+        private final LongAdder timeouts;
+
+        private Tracker(Metrics metrics, String poolName, PoolStats poolStats, IMetricsTracker delegate) {
+            this.delegate = delegate;
+            this.acquire = metrics.timer("hikaricp_connections_acquire_seconds", "コネクションの取得にかかった時間（取得待ちを含む）", "pool", poolName);
+            this.usage = metrics.timer("hikaricp_connections_usage_seconds", "コネクションを貸し出していた時間", "pool", poolName);
+            this.creation = metrics.timer("hikaricp_connections_creation_seconds", "コネクションの作成にかかった時間", "pool", poolName);
+            this.timeouts = metrics.counter("hikaricp_connections_timeout", "コネクションを取得できずにタイムアウトした回数", "pool", poolName);
+            metrics.gauge("hikaricp_connections_active", "貸出中のコネクション数", poolStats::getActiveConnections, "pool", poolName);
+            metrics.gauge("hikaricp_connections_idle", "待機中のコネクション数", poolStats::getIdleConnections, "pool", poolName);
+            metrics.gauge("hikaricp_connections_pending", "コネクションの取得を待っているスレッド数", poolStats::getPendingThreads, "pool", poolName);
+            metrics.gauge("hikaricp_connections_max", "プールの最大コネクション数", poolStats::getMaxConnections, "pool", poolName);
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquire.record(elapsedAcquiredNanos);
+            if (delegate != null) {
+                delegate.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+            }
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usage.record(elapsedBorrowedMillis, TimeUnit.MILLISECONDS);
+            if (delegate != null) {
+                delegate.recordConnectionUsageMillis(elapsedBorrowedMillis);
+            }
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            creation.record(connectionCreatedMillis, TimeUnit.MILLISECONDS);
+            if (delegate != null) {
+                delegate.recordConnectionCreatedMillis(connectionCreatedMillis);
+            }
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+            if (delegate != null) {
+                delegate.recordConnectionTimeout();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (delegate != null) {
+                delegate.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.nagoyameshi.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+// 計測値（タイマー・カウンター・ゲージ）を名前とラベルごとに保持し、Prometheusのテキスト形式で書き出す
+// ラベルは「名前, 値, 名前, 値…」の順に渡す。値の種類が増え続けるもの（URLそのもの・ユーザーidなど）はラベルにしない
+@Component
+public class Metrics {
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), HISTOGRAM("histogram");
+
+        private final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+    }
+
+    private record Family(Type type, String help) {
+    }
+
+    private record Key(String name, List<String> labels) {
+    }
+
+    // 名前の順に書き出すため、名前ごとの種類と説明は順序付きの表で持つ
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    private final Map<Key, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<Key, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<Key, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    // 名前の末尾は単位（_seconds）とする
+    public Timer timer(String name, String help, String... labels) {
+        Key key = key(name, Type.HISTOGRAM, help, labels);
+        Timer timer = timers.get(key);
+        return timer != null ? timer : timers.computeIfAbsent(key, k -> new Timer());
+    }
+
+    // 書き出すときは名前の末尾に _total を付ける
+    public LongAdder counter(String name, String help, String... labels) {
+        Key key = key(name, Type.COUNTER, help, labels);
+        LongAdder counter = counters.get(key);
+        return counter != null ? counter : counters.computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    // 各コンポーネントが集計している累計の件数を、カウンターとして書き出す
+    public void counter(String name, String help, Supplier<? extends Number> supplier, String... labels) {
+        gauges.put(key(name, Type.COUNTER, help, labels), supplier);
+    }
+
+    // 取得のたびに現在の値を読む
+    public void gauge(String name, String help, Supplier<? extends Number> supplier, String... labels) {
+        gauges.put(key(name, Type.GAUGE, help, labels), supplier);
+    }
+
+    private Key key(String name, Type type, String help, String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("ラベルは名前と値の組で指定してください: " + name);
+        }
+        Family family = families.computeIfAbsent(name, n -> new Family(type, help));
+        if (family.type() != type) {
+            throw new IllegalArgumentException("同じ名前で別の種類の計測値は登録できません: " + name);
+        }
+        return new Key(name, List.of(labels));
+    }
+
+    // Prometheusのテキスト形式（version 0.0.4）で書き出す
+    public void scrape(Writer writer) throws IOException {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            String exposedName = family.type() == Type.COUNTER ? name + "_total" : name;
+            writer.write("# HELP " + exposedName + " " + escapeHelp(family.help()) + "\n");
+            writer.write("# TYPE " + exposedName + " " + family.type().name + "\n");
+            switch (family.type()) {
+                case HISTOGRAM -> {
+                    for (Map.Entry<Key, Timer> timer : sorted(timers, name)) {
+                        writeHistogram(writer, name, timer.getKey().labels(), timer.getValue());
+                    }
+                }
+                case COUNTER -> {
+                    for (Map.Entry<Key, LongAdder> counter : sorted(counters, name)) {
+                        writeSample(writer, exposedName, counter.getKey().labels(), counter.getValue().sum());
+                    }
+                    writeGauges(writer, exposedName, name);
+                }
+                case GAUGE -> writeGauges(writer, exposedName, name);
+            }
+        }
+    }
+
+    private void writeGauges(Writer writer, String exposedName, String name) throws IOException {
+        for (Map.Entry<Key, Supplier<? extends Number>> gauge : sorted(gauges, name)) {
+            Number value;
+            try {
+                value = gauge.getValue().get();
+            } catch (RuntimeException e) {
+                // 読み取りに失敗した値だけを省き、他の計測値は書き出す
+                continue;
+            }
+            if (value != null) {
+                writeSample(writer, exposedName, gauge.getKey().labels(), value.doubleValue());
+            }
+        }
+    }
+
+    private static void writeHistogram(Writer writer, String name, List<String> labels, Timer timer) throws IOException {
+        long[] buckets = timer.cumulativeBuckets();
+        for (int i = 0; i < buckets.length; i++) {
+            List<String> bucketLabels = new ArrayList<>(labels);
+            bucketLabels.add("le");
+            bucketLabels.add(i < Timer.BUCKETS.length ? formatValue(Timer.BUCKETS[i]) : "+Inf");
+            writeSample(writer, name + "_bucket", bucketLabels, buckets[i]);
+        }
+        writeSample(writer, name + "_sum", labels, timer.getTotalNanos() / 1_000_000_000.0);
+        // 記録中の値を読んでも _count がバケットの合計と食い違わないよう、+Infのバケットの値を使う
+        writeSample(writer, name + "_count", labels, buckets[buckets.length - 1]);
+    }
+
+    private static <V> List<Map.Entry<Key, V>> sorted(Map<Key, V> values, String name) {
+        return values.entrySet().stream()
+                .filter(entry -> entry.getKey().name().equals(name))
+                .sorted(Comparator.comparing(entry -> String.join("\u0000", entry.getKey().labels())))
+                .toList();
+    }
+
+    private static void writeSample(Writer writer, String name, List<String> labels, double value) throws IOException {
+        writer.write(name);
+        if (!labels.isEmpty()) {
+            writer.write('{');
+            for (int i = 0; i < labels.size(); i += 2) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(labels.get(i) + "=\"" + escapeLabelValue(labels.get(i + 1)) + "\"");
+            }
+            writer.write('}');
+        }
+        writer.write(' ');
+        writer.write(formatValue(value));
+        writer.write('\n');
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String escapeLabelValue(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String escapeHelp(String help) {
+        return help == null ? "" : help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
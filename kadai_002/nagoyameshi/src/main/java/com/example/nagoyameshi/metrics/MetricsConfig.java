@@ -0,0 +1,35 @@
+package com.example.nagoyameshi.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+// コントローラーの処理時間を記録するインターセプターと、ログにトレースidを付けるフィルターを登録する
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+    private final Metrics metrics;
+    private final long slowRequestMillis;
+
+    public MetricsConfig(Metrics metrics, @Value("${nagoyameshi.metrics.slow-request-ms:1000}") long slowRequestMillis) {
+        this.metrics = metrics;
+        this.slowRequestMillis = slowRequestMillis;
+    }
+
+    // 画像の配信・受付制御で断ったリクエストのログにも付けるため、最初に置く
+    @Bean
+    public FilterRegistrationBean<TraceIdFilter> traceIdFilter() {
+        FilterRegistrationBean<TraceIdFilter> registration = new FilterRegistrationBean<>(new TraceIdFilter());
+        registration.addUrlPatterns("/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RouteMetricsInterceptor(metrics, slowRequestMillis));
+    }
+}
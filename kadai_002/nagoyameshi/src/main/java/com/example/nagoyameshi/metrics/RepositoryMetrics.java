@@ -0,0 +1,39 @@
+package com.example.nagoyameshi.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener;
+import org.springframework.stereotype.Component;
+
+// リポジトリのメソッドごとに呼び出し回数と処理時間を記録する
+// Spring Dataのリポジトリを作成する前に、メソッドの呼び出しを受け取るリスナーを登録する
+@Component
+public class RepositoryMetrics implements BeanPostProcessor, RepositoryMethodInvocationListener {
+    // BeanPostProcessorの作成時に他のBeanを作らないよう、最初の呼び出しで取得する
+    private final ObjectProvider<Metrics> metrics;
+
+    public RepositoryMetrics(ObjectProvider<Metrics> metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addInvocationListener(this));
+        }
+        return bean;
+    }
+
+    @Override
+    public void afterInvocation(RepositoryMethodInvocation invocation) {
+        metrics.getObject().timer("nagoyameshi_repository_invocations_seconds", "リポジトリのメソッドの処理時間",
+                "repository", invocation.getRepositoryInterface().getSimpleName(),
+                "method", invocation.getMethod().getName(),
+                "state", invocation.getResult() != null ? invocation.getResult().getState().name().toLowerCase(Locale.ROOT) : "unknown")
+                .record(invocation.getDuration(TimeUnit.NANOSECONDS));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.nagoyameshi.metrics;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+// コントローラーのメソッドごと（HTTPメソッド・URLのパターン・ステータス）に処理時間を記録する
+// URLは /shops/{id} のようなパターンで集計し、設定した時間を超えたリクエストはログにも出す
+// フィルター（認証・受付制御）の時間は含まない。受付制御で断られたリクエストはadmissionの計測値で数える
+public class RouteMetricsInterceptor implements HandlerInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(RouteMetricsInterceptor.class);
+
+    private static final String START_ATTRIBUTE = RouteMetricsInterceptor.class.getName() + ".start";
+
+    private final Metrics metrics;
+    private final long slowRequestNanos;
+
+    public RouteMetricsInterceptor(Metrics metrics, long slowRequestMillis) {
+        this.metrics = metrics;
+        this.slowRequestNanos = slowRequestMillis * 1_000_000L;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(request.getAttribute(START_ATTRIBUTE) instanceof Long startNanos)) {
+            return;
+        }
+        request.removeAttribute(START_ATTRIBUTE);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        // 例外がそのまま投げられた場合、この時点のステータスはまだエラー画面のものになっていない
+        String status = ex != null ? "500" : Integer.toString(response.getStatus());
+
+        metrics.timer("http_server_requests_seconds", "コントローラーの処理時間",
+                "method", request.getMethod(), "uri", uri, "status", status).record(elapsedNanos);
+        if (elapsedNanos >= slowRequestNanos) {
+            logger.warn("処理に時間がかかったリクエスト: {} {}（{}、{}ms）", request.getMethod(), uri, status, elapsedNanos / 1_000_000);
+        }
+    }
+}
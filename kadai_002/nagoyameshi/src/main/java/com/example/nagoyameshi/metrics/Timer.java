@@ -0,0 +1,73 @@
+package com.example.nagoyameshi.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// 処理時間の件数・合計・分布（Prometheusのhistogram）を記録する
+// 記録はLongAdderへの加算だけで行い、累積の分布は取得時（Metrics.scrape）に計算する
+public class Timer {
+    // 上限（秒）ごとのバケット。Prometheusのクライアントライブラリの既定値と同じ
+    static final double[] BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+    private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKETS[i] * 1_000_000_000L);
+        }
+    }
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    // 最後の要素は上限なし（+Inf）
+    private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+
+    Timer() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        count.increment();
+        totalNanos.add(value);
+        int index = 0;
+        while (index < BUCKET_NANOS.length && value > BUCKET_NANOS[index]) {
+            index++;
+        }
+        buckets[index].increment();
+    }
+
+    public void record(long duration, TimeUnit unit) {
+        record(unit.toNanos(duration));
+    }
+
+    public <T> T record(Supplier<T> supplier) {
+        long startNanos = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    // 各バケットの上限以下の件数（累積）
+    long[] cumulativeBuckets() {
+        long[] cumulative = new long[buckets.length];
+        long sum = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            sum += buckets[i].sum();
+            cumulative[i] = sum;
+        }
+        return cumulative;
+    }
+}
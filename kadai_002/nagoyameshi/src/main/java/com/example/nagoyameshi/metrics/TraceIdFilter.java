@@ -0,0 +1,79 @@
+package com.example.nagoyameshi.metrics;
+
+import java.io.IOException;
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.MDC;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+// リクエストごとにトレースid・スパンidを決めてMDC（traceId・spanId）に入れ、処理中のログに出せるようにする
+// 前段のロードバランサーなどがW3Cのtraceparentヘッダーを付けていればそのトレースidを、なければX-Request-Idを引き継ぎ、どちらもなければ新しく作る
+// トレースidはX-Request-Idヘッダーで応答に返す（問い合わせを受けたときにログを探すため）
+// 外部への送信（Stripe・メール）や非同期の処理（メールの送信待ち・Webhookの処理）には引き継がない
+public class TraceIdFilter extends OncePerRequestFilter {
+    public static final String TRACE_ID = "traceId";
+    public static final String SPAN_ID = "spanId";
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+    private static final String TRACEPARENT_HEADER = "traceparent";
+    private static final Pattern TRACEPARENT = Pattern.compile("^[0-9a-f]{2}-([0-9a-f]{32})-[0-9a-f]{16}-[0-9a-f]{2}$");
+    private static final Pattern INVALID_TRACE_ID = Pattern.compile("^0+$");
+    // ログを壊さないよう、引き継ぐX-Request-Idは英数字と一部の記号で64文字までに限る
+    private static final Pattern REQUEST_ID = Pattern.compile("^[A-Za-z0-9._-]{1,64}$");
+    private static final HexFormat HEX = HexFormat.of();
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        // エラー画面への転送では元のリクエストと同じidを使う
+        String traceId = request.getAttribute(TRACE_ID) instanceof String existing ? existing : resolveTraceId(request);
+        String spanId = request.getAttribute(SPAN_ID) instanceof String existing ? existing : randomHex(8);
+        request.setAttribute(TRACE_ID, traceId);
+        request.setAttribute(SPAN_ID, spanId);
+        if (!response.isCommitted()) {
+            response.setHeader(REQUEST_ID_HEADER, traceId);
+        }
+
+        MDC.put(TRACE_ID, traceId);
+        MDC.put(SPAN_ID, spanId);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(TRACE_ID);
+            MDC.remove(SPAN_ID);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilterErrorDispatch() {
+        return false;
+    }
+
+    private String resolveTraceId(HttpServletRequest request) {
+        String traceparent = request.getHeader(TRACEPARENT_HEADER);
+        if (traceparent != null) {
+            Matcher matcher = TRACEPARENT.matcher(traceparent.trim());
+            if (matcher.matches() && !INVALID_TRACE_ID.matcher(matcher.group(1)).matches()) {
+                return matcher.group(1);
+            }
+        }
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId != null && REQUEST_ID.matcher(requestId).matches()) {
+            return requestId;
+        }
+        return randomHex(16);
+    }
+
+    private static String randomHex(int bytes) {
+        byte[] random = new byte[bytes];
+        ThreadLocalRandom.current().nextBytes(random);
+        return HEX.formatHex(random);
+    }
+}
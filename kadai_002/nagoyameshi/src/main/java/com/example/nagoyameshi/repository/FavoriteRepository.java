@@ -19,11 +19,17 @@ public interface FavoriteRepository extends JpaRepository<Favorite, Integer> {
 	//お気に入り解除につかう
 	List<Favorite> findByUserIdAndShopId(Integer userId, Integer shopId);
 	
+	//ユーザーがお気に入り登録している店舗のidだけを取得する
+	//FavoriteShopIdCacheの読み込みにつかう
+	@Query("SELECT f.shop.id FROM Favorite f WHERE f.user.id = :userId")
+	List<Integer> findShopIdsByUserId(@Param("userId") Integer userId);
+	
 	//お気に入りのリストを取得する
 	//ページネーションも使う
 	Page<Favorite> findByUserId(Integer userId, Pageable pageable);
 	
-	@Query(value = "SELECT f FROM Favorite f JOIN FETCH f.shop WHERE f.user.id = :userId",
+	//店舗のカテゴリもまとめて読み込む（店舗ごとにカテゴリを取得しない）
+	@Query(value = "SELECT f FROM Favorite f JOIN FETCH f.shop s LEFT JOIN FETCH s.category WHERE f.user.id = :userId",
 		       countQuery = "SELECT COUNT(f) FROM Favorite f WHERE f.user.id = :userId")
 		Page<Favorite> findByUserIdWithShop(@Param("userId") Integer userId, Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.example.nagoyameshi.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.nagoyameshi.entity.MailOutbox;
+
+public interface MailOutboxRepository extends JpaRepository<MailOutbox, Long> {
+    // 送信予定日時を過ぎた送信待ちのメールを古い順に取得する
+    @Query("SELECT m FROM MailOutbox m WHERE m.status = 'PENDING' AND m.nextAttemptAt <= :now ORDER BY m.nextAttemptAt, m.id")
+    public List<MailOutbox> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // 取得時から変わっていなければ送信予定日時を送信中の期限まで進め、このサーバーが送信する
+    // （他のサーバーが先に取得していれば0件になる。送信中に停止した場合は期限を過ぎてから再送される）
+    @Modifying
+    @Query("""
+            UPDATE MailOutbox m SET m.nextAttemptAt = :leaseUntil
+            WHERE m.id = :id AND m.status = 'PENDING' AND m.nextAttemptAt = :nextAttemptAt
+            """)
+    public int claim(@Param("id") Long id, @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Modifying
+    @Query("""
+            UPDATE MailOutbox m SET m.status = 'SENT', m.attempts = m.attempts + 1, m.sentAt = :sentAt, m.lastError = NULL
+            WHERE m.id = :id
+            """)
+    public int markSent(@Param("id") Long id, @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Query("""
+            UPDATE MailOutbox m SET m.status = :status, m.attempts = m.attempts + 1, m.nextAttemptAt = :nextAttemptAt, m.lastError = :lastError
+            WHERE m.id = :id
+            """)
+    public int markFailed(@Param("id") Long id, @Param("status") String status,
+                          @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("lastError") String lastError);
+
+    public long countByStatus(String status);
+
+    @Query("SELECT MIN(m.createdAt) FROM MailOutbox m WHERE m.status = 'PENDING'")
+    public Timestamp findOldestPendingCreatedAt();
+
+    @Modifying
+    @Query("DELETE FROM MailOutbox m WHERE m.status = 'SENT' AND m.sentAt < :sentBefore")
+    public int deleteSentBefore(@Param("sentBefore") LocalDateTime sentBefore);
+}
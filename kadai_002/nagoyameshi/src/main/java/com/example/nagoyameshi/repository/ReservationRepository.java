@@ -1,13 +1,37 @@
 package com.example.nagoyameshi.repository;
 
+import java.time.LocalDate;
+import java.util.List;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.example.nagoyameshi.dto.ReservedSeats;
 import com.example.nagoyameshi.entity.Reservation;
 import com.example.nagoyameshi.entity.User;
 
 public interface ReservationRepository extends JpaRepository<Reservation, Integer> {
-    public Page<Reservation> findByUserOrderByCreatedAtDesc(User user, Pageable pageable);
+    // 予約一覧に表示する店舗とそのカテゴリもまとめて読み込む（予約ごとに店舗を取得しない）
+    @Query(value = "SELECT r FROM Reservation r JOIN FETCH r.shop s LEFT JOIN FETCH s.category WHERE r.user = :user ORDER BY r.createdAt DESC",
+           countQuery = "SELECT COUNT(r) FROM Reservation r WHERE r.user = :user")
+    public Page<Reservation> findByUserOrderByCreatedAtDesc(@Param("user") User user, Pageable pageable);
     public Reservation findFirstByOrderByIdDesc();
-}
\ No newline at end of file
+
+    // 指定した店舗・日付の予約人数を予約時刻ごとに合計する（予約の行は読み込まない）
+    @Query("SELECT r.reservationDate AS reservationDate, r.reservationTime AS reservationTime, SUM(r.numberOfPeople) AS numberOfPeople "
+            + "FROM Reservation r WHERE r.shop.id = :shopId AND r.reservationDate = :reservationDate "
+            + "GROUP BY r.reservationDate, r.reservationTime")
+    public List<ReservedSeats> sumNumberOfPeopleByShopIdAndReservationDate(@Param("shopId") Integer shopId,
+                                                                           @Param("reservationDate") LocalDate reservationDate);
+
+    // 指定した店舗・期間の予約人数を予約日・予約時刻ごとに合計する（予約カレンダーの1か月分をまとめて読み込む）
+    @Query("SELECT r.reservationDate AS reservationDate, r.reservationTime AS reservationTime, SUM(r.numberOfPeople) AS numberOfPeople "
+            + "FROM Reservation r WHERE r.shop.id = :shopId AND r.reservationDate BETWEEN :startDate AND :endDate "
+            + "GROUP BY r.reservationDate, r.reservationTime")
+    public List<ReservedSeats> sumNumberOfPeopleByShopIdAndReservationDateBetween(@Param("shopId") Integer shopId,
+                                                                                  @Param("startDate") LocalDate startDate,
+                                                                                  @Param("endDate") LocalDate endDate);
+}
@@ -5,7 +5,10 @@ import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.example.nagoyameshi.dto.ReviewListItem;
 import com.example.nagoyameshi.entity.Review;
 import com.example.nagoyameshi.entity.Shop;
 import com.example.nagoyameshi.entity.User;
@@ -20,4 +23,16 @@ public interface ReviewRepository extends JpaRepository<Review, Integer> {
 	   public long countByShopId(Integer shopId);
 	   public Page<Review> findByShopOrderByCreatedAtDesc(Shop shop, Pageable pageable);
 	   public Review findFirstByOrderByIdDesc();
+	   public boolean existsByShopIdAndUserId(Integer shopId, Integer userId);
+
+	   // 店舗のレビューを投稿日時の新しい順に1ページ分取得する（件数はshops.review_countを使うため数えない）
+	   @Query("""
+			   SELECT r.id AS id, r.rating AS rating, r.comment AS comment,
+			          u.id AS userId, u.name AS userName, r.createdAt AS createdAt
+			   FROM Review r
+			   JOIN r.user u
+			   WHERE r.shop.id = :shopId
+			   ORDER BY r.createdAt DESC, r.id DESC
+			   """)
+	   public List<ReviewListItem> findListItemsByShopId(@Param("shopId") Integer shopId, Pageable pageable);
 	}
\ No newline at end of file
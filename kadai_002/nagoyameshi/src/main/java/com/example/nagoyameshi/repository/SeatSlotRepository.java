@@ -0,0 +1,49 @@
+package com.example.nagoyameshi.repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.nagoyameshi.entity.SeatSlot;
+
+public interface SeatSlotRepository extends JpaRepository<SeatSlot, SeatSlot.Key> {
+    // 作成済みの枠を取得する（ロックしない。未作成の枠を作るかどうかの判定に使う）
+    @Query("SELECT s.slot FROM SeatSlot s WHERE s.shopId = :shopId AND s.reservationDate = :reservationDate AND s.slot IN :slots")
+    public List<Integer> findSlots(@Param("shopId") Integer shopId, @Param("reservationDate") LocalDate reservationDate,
+                                   @Param("slots") Collection<Integer> slots);
+
+    // 枠の行がなければ作り、あれば値を変えずにロックする（作成と既存行のロックを1文で行い、どちらも排他ロックを取る）
+    // INSERT IGNOREは既存行に共有ロックしか取らず、続くSELECT ... FOR UPDATEでの昇格が他の確保とデッドロックするため使わない
+    @Modifying
+    @Query(value = """
+            INSERT INTO seat_slots (shop_id, reservation_date, slot, reserved_seats)
+            VALUES (:shopId, :reservationDate, :slot, :reservedSeats)
+            ON DUPLICATE KEY UPDATE reserved_seats = reserved_seats
+            """, nativeQuery = true)
+    public int insertOrLock(@Param("shopId") Integer shopId, @Param("reservationDate") LocalDate reservationDate,
+                            @Param("slot") Integer slot, @Param("reservedSeats") Integer reservedSeats);
+
+    // 指定した枠の行だけをロックし、枠の順に予約済み人数を返す（主キーの等価条件のため、範囲や隣の枠はロックしない）
+    // 枠の順にロックし、重なる時間帯の確保どうしがデッドロックしないようにする
+    @Query(value = """
+            SELECT reserved_seats FROM seat_slots
+            WHERE shop_id = :shopId AND reservation_date = :reservationDate AND slot IN (:slots)
+            ORDER BY slot FOR UPDATE
+            """, nativeQuery = true)
+    public List<Integer> lockReservedSeats(@Param("shopId") Integer shopId, @Param("reservationDate") LocalDate reservationDate,
+                                           @Param("slots") Collection<Integer> slots);
+
+    // 指定した枠の予約済み人数を増減する（取消で0未満にはしない）
+    @Modifying
+    @Query(value = """
+            UPDATE seat_slots SET reserved_seats = GREATEST(0, reserved_seats + :numberOfPeople)
+            WHERE shop_id = :shopId AND reservation_date = :reservationDate AND slot IN (:slots)
+            """, nativeQuery = true)
+    public int addReservedSeats(@Param("shopId") Integer shopId, @Param("reservationDate") LocalDate reservationDate,
+                                @Param("slots") Collection<Integer> slots, @Param("numberOfPeople") int numberOfPeople);
+}
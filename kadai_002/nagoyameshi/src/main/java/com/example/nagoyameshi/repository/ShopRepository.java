@@ -1,61 +1,172 @@
 package com.example.nagoyameshi.repository;
 
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import com.example.nagoyameshi.dto.ShopListItem;
 import com.example.nagoyameshi.entity.Shop;
 
 public interface ShopRepository extends JpaRepository<Shop, Integer> {
-   public Page<Shop> findByNameLike(String keyword, Pageable pageable);
+   // 一覧表示用の列だけを取得する（レビュー・予約のエンティティは読み込まない）
+   String LIST_ITEM_SELECT = """
+		   SELECT s.id AS id, s.name AS name, s.imageName AS imageName, c.name AS categoryName,
+		          s.description AS description, s.postalCode AS postalCode, s.address AS address,
+		          s.phoneNumber AS phoneNumber,
+		          s.averageRating AS averageRating, s.reviewCount AS reviewCount,
+		          s.createdAt AS createdAt
+		   FROM Shop s
+		   LEFT JOIN s.category c
+		   """;
+
    public Shop findFirstByOrderByIdDesc();
    public List<Shop> findByCategoryId(Integer categoryId);
    public List<Shop> findByCategoryName(String name);
    public Page<Shop> findByCategory(String category, Pageable pageable);
    public Page<Shop> findByCategory_Name(String name, Pageable pageable);
    public Page<Shop> findByNameLikeOrAddressLike(String nameKeyword, String addressKeyword, Pageable pageable);
-   public Page<Shop> findByAddressLike(String area, Pageable pageable); 
-   public Page<Shop> findByNameLikeOrAddressLikeOrderByCreatedAtDesc(String nameKeyword, String addressKeyword, Pageable pageable);
-   public Page<Shop> findByAddressLikeOrderByCreatedAtDesc(String area, Pageable pageable);
-   public Page<Shop> findAllByOrderByCreatedAtDesc(Pageable pageable);
-   public Page<Shop> findByCategory_NameOrderByCreatedAtDesc(String categoryName, Pageable pageable);
-   public List<Shop> findTop10ByOrderByCreatedAtDesc();
+   public Page<Shop> findByAddressLike(String area, Pageable pageable);
+
+   @Query(LIST_ITEM_SELECT)
+   public Page<ShopListItem> findAllListItems(Pageable pageable);
+
+   @Query(LIST_ITEM_SELECT + """
+		   WHERE s.name LIKE :keyword
+		   """)
+   public Page<ShopListItem> findByNameLike(@Param("keyword") String keyword, Pageable pageable);
+
+   // キーワード検索（ShopSearchIndex）で絞り込んだ店舗を取得する
+   @Query(LIST_ITEM_SELECT + """
+		   WHERE s.id IN :ids
+		   """)
+   public List<ShopListItem> findListItemsByIdIn(@Param("ids") Collection<Integer> ids);
+
+   @Query(LIST_ITEM_SELECT + """
+		   WHERE s.categoryId = :categoryId
+		   """)
+   public List<ShopListItem> findListItemsByCategoryId(@Param("categoryId") Integer categoryId);
+
+   @Query(LIST_ITEM_SELECT + """
+		   WHERE s.id IN :ids
+		   ORDER BY s.averageRating DESC, s.id DESC
+		   """)
+   public Page<ShopListItem> findByIdInOrderByAverageRatingDesc(@Param("ids") Collection<Integer> ids, Pageable pageable);
+
+   // 新着順のキーセットページング（直前のページ末尾の作成日時とidより後ろの行だけを取得する）
+   // idx_shops_created (created_at, id) を逆順に走査する
+   @Query(LIST_ITEM_SELECT + """
+		   WHERE s.createdAt <= :lastCreatedAt
+		     AND (s.createdAt < :lastCreatedAt OR s.id < :lastId)
+		   ORDER BY s.createdAt DESC, s.id DESC
+		   """)
+   public Slice<ShopListItem> findNewestSlice(@Param("lastCreatedAt") Timestamp lastCreatedAt, @Param("lastId") int lastId, Pageable pageable);
+
+   // カテゴリ指定時は idx_shops_category_created (category_id, created_at, id) を使う
+   @Query(LIST_ITEM_SELECT + """
+		   WHERE s.categoryId = :categoryId
+		     AND s.createdAt <= :lastCreatedAt
+		     AND (s.createdAt < :lastCreatedAt OR s.id < :lastId)
+		   ORDER BY s.createdAt DESC, s.id DESC
+		   """)
+   public Slice<ShopListItem> findNewestSliceByCategoryId(@Param("categoryId") Integer categoryId, @Param("lastCreatedAt") Timestamp lastCreatedAt, @Param("lastId") int lastId, Pageable pageable);
+
+   @Query(LIST_ITEM_SELECT + """
+		   WHERE s.address LIKE :area
+		     AND s.createdAt <= :lastCreatedAt
+		     AND (s.createdAt < :lastCreatedAt OR s.id < :lastId)
+		   ORDER BY s.createdAt DESC, s.id DESC
+		   """)
+   public Slice<ShopListItem> findNewestSliceByAddressLike(@Param("area") String area, @Param("lastCreatedAt") Timestamp lastCreatedAt, @Param("lastId") int lastId, Pageable pageable);
+
+   // 件数取得（COUNTクエリ）が不要なトップページ用
+   @Query(LIST_ITEM_SELECT + """
+		   ORDER BY s.createdAt DESC, s.id DESC
+		   """)
+   public List<ShopListItem> findNewListItems(Pageable pageable);
+
+   @Query(LIST_ITEM_SELECT + """
+		   ORDER BY s.averageRating DESC, s.id DESC
+		   """)
+   public List<ShopListItem> findRankingListItems(Pageable pageable);
+
+   // 評価順のキーセットページング（直前のページ末尾の平均評価とidより後ろの行だけを取得する）
+   // 条件は「評価 < 末尾 OR (評価 = 末尾 AND id < 末尾)」と同じだが、評価の範囲条件を単独で書くとインデックスの範囲検索に使える
+   // idx_shops_rating (average_rating, id) を逆順に走査するため、OFFSETやレビュー件数に関係なく読み取る行数は1ページ分で済む
+   @Query(LIST_ITEM_SELECT + """
+		   WHERE s.averageRating <= :lastRating
+		     AND (s.averageRating < :lastRating OR s.id < :lastId)
+		   ORDER BY s.averageRating DESC, s.id DESC
+		   """)
+   public Slice<ShopListItem> findRankingSlice(@Param("lastRating") double lastRating, @Param("lastId") int lastId, Pageable pageable);
+
+   // カテゴリ指定時は idx_shops_category_rating (category_id, average_rating, id) を使う
+   @Query(LIST_ITEM_SELECT + """
+		   WHERE s.categoryId = :categoryId
+		     AND s.averageRating <= :lastRating
+		     AND (s.averageRating < :lastRating OR s.id < :lastId)
+		   ORDER BY s.averageRating DESC, s.id DESC
+		   """)
+   public Slice<ShopListItem> findRankingSliceByCategoryId(@Param("categoryId") Integer categoryId, @Param("lastRating") double lastRating, @Param("lastId") int lastId, Pageable pageable);
+
+   @Query(LIST_ITEM_SELECT + """
+		   WHERE s.address LIKE :area
+		     AND s.averageRating <= :lastRating
+		     AND (s.averageRating < :lastRating OR s.id < :lastId)
+		   ORDER BY s.averageRating DESC, s.id DESC
+		   """)
+   public Slice<ShopListItem> findRankingSliceByAddressLike(@Param("area") String area, @Param("lastRating") double lastRating, @Param("lastId") int lastId, Pageable pageable);
+
+   public long countByCategoryId(Integer categoryId);
+   public long countByAddressLike(String area);
+
+   // レビュー投稿時に平均評価と件数を差分で更新する（平均評価の計算には更新前の件数を使う）
+   @Modifying
    @Query("""
-		   SELECT s FROM Shop s
-		   LEFT JOIN s.reviews r
-		   GROUP BY s.id
-		   ORDER BY AVG(r.rating) DESC
-		 """)
-   public Page<Shop> findAllByOrderByAverageRatingDesc(Pageable pageable);
+		   UPDATE Shop s
+		   SET s.averageRating = (s.averageRating * s.reviewCount + :rating) / (s.reviewCount + 1),
+		       s.reviewCount = s.reviewCount + 1
+		   WHERE s.id = :shopId
+		   """)
+   public int addRating(@Param("shopId") Integer shopId, @Param("rating") double rating);
 
+   // レビュー編集時に評価の差分だけ平均評価を補正する
+   @Modifying
    @Query("""
-		   SELECT s FROM Shop s
-		   LEFT JOIN s.reviews r
-		   WHERE s.name LIKE %:name%
-		      OR s.address LIKE %:address%
-		      OR s.category.name LIKE %:categoryName%
-		   GROUP BY s.id
-		   ORDER BY AVG(r.rating) DESC
-		 """)
-  public Page<Shop> findByNameLikeOrAddressLikeOrCategoryNameLikeOrderByAverageRatingDesc(
-		     @Param("name") String nameKeyword,
-		     @Param("address") String addressKeyword,
-		     @Param("categoryName") String categoryNameKeyword,
-		     Pageable pageable);
+		   UPDATE Shop s
+		   SET s.averageRating = (s.averageRating * s.reviewCount + :ratingDelta) / s.reviewCount
+		   WHERE s.id = :shopId
+		     AND s.reviewCount > 0
+		   """)
+   public int changeRating(@Param("shopId") Integer shopId, @Param("ratingDelta") double ratingDelta);
 
+   // レビュー削除時に平均評価と件数を差分で更新する
+   @Modifying
    @Query("""
-		   SELECT s FROM Shop s
-		   LEFT JOIN s.reviews r
-		   WHERE s.category.id = :categoryId
-		   GROUP BY s.id
-		   ORDER BY AVG(r.rating) DESC
-		 """)
-  public Page<Shop> findByCategoryIdOrderByAverageRatingDesc(@Param("categoryId") Integer categoryId, Pageable pageable);
+		   UPDATE Shop s
+		   SET s.averageRating = CASE WHEN s.reviewCount > 1
+		                              THEN (s.averageRating * s.reviewCount - :rating) / (s.reviewCount - 1)
+		                              ELSE 0.0 END,
+		       s.reviewCount = s.reviewCount - 1
+		   WHERE s.id = :shopId
+		     AND s.reviewCount > 0
+		   """)
+   public int removeRating(@Param("shopId") Integer shopId, @Param("rating") double rating);
 
-  
+   // 差分更新のずれをreviewsテーブルから集計し直して補正する
+   @Modifying
+   @Query("""
+		   UPDATE Shop s
+		   SET s.averageRating = COALESCE((SELECT AVG(r.rating) FROM Review r WHERE r.shop = s), 0.0),
+		       s.reviewCount = (SELECT COUNT(r) FROM Review r WHERE r.shop = s)
+		   """)
+   public int reconcileRatings();
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package com.example.nagoyameshi.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.nagoyameshi.entity.StripeWebhookEvent;
+
+public interface StripeWebhookEventRepository extends JpaRepository<StripeWebhookEvent, String> {
+    // 同じイベントidが登録済みなら何もしない（登録した場合は1を返す）
+    @Modifying
+    @Query(value = """
+            INSERT IGNORE INTO stripe_webhook_events (event_id, event_type, event_created, payload, status, attempts, next_attempt_at)
+            VALUES (:eventId, :eventType, :eventCreated, :payload, 'PENDING', 0, :nextAttemptAt)
+            """, nativeQuery = true)
+    public int insertIgnore(@Param("eventId") String eventId, @Param("eventType") String eventType,
+                            @Param("eventCreated") LocalDateTime eventCreated, @Param("payload") String payload,
+                            @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    // 処理予定日時を過ぎた処理待ちのイベントを、Stripeでの発生順に取得する
+    @Query("SELECT e FROM StripeWebhookEvent e WHERE e.status = 'PENDING' AND e.nextAttemptAt <= :now ORDER BY e.eventCreated, e.eventId")
+    public List<StripeWebhookEvent> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // 取得時から変わっていなければ処理予定日時を処理中の期限まで進め、このサーバーが処理する
+    @Modifying
+    @Query("""
+            UPDATE StripeWebhookEvent e SET e.nextAttemptAt = :leaseUntil
+            WHERE e.eventId = :eventId AND e.status = 'PENDING' AND e.nextAttemptAt = :nextAttemptAt
+            """)
+    public int claim(@Param("eventId") String eventId, @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                     @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // 処理中の期限が変わっていない（他のサーバーが処理していない）場合だけ処理済みにする
+    @Modifying
+    @Query("""
+            UPDATE StripeWebhookEvent e SET e.status = 'PROCESSED', e.attempts = e.attempts + 1, e.processedAt = :processedAt, e.lastError = NULL
+            WHERE e.eventId = :eventId AND e.status = 'PENDING' AND e.nextAttemptAt = :leaseUntil
+            """)
+    public int markProcessed(@Param("eventId") String eventId, @Param("leaseUntil") LocalDateTime leaseUntil,
+                             @Param("processedAt") LocalDateTime processedAt);
+
+    @Modifying
+    @Query("""
+            UPDATE StripeWebhookEvent e SET e.status = :status, e.attempts = e.attempts + 1, e.nextAttemptAt = :nextAttemptAt, e.lastError = :lastError
+            WHERE e.eventId = :eventId AND e.status = 'PENDING' AND e.nextAttemptAt = :leaseUntil
+            """)
+    public int markFailed(@Param("eventId") String eventId, @Param("leaseUntil") LocalDateTime leaseUntil, @Param("status") String status,
+                          @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("lastError") String lastError);
+
+    public long countByStatus(String status);
+
+    @Modifying
+    @Query("DELETE FROM StripeWebhookEvent e WHERE e.status = 'PROCESSED' AND e.processedAt < :processedBefore")
+    public int deleteProcessedBefore(@Param("processedBefore") LocalDateTime processedBefore);
+}
@@ -1,14 +1,45 @@
 package com.example.nagoyameshi.repository;
 
+import java.sql.Timestamp;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.example.nagoyameshi.dto.PrincipalVersion;
 import com.example.nagoyameshi.entity.User;
 
 public interface UserRepository extends JpaRepository<User, Integer> {	
 	Optional<User> findByEmail(String email);
+	Optional<User> findByStripeCustomerId(String stripeCustomerId);
     public Page<User> findByNameLikeOrFuriganaLike(String nameKeyword, String furiganaKeyword, Pageable pageable);
+
+    // ログイン中の認証情報を古いものにする（PrincipalVersionsが各サーバーでこの値と比べる）
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE User u SET u.principalVersion = u.principalVersion + 1 WHERE u.id = :id")
+    public int incrementPrincipalVersion(@Param("id") Integer id);
+
+    // 反映済みのイベントより新しいStripeのイベントなら作成日時を記録して1を返す（古いイベントは0を返し、反映しない）
+    // 作成日時は秒単位のため、同じ秒のイベントはsameSecondがtrueの場合だけ反映する
+    // 行を更新して判定するため、複数のサーバーで同じ会員のイベントを同時に処理しても順に判定される
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            UPDATE User u SET u.stripeEventCreated = :eventCreated
+            WHERE u.id = :id
+              AND (u.stripeEventCreated IS NULL OR u.stripeEventCreated < :eventCreated
+                   OR (u.stripeEventCreated = :eventCreated AND :sameSecond = TRUE))
+            """)
+    public int acceptStripeEvent(@Param("id") Integer id, @Param("eventCreated") long eventCreated, @Param("sameSecond") boolean sameSecond);
+
+    @Query("SELECT u.principalVersion FROM User u WHERE u.id = :id")
+    public Optional<Long> findPrincipalVersionById(@Param("id") Integer id);
+
+    // 指定した日時以降に変更された会員の版番号（updated_atは行の更新のたびにデータベースが更新する）
+    @Query("SELECT u.id AS id, u.principalVersion AS principalVersion FROM User u WHERE u.updatedAt >= :since")
+    public List<PrincipalVersion> findPrincipalVersionsUpdatedSince(@Param("since") Timestamp since);
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+package com.example.nagoyameshi.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.nagoyameshi.datasource.ReadWriteRoutingDataSource;
+import com.example.nagoyameshi.dto.ShopListItem;
+import com.example.nagoyameshi.event.CategoryChangedEvent;
+import com.example.nagoyameshi.event.ShopChangedEvent;
+import com.example.nagoyameshi.repository.ShopRepository;
+
+// 店舗のキーワード検索用の転置インデックス（アプリケーション内のメモリに保持する）
+// 店舗名・カテゴリ名・住所を1文字と2文字のn-gramに分割して登録するため、
+// 「名古屋市中区」のような分かち書きのない日本語やカタカナの店舗名でも部分一致で検索できる
+@Component
+public class ShopSearchIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ShopSearchIndex.class);
+
+    // 一致したフィールドごとのスコア（店舗名での一致を最も高く評価する）
+    private static final int NAME_WEIGHT = 3;
+    private static final int CATEGORY_WEIGHT = 2;
+    private static final int ADDRESS_WEIGHT = 1;
+
+    private final ShopRepository shopRepository;
+
+    // n-gram → その文字列を含む店舗idの集合
+    private final Map<String, Set<Integer>> postings = new HashMap<>();
+    // 店舗id → 正規化済みの検索対象文字列
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 全体の作成を1つずつ行う（起動直後に検索が同時に届いても、全店舗の読み込みを並行して繰り返さない）
+    // 読み込み中はデータベースを待つため、仮想スレッドを固定しないReentrantLockを使う
+    private final ReentrantLock buildLock = new ReentrantLock();
+    private volatile boolean built = false;
+    // 変更の通知を受けたら立てる（作成中に届いた変更を取りこぼさないよう、作成の前に下ろし、作成後に立っていれば作り直す）
+    private volatile boolean changed = false;
+
+    public ShopSearchIndex(ShopRepository shopRepository) {
+        this.shopRepository = shopRepository;
+    }
+
+    private record Document(String name, String categoryName, String address) {
+    }
+
+    private record Hit(Integer shopId, int score) {
+    }
+
+    // 起動時に全店舗からインデックスを作成する
+    // 読み込んでから置き換えるまでの間にコミットされた変更は読み込んだ一覧に含まれないことがあるため、その場合は作り直す
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        buildLock.lock();
+        try {
+            load();
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    // 作成前に検索された場合は、待っている間に他のスレッドが作成を終えていればそのまま使う
+    private void buildIfNeeded() {
+        buildLock.lock();
+        try {
+            if (!built) {
+                load();
+            }
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    // buildLockを取得した状態で呼び出す
+    private void load() {
+        List<ShopListItem> shops;
+        do {
+            changed = false;
+            shops = ReadWriteRoutingDataSource.usePrimary(() -> shopRepository.findAllListItems(Pageable.unpaged()).getContent());
+
+            lock.writeLock().lock();
+            try {
+                postings.clear();
+                documents.clear();
+                for (ShopListItem shop : shops) {
+                    add(shop);
+                }
+                built = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } while (changed);
+        logger.info("店舗検索インデックスを作成しました（{}件）", shops.size());
+    }
+
+    // 店舗の登録・更新・削除がコミットされたらインデックスに反映する
+    // 作成前・作成中の変更は作成の最後に作り直すことで反映する
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        changed = true;
+        if (!built) {
+            return;
+        }
+
+        List<ShopListItem> shops = event.isDeleted()
+                ? List.of()
+                : ReadWriteRoutingDataSource.usePrimary(() -> shopRepository.findListItemsByIdIn(List.of(event.getShopId())));
+
+        lock.writeLock().lock();
+        try {
+            remove(event.getShopId());
+            shops.forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // カテゴリ名の変更がコミットされたら、そのカテゴリの店舗を登録し直す
+    // 削除されたカテゴリの店舗はカテゴリのidから引けないため、全体を作り直す
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        changed = true;
+        if (!built) {
+            return;
+        }
+        if (event.isDeleted()) {
+            build();
+            return;
+        }
+
+        List<ShopListItem> shops = ReadWriteRoutingDataSource.usePrimary(() -> shopRepository.findListItemsByCategoryId(event.getCategoryId()));
+
+        lock.writeLock().lock();
+        try {
+            for (ShopListItem shop : shops) {
+                remove(shop.getId());
+                add(shop);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // キーワードに一致する店舗idをスコアの高い順（同点の場合は新しい店舗から）に返す
+    // 空白で区切られた複数のキーワードはすべてを含む店舗だけを対象にする
+    public List<Integer> search(String keyword) {
+        if (!built) {
+            buildIfNeeded();
+        }
+
+        List<String> terms = new ArrayList<>();
+        for (String term : normalize(keyword).split("\\s+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Integer shopId : candidates(terms)) {
+                int score = score(documents.get(shopId), terms);
+                if (score > 0) {
+                    hits.add(new Hit(shopId, score));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        hits.sort(Comparator.comparingInt(Hit::score).reversed().thenComparing(Hit::shopId, Comparator.reverseOrder()));
+        return hits.stream().map(Hit::shopId).toList();
+    }
+
+    // 各キーワードのn-gramをすべて含む店舗に絞り込む（最も件数の少ないn-gramから順に積集合をとる）
+    private Collection<Integer> candidates(List<String> terms) {
+        List<Set<Integer>> lists = new ArrayList<>();
+        for (String term : terms) {
+            for (String gram : queryGrams(term)) {
+                Set<Integer> ids = postings.get(gram);
+                if (ids == null) {
+                    return List.of();
+                }
+                lists.add(ids);
+            }
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        Set<Integer> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    // n-gramの一致だけでは連続した部分文字列とは限らないため、元の文字列で一致を確認してスコアを計算する
+    private int score(Document document, List<String> terms) {
+        int total = 0;
+        for (String term : terms) {
+            int score = 0;
+            if (document.name().contains(term)) score += NAME_WEIGHT;
+            if (document.categoryName().contains(term)) score += CATEGORY_WEIGHT;
+            if (document.address().contains(term)) score += ADDRESS_WEIGHT;
+            if (score == 0) {
+                return 0;
+            }
+            total += score;
+        }
+        return total;
+    }
+
+    private void add(ShopListItem shop) {
+        Document document = new Document(normalize(shop.getName()), normalize(shop.getCategoryName()), normalize(shop.getAddress()));
+        documents.put(shop.getId(), document);
+        for (String gram : indexGrams(document)) {
+            postings.computeIfAbsent(gram, key -> new HashSet<>()).add(shop.getId());
+        }
+    }
+
+    private void remove(Integer shopId) {
+        Document document = documents.remove(shopId);
+        if (document == null) {
+            return;
+        }
+        for (String gram : indexGrams(document)) {
+            Set<Integer> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(shopId);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private Set<String> indexGrams(Document document) {
+        Set<String> grams = new HashSet<>();
+        for (String text : List.of(document.name(), document.categoryName(), document.address())) {
+            for (int i = 0; i < text.length(); i++) {
+                grams.add(text.substring(i, i + 1));
+                if (i + 2 <= text.length()) {
+                    grams.add(text.substring(i, i + 2));
+                }
+            }
+        }
+        return grams;
+    }
+
+    // 1文字のキーワードは1-gram、2文字以上は2-gramで引く
+    private List<String> queryGrams(String term) {
+        if (term.length() == 1) {
+            return List.of(term);
+        }
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + 2 <= term.length(); i++) {
+            grams.add(term.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    // 全角英数字・半角カタカナの表記ゆれをNFKC正規化でそろえ、英字は小文字にする
+    private String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+}
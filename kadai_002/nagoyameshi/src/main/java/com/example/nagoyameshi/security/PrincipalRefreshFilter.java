@@ -0,0 +1,48 @@
+package com.example.nagoyameshi.security;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+// セッションのUserDetailsImplが会員情報の変更より前に読み込まれたものであれば、読み直してセッションに保存し直す
+// 本人の操作だけでなく、管理者やStripeのWebhookによるロールの変更もそのユーザーの次のリクエストで反映される
+// 退会などでユーザーが見つからない、または無効になった場合はログアウトした状態にする
+public class PrincipalRefreshFilter extends OncePerRequestFilter {
+    private final PrincipalVersions principalVersions;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final SecurityContextRepository securityContextRepository;
+
+    public PrincipalRefreshFilter(PrincipalVersions principalVersions, UserDetailsServiceImpl userDetailsService, SecurityContextRepository securityContextRepository) {
+        this.principalVersions = principalVersions;
+        this.userDetailsService = userDetailsService;
+        this.securityContextRepository = securityContextRepository;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl userDetails && principalVersions.isStale(userDetails)) {
+            Optional<UserDetailsImpl> reloaded = userDetailsService.loadUserById(userDetails.getUserId()).filter(UserDetailsImpl::isEnabled);
+            SecurityContext context = SecurityContextHolder.createEmptyContext();
+            reloaded.ifPresent(user -> {
+                UsernamePasswordAuthenticationToken refreshed = UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities());
+                refreshed.setDetails(authentication.getDetails());
+                context.setAuthentication(refreshed);
+            });
+            SecurityContextHolder.setContext(context);
+            securityContextRepository.saveContext(context, request, response);
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.nagoyameshi.security;
+
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.nagoyameshi.datasource.ReadWriteRoutingDataSource;
+import com.example.nagoyameshi.dto.PrincipalVersion;
+import com.example.nagoyameshi.event.UserChangedEvent;
+import com.example.nagoyameshi.repository.UserRepository;
+
+// セッションに保存したUserDetailsImplが古くなったかどうかを判定する
+// 会員情報を変更するたびにusersテーブルのprincipal_versionを増やし、UserDetailsImplが読み込んだ時点の値と比べる
+// 判定はメモリに保持した版番号だけで行い、データベースから読むのは会員ごとに初めて判定するときだけ
+// このサーバーでの変更はコミット後のイベントで読み直すため、次のリクエストですぐに反映される
+// 他のサーバーでの変更は、sync-ms（既定は5秒）ごとに最近更新された会員の版番号をまとめて読み直して反映する（最大sync-ms遅れる）
+// 読み直しは会員数・セッション数によらずサーバーごとに1回の問い合わせで、updated_atの索引で最近の変更だけを読む
+// updated_atは更新した文の実行時刻のため、コミットまでの時間・サーバー間の時計のずれ・レプリカの遅れを見込んで、前回よりsync-overlap-ms前から読み直す
+// 版番号は増えるだけなので、読み込みと読み直しが前後しても大きい方を残せば古い値に戻らない
+@Component
+public class PrincipalVersions {
+    // 保持する会員数の上限（超えたら捨てて、次の判定で読み込み直す）
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final UserRepository userRepository;
+    private final long overlapMillis;
+    private final Map<Integer, Long> knownVersions = new ConcurrentHashMap<>();
+    private volatile long syncedAt = System.currentTimeMillis();
+
+    public PrincipalVersions(UserRepository userRepository,
+                             @Value("${nagoyameshi.security.principal-sync-overlap-ms:60000}") long overlapMillis) {
+        this.userRepository = userRepository;
+        this.overlapMillis = overlapMillis;
+    }
+
+    public boolean isStale(UserDetailsImpl userDetails) {
+        Long version = knownVersions.get(userDetails.getUserId());
+        if (version == null) {
+            // 退会などでユーザーが見つからない場合も古いものとして扱い、PrincipalRefreshFilterにログアウトさせる
+            long loaded = userRepository.findPrincipalVersionById(userDetails.getUserId()).orElse(-1L);
+            if (knownVersions.size() >= MAX_ENTRIES) {
+                knownVersions.clear();
+            }
+            version = knownVersions.merge(userDetails.getUserId(), loaded, Math::max);
+        }
+        return version != userDetails.getVersion();
+    }
+
+    // 保持している会員のうち、他のサーバーを含めて最近変更された会員の版番号を読み直す
+    @Scheduled(fixedDelayString = "${nagoyameshi.security.principal-sync-ms:5000}")
+    public void sync() {
+        long startedAt = System.currentTimeMillis();
+        Timestamp since = new Timestamp(syncedAt - overlapMillis);
+        for (PrincipalVersion principalVersion : userRepository.findPrincipalVersionsUpdatedSince(since)) {
+            knownVersions.computeIfPresent(principalVersion.getId(), (id, known) -> Math.max(known, principalVersion.getPrincipalVersion()));
+        }
+        syncedAt = startedAt;
+    }
+
+    // コミット後に読み直す（コミット前に読み直すと変更前の値を読んでしまうため。レプリカの遅れを避けてプライマリから読む）
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        Integer userId = event.getUserId();
+        if (!knownVersions.containsKey(userId)) {
+            return;
+        }
+        ReadWriteRoutingDataSource.usePrimary(() -> userRepository.findPrincipalVersionById(userId))
+                .ifPresent(version -> knownVersions.computeIfPresent(userId, (id, known) -> Math.max(known, version)));
+    }
+}
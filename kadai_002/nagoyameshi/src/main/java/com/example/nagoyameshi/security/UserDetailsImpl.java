@@ -9,37 +9,58 @@ import org.springframework.security.core.userdetails.UserDetails;
 
 import com.example.nagoyameshi.entity.User;
 
-
+// ログイン中のユーザーの情報（セッションに保存される）
+// エンティティは持たず、画面の表示や権限の判定に使う項目だけを読み込んだ時点の値で保持する
+// 会員情報が変更された場合はPrincipalRefreshFilterが次のリクエストで読み直す
 public class UserDetailsImpl implements UserDetails {
-    private final User user;
+    private final Integer userId;
+    private final String email;
+    private final String password;
+    private final String name;
+    private final String roleName;
+    private final boolean enabled;
+    private final long version;
     private final Collection<GrantedAuthority> authorities;
 
-    // ユーザーだけ受け取る簡易コンストラクタ
+    // versionはusersテーブルのprincipal_version（他の項目と同じ行から読むため、読み込んだ後の変更は必ず大きい値になる）
     public UserDetailsImpl(User user) {
-        this.user = user;
-        this.authorities = List.of(new SimpleGrantedAuthority(user.getRole().getName()));
+        this.userId = user.getId();
+        this.email = user.getEmail();
+        this.password = user.getPassword();
+        this.name = user.getName();
+        this.roleName = user.getRole().getName();
+        this.enabled = Boolean.TRUE.equals(user.getEnabled());
+        this.version = user.getPrincipalVersion() == null ? 0 : user.getPrincipalVersion();
+        this.authorities = List.of(new SimpleGrantedAuthority(roleName));
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    // 画面に表示する氏名
+    public String getName() {
+        return name;
     }
 
-    // ユーザーとロールを明示的に渡すコンストラクタ
-    public UserDetailsImpl(User user, Collection<GrantedAuthority> authorities) {
-        this.user = user;
-        this.authorities = authorities;
+    public String getRoleName() {
+        return roleName;
     }
 
-    public User getUser() {
-        return user;
+    public long getVersion() {
+        return version;
     }
 
     // ハッシュ化済みのパスワードを返す
     @Override
     public String getPassword() {
-        return user.getPassword();
+        return password;
     }
 
     // ログイン時に利用するユーザー名（メールアドレス）を返す
     @Override
     public String getUsername() {
-        return user.getEmail();
+        return email;
     }
 
     // ロールのコレクションを返す
@@ -69,6 +90,6 @@ public class UserDetailsImpl implements UserDetails {
     // ユーザーが有効であればtrueを返す
     @Override
     public boolean isEnabled() {
-        return user.getEnabled();
+        return enabled;
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,12 @@
 package com.example.nagoyameshi.security;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Optional;
 
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
-import com.example.nagoyameshi.entity.User;
 import com.example.nagoyameshi.repository.UserRepository;
 
 
@@ -25,15 +21,14 @@ public class UserDetailsServiceImpl implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        User user = userRepository.findByEmail(email)
+        return userRepository.findByEmail(email)
+                .map(UserDetailsImpl::new)
                 .orElseThrow(() -> new UsernameNotFoundException("ユーザーが見つかりません: " + email));
+    }
 
-        String userRoleName = user.getRole().getName();
-
-        Collection<GrantedAuthority> authorities = new ArrayList<>();
-        authorities.add(new SimpleGrantedAuthority(userRoleName));
-
-        return new UserDetailsImpl(user, authorities);
-
+    // 会員情報の変更後にログイン中のユーザーを読み直す（メールアドレスが変わっている場合があるためidで探す）
+    public Optional<UserDetailsImpl> loadUserById(Integer userId) {
+        return userRepository.findById(userId)
+                .map(UserDetailsImpl::new);
     }
-}
\ No newline at end of file
+}
@@ -8,6 +8,11 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.context.DelegatingSecurityContextRepository;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.context.RequestAttributeSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextHolderFilter;
+import org.springframework.security.web.context.SecurityContextRepository;
 
 @Configuration
 @EnableWebSecurity
@@ -15,7 +20,11 @@ import org.springframework.security.web.SecurityFilterChain;
 public class WebSecurityConfig {
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, PrincipalVersions principalVersions, UserDetailsServiceImpl userDetailsService) throws Exception {
+        // ログイン時とPrincipalRefreshFilterが読み直したときで同じ保存先を使う（既定と同じ構成）
+        SecurityContextRepository securityContextRepository = new DelegatingSecurityContextRepository(
+                new RequestAttributeSecurityContextRepository(), new HttpSessionSecurityContextRepository());
+
         http
                 .authorizeHttpRequests((requests) -> requests
                 				.requestMatchers("/css/**", "/images/**", "/js/**", "/storage/**", "/", "/signup/**", "/shops", "/shops/{id}", "/shops/*/reviews", "/stripe/webhook", "/subscription/success", "/subscription/cancel", "/subscription/plan", "/shops/{shopId}/reviews", "/password-reset/**", "/password-reset", "/company/**").permitAll()// すべてのユーザーにアクセスを許可するURL
@@ -35,7 +44,12 @@ public class WebSecurityConfig {
                 )
                 .csrf(csrf -> csrf
                         .ignoringRequestMatchers("/stripe/webhook")
-                    );
+                    )
+                .securityContext(context -> context
+                        .securityContextRepository(securityContextRepository)
+                    )
+                // 権限の判定より前に、変更された会員情報をセッションに反映する
+                .addFilterAfter(new PrincipalRefreshFilter(principalVersions, userDetailsService, securityContextRepository), SecurityContextHolderFilter.class);
             
         return http.build();
     }
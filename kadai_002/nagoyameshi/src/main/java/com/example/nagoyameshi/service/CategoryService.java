@@ -2,13 +2,18 @@ package com.example.nagoyameshi.service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.example.nagoyameshi.datasource.ReadWriteRoutingDataSource;
 import com.example.nagoyameshi.entity.Category;
+import com.example.nagoyameshi.event.CategoryChangedEventPublisher;
 import com.example.nagoyameshi.form.CategoryEditForm;
 import com.example.nagoyameshi.form.CategoryRegisterForm;
 import com.example.nagoyameshi.repository.CategoryRepository;
@@ -18,47 +23,104 @@ import com.example.nagoyameshi.repository.CategoryRepository;
 @Service
 public class CategoryService {
    private final CategoryRepository categoryRepository;
+   private final CategoryChangedEventPublisher categoryChangedEventPublisher;
 
-   public CategoryService(CategoryRepository categoryRepository) {
+   // カテゴリ一覧のキャッシュ（ほとんど変更されないため、変更時に破棄して次の参照で読み直す）
+   private volatile List<Category> cachedCategories;
+   // 破棄のたびに進める世代番号（読み込み中に破棄された場合、古い一覧をキャッシュしないために使う）
+   private final AtomicLong cacheGeneration = new AtomicLong();
+   private final AtomicLong cacheHits = new AtomicLong();
+   private final AtomicLong cacheMisses = new AtomicLong();
+
+   public CategoryService(CategoryRepository categoryRepository, CategoryChangedEventPublisher categoryChangedEventPublisher) {
        this.categoryRepository = categoryRepository;
+       this.categoryChangedEventPublisher = categoryChangedEventPublisher;
    }
 
    // すべてのカテゴリをページングされた状態で取得する
+   @Transactional(readOnly = true)
    public Page<Category> findAllCategorys(Pageable pageable) {
        return categoryRepository.findAll(pageable);
    }
 
    // 指定されたキーワードをカテゴリ名に含むカテゴリを、ページングされた状態で取得する
+   @Transactional(readOnly = true)
    public Page<Category> findCategoryByNameLike(String keyword, Pageable pageable) {
        return categoryRepository.findByNameLike("%" + keyword + "%", pageable);
    }
 
    // 指定したidを持つカテゴリを取得する
+   @Transactional(readOnly = true)
    public Optional<Category> findCategoryById(Integer id) {
        return categoryRepository.findById(id);
    }
 
    // カテゴリのレコード数を取得する
+   @Transactional(readOnly = true)
    public long countCategorys() {
        return categoryRepository.count();
    }
 
    // idが最も大きいカテゴリを取得する
+   @Transactional(readOnly = true)
    public Category findFirstCategoryByOrderByIdDesc() {
        return categoryRepository.findFirstByOrderByIdDesc();
    }
    
    // カテゴリ名一覧を取得する
    public List<String> getAllCategoryNames() {
-	    return categoryRepository.findAll()
+	    return getAllCategories()
 	            .stream()
 	            .map(Category::getName)
 	            .toList();
 	}
-   // カテゴリ一覧を取得   
+   // カテゴリ一覧を取得（キャッシュがあればデータベースを参照しない）
    public List<Category> getAllCategories() {
-	    return categoryRepository.findAll();
+	    List<Category> categories = cachedCategories;
+	    if (categories != null) {
+	        cacheHits.incrementAndGet();
+	        return categories;
+	    }
+
+	    cacheMisses.incrementAndGet();
+	    long generation = cacheGeneration.get();
+	    // 破棄された直後に読み直すため、更新がまだ届いていないレプリカではなくプライマリから読む
+	    categories = List.copyOf(ReadWriteRoutingDataSource.usePrimary(categoryRepository::findAll));
+	    synchronized (this) {
+	        if (cacheGeneration.get() == generation) {
+	            cachedCategories = categories;
+	        }
+	    }
+	    return categories;
 	}
+
+   // カテゴリ一覧のキャッシュを破棄する
+   // トランザクション中はコミット前に他のリクエストが古い一覧を読み直す可能性があるため、コミット後にもう一度破棄する
+   public void invalidateCategoryCache() {
+       evictCategoryCache();
+       if (TransactionSynchronizationManager.isSynchronizationActive()) {
+           TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+               @Override
+               public void afterCommit() {
+                   evictCategoryCache();
+               }
+           });
+       }
+   }
+
+   private synchronized void evictCategoryCache() {
+       cacheGeneration.incrementAndGet();
+       cachedCategories = null;
+   }
+
+   // キャッシュのヒット数・ミス数（監視用）
+   public long getCategoryCacheHitCount() {
+       return cacheHits.get();
+   }
+
+   public long getCategoryCacheMissCount() {
+       return cacheMisses.get();
+   }
    
 
    @Transactional
@@ -67,6 +129,8 @@ public class CategoryService {
        category.setName(categoryRegisterForm.getName());
  
        categoryRepository.save(category);
+       invalidateCategoryCache();
+       categoryChangedEventPublisher.publishCategorySaved(category.getId());
    }
 
    @Transactional
@@ -76,11 +140,23 @@ public class CategoryService {
 
 
        categoryRepository.save(category);
+       invalidateCategoryCache();
+       // 店舗の一覧や検索インデックスはカテゴリ名を保持しているため、コミット後に読み直させる
+       categoryChangedEventPublisher.publishCategorySaved(category.getId());
    }
 
    @Transactional
    public void deleteCategory(Category category) {
        categoryRepository.delete(category);
+       invalidateCategoryCache();
+       categoryChangedEventPublisher.publishCategoryDeleted(category.getId());
+   }
+
+   @Transactional
+   public void deleteCategoryById(Integer id) {
+       categoryRepository.deleteById(id);
+       invalidateCategoryCache();
+       categoryChangedEventPublisher.publishCategoryDeleted(id);
    }
 
 }
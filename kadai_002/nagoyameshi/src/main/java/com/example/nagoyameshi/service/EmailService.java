@@ -1,22 +1,18 @@
 package com.example.nagoyameshi.service;
 
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+// メールはアウトボックスに登録するだけで、送信はMailOutboxDispatcherが行う
 @Service
 public class EmailService {
-    private final JavaMailSender mailSender;
+    private final MailOutboxService mailOutboxService;
 
-    public EmailService(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
+    public EmailService(MailOutboxService mailOutboxService) {
+        this.mailOutboxService = mailOutboxService;
     }
 
     public void sendResetPasswordEmail(String toEmail, String resetLink) {
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(toEmail);
-        message.setSubject("【NAGOYAMESHI】パスワード再設定リンク");
-        message.setText("以下のリンクからパスワードを再設定してください：\n\n" + resetLink + "\n\n※このリンクは1時間で失効します。");
-        mailSender.send(message);
+        mailOutboxService.enqueue(null, toEmail, "【NAGOYAMESHI】パスワード再設定リンク",
+                "以下のリンクからパスワードを再設定してください：\n\n" + resetLink + "\n\n※このリンクは1時間で失効します。");
     }
-}
\ No newline at end of file
+}
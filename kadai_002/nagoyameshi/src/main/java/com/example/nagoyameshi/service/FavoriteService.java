@@ -2,12 +2,14 @@ package com.example.nagoyameshi.service;
 
 import java.util.List;
 
-import jakarta.transaction.Transactional;
-
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.example.nagoyameshi.dto.FavoriteShopIds;
 import com.example.nagoyameshi.entity.Favorite;
 import com.example.nagoyameshi.repository.FavoriteRepository;
 import com.example.nagoyameshi.repository.ShopRepository;
@@ -18,12 +20,14 @@ public class FavoriteService {
 	private final FavoriteRepository favoriteRepository;
 	private final ShopRepository shopRepository;
 	private final UserRepository userRepository;
+	private final FavoriteShopIdCache favoriteShopIdCache;
 	
 	//各リポジトリをSpringから注入するためのコンストラクタ（DI）
-	public FavoriteService(FavoriteRepository favoriteRepository, ShopRepository shopRepository, UserRepository userRepository) {
+	public FavoriteService(FavoriteRepository favoriteRepository, ShopRepository shopRepository, UserRepository userRepository, FavoriteShopIdCache favoriteShopIdCache) {
 		this.favoriteRepository = favoriteRepository; 
 		this.shopRepository = shopRepository; 
 		this.userRepository = userRepository; 
+		this.favoriteShopIdCache = favoriteShopIdCache;
 	}
 	
 	@Transactional//お気に入りを追加する
@@ -34,6 +38,7 @@ public class FavoriteService {
 			favorite.setShop(shopRepository.getReferenceById(shopId));
 			//Favoriteオブジェクトを作成して、ユーザーと店舗情報をセットしDBに登録
 			favoriteRepository.save(favorite);
+			afterCommit(() -> favoriteShopIdCache.added(userId, shopId));
 		}
 	}
 		
@@ -43,19 +48,40 @@ public class FavoriteService {
 	    for (Favorite favorite : favorites) {
 	        favoriteRepository.delete(favorite);
 	    }
+	    afterCommit(() -> favoriteShopIdCache.removed(userId, shopId));
 	}
 	
-	//お気に入りに登録しているかチェック
+	//お気に入りに登録しているかチェック（キャッシュしたお気に入り店舗idから判定する）
 	public boolean isFavorite(Integer userId, Integer shopId) {
-		//この組み合わせのデータが存在するかどうかを返す
-		return favoriteRepository.existsByUserIdAndShopId(userId, shopId);
+		return favoriteShopIdCache.get(userId).contains(shopId);
+	}
+	
+	//一覧画面でお気に入り状態を表示するため、ユーザーのお気に入り店舗idをまとめて取得する
+	public FavoriteShopIds getFavoriteShopIds(Integer userId) {
+		return favoriteShopIdCache.get(userId);
+	}
+	
+	//コミット後にキャッシュを更新する（ロールバックされた変更をキャッシュに残さないため）
+	private void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
 	}
 	
 	//ページネーションありのリスト取得用
+	@Transactional(readOnly = true)
 	public Page<Favorite> getFavoritesByUser(Integer userId, Pageable pageable) {
 		return favoriteRepository.findByUserId(userId, pageable);
 	}
 	
+	@Transactional(readOnly = true)
 	public Page<Favorite> getFavoritesByUserWithShop(Integer userId, Pageable pageable) {
 	    return favoriteRepository.findByUserIdWithShop(userId, pageable);
 	}
@@ -0,0 +1,94 @@
+package com.example.nagoyameshi.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.nagoyameshi.datasource.ReadWriteRoutingDataSource;
+import com.example.nagoyameshi.dto.FavoriteShopIds;
+import com.example.nagoyameshi.repository.FavoriteRepository;
+
+// ユーザーごとのお気に入り店舗idのキャッシュ
+// 初回参照時にデータベースから読み込み、以降はFavoriteServiceの追加・解除に合わせて更新する
+// 保持するユーザー数は上限を超えると最も長く参照されていないユーザーから破棄する
+@Component
+public class FavoriteShopIdCache {
+    private final FavoriteRepository favoriteRepository;
+    private final Map<Integer, FavoriteShopIds> cache;
+
+    // 読み込み中のユーザー（読み込み中にそのユーザーの追加・解除があった場合、古い内容をキャッシュしないために使う）
+    // 他のユーザーの変更では破棄しないよう、ユーザーごとに持ち、読み込みが終われば取り除く
+    private final Map<Integer, Load> loads = new HashMap<>();
+
+    public FavoriteShopIdCache(FavoriteRepository favoriteRepository,
+                               @Value("${nagoyameshi.favorite.cache-max-users:10000}") int maxUsers) {
+        this.favoriteRepository = favoriteRepository;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, FavoriteShopIds> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    private static final class Load {
+        // 同じユーザーを同時に読み込んでいる数
+        private int loaders = 0;
+        private boolean modified = false;
+    }
+
+    public FavoriteShopIds get(Integer userId) {
+        Load load;
+        synchronized (this) {
+            FavoriteShopIds cached = cache.get(userId);
+            if (cached != null) {
+                return cached;
+            }
+            load = loads.computeIfAbsent(userId, key -> new Load());
+            load.loaders++;
+        }
+
+        FavoriteShopIds loaded = null;
+        try {
+            loaded = FavoriteShopIds.of(ReadWriteRoutingDataSource.usePrimary(() -> favoriteRepository.findShopIdsByUserId(userId)).stream()
+                    .mapToInt(Integer::intValue)
+                    .toArray());
+            return loaded;
+        } finally {
+            synchronized (this) {
+                if (loaded != null && !load.modified) {
+                    cache.put(userId, loaded);
+                }
+                if (--load.loaders == 0) {
+                    loads.remove(userId);
+                }
+            }
+        }
+    }
+
+    public synchronized void added(Integer userId, Integer shopId) {
+        markModified(userId);
+        FavoriteShopIds cached = cache.get(userId);
+        if (cached != null) {
+            cache.put(userId, cached.with(shopId));
+        }
+    }
+
+    public synchronized void removed(Integer userId, Integer shopId) {
+        markModified(userId);
+        FavoriteShopIds cached = cache.get(userId);
+        if (cached != null) {
+            cache.put(userId, cached.without(shopId));
+        }
+    }
+
+    private void markModified(Integer userId) {
+        Load load = loads.get(userId);
+        if (load != null) {
+            load.modified = true;
+        }
+    }
+}
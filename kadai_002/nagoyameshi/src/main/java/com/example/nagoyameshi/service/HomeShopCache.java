@@ -0,0 +1,118 @@
+package com.example.nagoyameshi.service;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.nagoyameshi.datasource.ReadWriteRoutingDataSource;
+import com.example.nagoyameshi.dto.ShopListItem;
+import com.example.nagoyameshi.event.CategoryChangedEvent;
+import com.example.nagoyameshi.event.ReviewChangedEvent;
+import com.example.nagoyameshi.event.ShopChangedEvent;
+
+// トップページの「新着店舗」「評価ランキング」のキャッシュ
+// 読み込みはバックグラウンドで行い、リクエストは保持している一覧をそのまま使う
+// 店舗・レビューの変更イベントを受けたら次回のチェックで読み直し、変更がなくても一定時間ごとに読み直す
+@Component
+public class HomeShopCache {
+    private static final Logger logger = LoggerFactory.getLogger(HomeShopCache.class);
+
+    private final ShopService shopService;
+    private final long ttlMillis;
+
+    private volatile Snapshot snapshot;
+    private volatile boolean stale = false;
+    // 読み込み中はデータベースを待つため、synchronizedではなく仮想スレッドを固定しないロックを使う
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    public HomeShopCache(ShopService shopService,
+                         @Value("${nagoyameshi.home.cache-ttl-ms:300000}") long ttlMillis) {
+        this.shopService = shopService;
+        this.ttlMillis = ttlMillis;
+    }
+
+    private record Snapshot(List<ShopListItem> newShops, List<ShopListItem> rankingShops, long loadedAt) {
+    }
+
+    public List<ShopListItem> getNewShops() {
+        return current().newShops();
+    }
+
+    public List<ShopListItem> getRankingShops() {
+        return current().rankingShops();
+    }
+
+    // 起動直後（初期データの投入と評価の再集計の後）に読み込んでおく
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        refresh();
+    }
+
+    // 変更があった場合、または有効期限を過ぎた場合に読み直す
+    @Scheduled(fixedDelayString = "${nagoyameshi.home.cache-check-ms:5000}")
+    public void refreshIfNeeded() {
+        Snapshot current = snapshot;
+        if (stale || current == null || System.currentTimeMillis() - current.loadedAt() > ttlMillis) {
+            refresh();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        stale = true;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReviewChanged(ReviewChangedEvent event) {
+        stale = true;
+    }
+
+    // 一覧にはカテゴリ名も表示するため、名前の変更でも読み直す
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        stale = true;
+    }
+
+    // 起動直後でまだ読み込まれていない場合のみ、リクエスト内で読み込む
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = refresh();
+        }
+        return current;
+    }
+
+    private Snapshot refresh() {
+        refreshLock.lock();
+        try {
+            // 読み込み中に届いた変更を取りこぼさないよう、先にフラグを下ろしてから読み込む
+            stale = false;
+            try {
+                // 変更の通知を受けた直後の読み込みでレプリカの古い一覧を掴まないよう、プライマリから読む
+                Snapshot loaded = ReadWriteRoutingDataSource.usePrimary(() -> new Snapshot(
+                        List.copyOf(shopService.findTop10ShopsByOrderByCreatedAtDesc()),
+                        List.copyOf(shopService.findTop10ShopsByAverageRating()),
+                        System.currentTimeMillis()));
+                snapshot = loaded;
+                return loaded;
+            } catch (RuntimeException e) {
+                stale = true;
+                if (snapshot == null) {
+                    throw e;
+                }
+                logger.warn("トップページの店舗一覧の読み込みに失敗したため、前回の一覧を使用します", e);
+                return snapshot;
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+}
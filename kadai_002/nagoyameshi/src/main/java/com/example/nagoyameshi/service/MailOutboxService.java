@@ -0,0 +1,104 @@
+package com.example.nagoyameshi.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.nagoyameshi.entity.MailOutbox;
+import com.example.nagoyameshi.event.MailQueuedEventPublisher;
+import com.example.nagoyameshi.repository.MailOutboxRepository;
+
+// メールのアウトボックス（mail_outbox）を操作する
+// 送信はMailOutboxDispatcherが行い、失敗したメールは間隔を倍にしながら再送し、上限に達したらDEADにする
+@Service
+public class MailOutboxService {
+    private static final int LAST_ERROR_MAX_LENGTH = 1000;
+
+    private final MailOutboxRepository mailOutboxRepository;
+    private final MailQueuedEventPublisher mailQueuedEventPublisher;
+    private final int maxAttempts;
+    private final long retryBaseMillis;
+    private final long retryMaxMillis;
+
+    public MailOutboxService(MailOutboxRepository mailOutboxRepository,
+                             MailQueuedEventPublisher mailQueuedEventPublisher,
+                             @Value("${nagoyameshi.mail.max-attempts:8}") int maxAttempts,
+                             @Value("${nagoyameshi.mail.retry-base-ms:30000}") long retryBaseMillis,
+                             @Value("${nagoyameshi.mail.retry-max-ms:3600000}") long retryMaxMillis) {
+        this.mailOutboxRepository = mailOutboxRepository;
+        this.mailQueuedEventPublisher = mailQueuedEventPublisher;
+        this.maxAttempts = maxAttempts;
+        this.retryBaseMillis = retryBaseMillis;
+        this.retryMaxMillis = retryMaxMillis;
+    }
+
+    // 送信するメールを登録する（送信元を指定しない場合はメールサーバーの既定の送信元を使う）
+    @Transactional
+    public void enqueue(String sender, String recipient, String subject, String body) {
+        MailOutbox mailOutbox = new MailOutbox();
+        mailOutbox.setSender(sender);
+        mailOutbox.setRecipient(recipient);
+        mailOutbox.setSubject(subject);
+        mailOutbox.setBody(body);
+        mailOutbox.setStatus(MailOutbox.STATUS_PENDING);
+        mailOutbox.setAttempts(0);
+        mailOutbox.setNextAttemptAt(LocalDateTime.now());
+
+        mailOutboxRepository.save(mailOutbox);
+        mailQueuedEventPublisher.publishMailQueued();
+    }
+
+    public List<MailOutbox> findDueMails(int limit) {
+        return mailOutboxRepository.findDue(LocalDateTime.now(), PageRequest.of(0, limit));
+    }
+
+    // 送信するメールを確保する（他のサーバーが先に確保した場合はfalse）
+    @Transactional
+    public boolean claim(MailOutbox mailOutbox, LocalDateTime leaseUntil) {
+        return mailOutboxRepository.claim(mailOutbox.getId(), mailOutbox.getNextAttemptAt(), leaseUntil) == 1;
+    }
+
+    @Transactional
+    public void markSent(MailOutbox mailOutbox) {
+        mailOutboxRepository.markSent(mailOutbox.getId(), LocalDateTime.now());
+    }
+
+    // 送信に失敗したメールを再送待ちにする（上限に達した場合はDEADにする）
+    // 失敗した場合はtrueを返す
+    @Transactional
+    public boolean markFailed(MailOutbox mailOutbox, String error) {
+        int attempts = mailOutbox.getAttempts() + 1;
+        boolean dead = attempts >= maxAttempts;
+        long delayMillis = Math.min(retryMaxMillis, retryBaseMillis << Math.min(attempts - 1, 30));
+        String lastError = error != null && error.length() > LAST_ERROR_MAX_LENGTH ? error.substring(0, LAST_ERROR_MAX_LENGTH) : error;
+
+        mailOutboxRepository.markFailed(mailOutbox.getId(),
+                dead ? MailOutbox.STATUS_DEAD : MailOutbox.STATUS_PENDING,
+                LocalDateTime.now().plusNanos(delayMillis * 1_000_000),
+                lastError);
+        return dead;
+    }
+
+    public long countPendingMails() {
+        return mailOutboxRepository.countByStatus(MailOutbox.STATUS_PENDING);
+    }
+
+    public long countDeadMails() {
+        return mailOutboxRepository.countByStatus(MailOutbox.STATUS_DEAD);
+    }
+
+    // 最も古い送信待ちメールの登録日時（送信待ちがなければnull）
+    public Timestamp findOldestPendingCreatedAt() {
+        return mailOutboxRepository.findOldestPendingCreatedAt();
+    }
+
+    @Transactional
+    public int deleteSentMailsBefore(LocalDateTime sentBefore) {
+        return mailOutboxRepository.deleteSentBefore(sentBefore);
+    }
+}
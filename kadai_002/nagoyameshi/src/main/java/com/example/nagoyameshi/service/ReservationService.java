@@ -1,9 +1,19 @@
 package com.example.nagoyameshi.service;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -11,6 +21,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.BindingResult;
 
+import com.example.nagoyameshi.dto.AvailabilityCalendar;
 import com.example.nagoyameshi.entity.Reservation;
 import com.example.nagoyameshi.entity.Shop;
 import com.example.nagoyameshi.entity.User;
@@ -19,15 +30,25 @@ import com.example.nagoyameshi.repository.ReservationRepository;
 
 @Service
 public class ReservationService {
+    // 予約カレンダーで予約を受け付ける期間（flatpickr.jsのmaxDateと合わせる）
+    private static final int RESERVABLE_MONTHS = 3;
+
+    private static final Map<String, DayOfWeek> DAY_OF_WEEK_NAMES = Map.of(
+            "月曜日", DayOfWeek.MONDAY, "火曜日", DayOfWeek.TUESDAY, "水曜日", DayOfWeek.WEDNESDAY, "木曜日", DayOfWeek.THURSDAY,
+            "金曜日", DayOfWeek.FRIDAY, "土曜日", DayOfWeek.SATURDAY, "日曜日", DayOfWeek.SUNDAY);
+
 	private final ReservationRepository reservationRepository;
+	private final SeatAvailability seatAvailability;
 
 
-    public ReservationService(ReservationRepository reservationRepository) {
+    public ReservationService(ReservationRepository reservationRepository, SeatAvailability seatAvailability) {
         this.reservationRepository = reservationRepository;
+        this.seatAvailability = seatAvailability;
 
     }
 
     // 指定されたユーザーに紐づく予約を作成日時が新しい順に並べ替え、ページングされた状態で取得する
+    @Transactional(readOnly = true)
     public Page<Reservation> findReservationsByUserOrderByCreatedAtDesc(User user, Pageable pageable) {
         return reservationRepository.findByUserOrderByCreatedAtDesc(user, pageable);
     }
@@ -55,8 +76,73 @@ public class ReservationService {
         return "";
     }
     
+    // 指定した月の予約カレンダーを作成する
+    // 予約できるのは今日から3か月後までで、定休日と過ぎた時刻は空席なしとして扱う（祝祭日は日付の情報がないため考慮しない）
+    public AvailabilityCalendar getAvailabilityCalendar(Shop shop, YearMonth month) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate firstReservableDate = now.toLocalDate();
+        LocalDate lastReservableDate = firstReservableDate.plusMonths(RESERVABLE_MONTHS);
+        LocalDate startDate = month.atDay(1).isBefore(firstReservableDate) ? firstReservableDate : month.atDay(1);
+        LocalDate endDate = month.atEndOfMonth().isAfter(lastReservableDate) ? lastReservableDate : month.atEndOfMonth();
+
+        int firstSlot = 0;
+        int endSlot = 0;
+        if (shop.getOpeningTime() != null && shop.getClosingTime() != null) {
+            firstSlot = (shop.getOpeningTime().toSecondOfDay() / 60 + SeatAvailability.SLOT_MINUTES - 1) / SeatAvailability.SLOT_MINUTES;
+            // 閉店時刻が開店時刻より前の場合は日付をまたいで営業するため、その日の終わりまでを予約できる時刻とする
+            endSlot = shop.getClosingTime().isAfter(shop.getOpeningTime())
+                    ? shop.getClosingTime().toSecondOfDay() / 60 / SeatAvailability.SLOT_MINUTES
+                    : SeatAvailability.SLOTS_PER_DAY;
+        }
+        int[][] seatsLeftBySlot = startDate.isAfter(endDate) || firstSlot >= endSlot
+                ? new int[0][]
+                : seatAvailability.getSeatsLeftBySlot(shop, startDate, endDate);
+        Set<DayOfWeek> regularHolidays = parseRegularHolidays(shop.getRegularHoliday());
+
+        List<AvailabilityCalendar.Day> days = new ArrayList<>();
+        for (LocalDate date = month.atDay(1); !date.isAfter(month.atEndOfMonth()); date = date.plusDays(1)) {
+            if (seatsLeftBySlot.length == 0 || date.isBefore(startDate) || date.isAfter(endDate)
+                    || regularHolidays.contains(date.getDayOfWeek())) {
+                days.add(new AvailabilityCalendar.Day(date.toString(), true, new int[0]));
+                continue;
+            }
+            int[] seatsLeft = Arrays.copyOfRange(seatsLeftBySlot[(int) ChronoUnit.DAYS.between(startDate, date)], firstSlot, endSlot);
+            if (date.equals(now.toLocalDate())) {
+                int currentSlot = now.toLocalTime().toSecondOfDay() / 60 / SeatAvailability.SLOT_MINUTES;
+                Arrays.fill(seatsLeft, 0, Math.max(0, Math.min(seatsLeft.length, currentSlot + 1 - firstSlot)), 0);
+            }
+            days.add(new AvailabilityCalendar.Day(date.toString(), false, seatsLeft));
+        }
+
+        String firstTime = LocalTime.ofSecondOfDay(firstSlot * SeatAvailability.SLOT_MINUTES * 60L % (24 * 60 * 60))
+                .format(DateTimeFormatter.ofPattern("HH:mm"));
+        Integer capacity = shop.getCapacity();
+        return new AvailabilityCalendar(month.toString(), capacity != null ? capacity : 0, firstTime, SeatAvailability.SLOT_MINUTES, days);
+    }
+
+    // 「月曜日,火曜日」形式の定休日を曜日の集合に変換する
+    private Set<DayOfWeek> parseRegularHolidays(String regularHoliday) {
+        Set<DayOfWeek> regularHolidays = EnumSet.noneOf(DayOfWeek.class);
+        if (regularHoliday == null) {
+            return regularHolidays;
+        }
+        for (String holiday : regularHoliday.split(",")) {
+            DayOfWeek dayOfWeek = DAY_OF_WEEK_NAMES.get(holiday.trim());
+            if (dayOfWeek != null) {
+                regularHolidays.add(dayOfWeek);
+            }
+        }
+        return regularHolidays;
+    }
+    
+    // 座席を確保できた場合のみ予約を登録する（満席の場合はfalseを返す）
     @Transactional
-    public void createReservation(ReservationInputForm reservationInputForm, Shop shop, User user) {
+    public boolean createReservation(ReservationInputForm reservationInputForm, Shop shop, User user) {
+        if (!seatAvailability.reserve(shop, reservationInputForm.getReservationDate(),
+                reservationInputForm.getReservationTime(), reservationInputForm.getNumberOfPeople())) {
+            return false;
+        }
+        
     	Reservation reservation = new Reservation();
         reservation.setShop(shop);
         reservation.setUser(user);
@@ -65,11 +151,14 @@ public class ReservationService {
         reservation.setNumberOfPeople(reservationInputForm.getNumberOfPeople());
 
         reservationRepository.save(reservation);
+        return true;
     } 
     @Transactional
     public void deleteReservation(Reservation reservation) {
+        seatAvailability.cancel(reservation);
         reservationRepository.delete(reservation);
     }
+    @Transactional(readOnly = true)
     public Optional<Reservation> findReservationById(Integer id) {
         return reservationRepository.findById(id);
     }
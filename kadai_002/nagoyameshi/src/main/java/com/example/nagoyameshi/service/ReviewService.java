@@ -4,13 +4,17 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.example.nagoyameshi.dto.ReviewListItem;
 import com.example.nagoyameshi.entity.Review;
 import com.example.nagoyameshi.entity.Shop;
 import com.example.nagoyameshi.entity.User;
+import com.example.nagoyameshi.event.ReviewChangedEventPublisher;
 import com.example.nagoyameshi.form.ReviewEditForm;
 import com.example.nagoyameshi.form.ReviewRegisterForm;
 import com.example.nagoyameshi.repository.ReviewRepository;
@@ -21,35 +25,45 @@ public class ReviewService {
 
 	private final ReviewRepository reviewRepository;
 	private final ShopRepository shopRepository;
+	private final ReviewChangedEventPublisher reviewChangedEventPublisher;
 
-	public ReviewService(ReviewRepository reviewRepository, ShopRepository shopRepository) {
+	public ReviewService(ReviewRepository reviewRepository, ShopRepository shopRepository, ReviewChangedEventPublisher reviewChangedEventPublisher) {
 	    this.reviewRepository = reviewRepository;
 	    this.shopRepository = shopRepository;
+	    this.reviewChangedEventPublisher = reviewChangedEventPublisher;
 	}
 
     // 指定されたIDのレビューを取得する（存在しない可能性があるのでOptional）
+    @Transactional(readOnly = true)
     public Optional<Review> findReviewById(Integer id) {
         return reviewRepository.findById(id);
     }
 
     // 指定された店舗の最新レビュー上位6件を取得（投稿日時の降順）
+    @Transactional(readOnly = true)
     public List<Review> findTop6ReviewsByShopOrderByCreatedAtDesc(Shop shop) {
         return reviewRepository.findTop6ByShopOrderByCreatedAtDesc(shop);
     }
 
     // 指定された店舗とユーザーに紐づくレビューを1件取得（1人1レビュー制）
+    @Transactional(readOnly = true)
     public Review findReviewByShopAndUser(Shop shop, User user) {
         return reviewRepository.findByShopAndUser(shop, user);
     }
 
-    // 指定された店舗のレビュー件数を取得
+    // 指定された店舗のレビュー件数を取得（レビューの登録・削除時に更新しているshops.review_countを使う）
+    @Transactional(readOnly = true)
     public long countReviewsByShop(Shop shop) {
-        return reviewRepository.countByShop(shop);
+        return shop.getReviewCount() != null ? shop.getReviewCount() : 0;
     }
 
     // 指定された店舗のレビューをページング付きで取得（投稿日降順）
-    public Page<Review> findReviewsByShopOrderByCreatedAtDesc(Shop shop, Pageable pageable) {
-        return reviewRepository.findByShopOrderByCreatedAtDesc(shop, pageable);
+    // 1ページ分を射影で取得し、総件数は数え直さずに保存済みのレビュー件数を使う
+    @Transactional(readOnly = true)
+    public Page<ReviewListItem> findReviewsByShopOrderByCreatedAtDesc(Shop shop, Pageable pageable) {
+        List<ReviewListItem> reviews = reviewRepository.findListItemsByShopId(shop.getId(),
+                PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+        return new PageImpl<>(reviews, pageable, countReviewsByShop(shop));
     }
 
     // レビューを新規登録（レビュー登録フォームの内容をエンティティに詰めて保存）
@@ -61,42 +75,52 @@ public class ReviewService {
         review.setRating(reviewRegisterForm.getRating());
         review.setComment(reviewRegisterForm.getComment());
         reviewRepository.save(review);
+        shopRepository.addRating(shop.getId(), review.getRating());
+        reviewChangedEventPublisher.publishReviewChanged(shop.getId());
     }
 
     // 既存のレビューを編集（編集フォームの内容で上書き）
     @Transactional
     public void updateReview(ReviewEditForm reviewEditForm, Review review) {
+        int ratingDelta = reviewEditForm.getRating() - review.getRating();
         review.setRating(reviewEditForm.getRating());
         review.setComment(reviewEditForm.getComment());
         reviewRepository.save(review);
-    }
-    
-    public void updateAverageRating(Shop shop) {
-        double avg = reviewRepository.findByShop(shop).stream()
-            .mapToInt(Review::getRating)
-            .average()
-            .orElse(0.0);
-        shop.setAverageRating(avg);
-        shopRepository.save(shop);
+
+        if (ratingDelta != 0) {
+            shopRepository.changeRating(review.getShop().getId(), ratingDelta);
+        }
+        reviewChangedEventPublisher.publishReviewChanged(review.getShop().getId());
     }
 
     // 指定されたレビューを削除
     @Transactional
     public void deleteReview(Review review) {
         reviewRepository.delete(review);
+        shopRepository.removeRating(review.getShop().getId(), review.getRating());
+        reviewChangedEventPublisher.publishReviewChanged(review.getShop().getId());
+    }
+
+    // 全店舗の平均評価とレビュー件数をreviewsテーブルから集計し直す
+    @Transactional
+    public int reconcileShopRatings() {
+        return shopRepository.reconcileRatings();
     }
 
     // 指定されたユーザーがその店舗にレビューをすでに投稿しているかを確認（1人1レビュー制の制御に使用）
+    @Transactional(readOnly = true)
     public boolean hasUserAlreadyReviewed(Shop shop, User user) {
-        return reviewRepository.findByShopAndUser(shop, user) != null;
+        return reviewRepository.existsByShopIdAndUserId(shop.getId(), user.getId());
     }
 
     // 店舗IDを指定して最新レビュー上位6件を取得（Shopオブジェクト不要なケース用）
-    public List<Review> findTop6ReviewsByShopId(Integer shopId) {
-        return reviewRepository.findTop6ByShopIdOrderByCreatedAtDesc(shopId);
+    @Transactional(readOnly = true)
+    public List<ReviewListItem> findTop6ReviewsByShopId(Integer shopId) {
+        return reviewRepository.findListItemsByShopId(shopId, PageRequest.of(0, 6));
     }
 
     // 店舗IDを指定してすべてのレビューを投稿日時の降順で取得（ページングなし）
+    @Transactional(readOnly = true)
     public List<Review> findAllReviewsByShopId(Integer shopId) {
         return reviewRepository.findByShopIdOrderByCreatedAtDesc(shopId);
     }
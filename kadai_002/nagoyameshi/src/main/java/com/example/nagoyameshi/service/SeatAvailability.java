@@ -0,0 +1,320 @@
+package com.example.nagoyameshi.service;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.nagoyameshi.datasource.ReadWriteRoutingDataSource;
+import com.example.nagoyameshi.dto.ReservedSeats;
+import com.example.nagoyameshi.entity.Reservation;
+import com.example.nagoyameshi.entity.Shop;
+import com.example.nagoyameshi.event.ShopChangedEvent;
+import com.example.nagoyameshi.repository.ReservationRepository;
+import com.example.nagoyameshi.repository.SeatSlotRepository;
+
+// 店舗・日付ごとの予約済み人数を10分単位の配列で保持し、空席数の確認と座席の確保を行う
+// 1件の予約は予約時刻から滞在時間分の枠を占有する（日付をまたぐ分は数えない）
+// 配列は空席表示・予約カレンダー用の読み取りキャッシュで、初回参照時に予約テーブルの集計で読み込み、予約の登録・取消のコミット後と有効期限切れで読み直す
+// 座席の確保はキャッシュを使わず、seat_slotsテーブルの滞在時間分の枠の行だけをロック（SELECT ... FOR UPDATE）して判定し、同じトランザクションで人数を加算する（UPDATE 1文）
+// 待たされるのは枠が重なる確保だけで、同じ店舗でも別の日付・時間帯の確保は並行して進み、複数のサーバーで動かしても定員を超えて予約されない
+// 日ごとのオブジェクトを探す表のロックは表の参照・追加の間だけ保持し、データベースの読み込みは日ごとのロックで行う
+@Component
+public class SeatAvailability {
+    public static final int SLOT_MINUTES = 10;
+    public static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+
+    private final ReservationRepository reservationRepository;
+    private final SeatSlotRepository seatSlotRepository;
+    private final int staySlots;
+    // 他のサーバーで登録された予約は通知されないため、この時間を過ぎたキャッシュは読み直す
+    private final long ttlMillis;
+    // 保持する日数は上限を超えると最も長く参照されていない日から破棄する
+    private final ReentrantLock daysLock = new ReentrantLock();
+    private final Map<DayKey, DayOccupancy> days;
+
+    public SeatAvailability(ReservationRepository reservationRepository,
+                            SeatSlotRepository seatSlotRepository,
+                            @Value("${nagoyameshi.reservation.stay-minutes:120}") int stayMinutes,
+                            @Value("${nagoyameshi.reservation.cache-max-days:10000}") int maxDays,
+                            @Value("${nagoyameshi.reservation.cache-ttl-ms:60000}") long ttlMillis) {
+        this.reservationRepository = reservationRepository;
+        this.seatSlotRepository = seatSlotRepository;
+        this.staySlots = Math.max(1, (stayMinutes + SLOT_MINUTES - 1) / SLOT_MINUTES);
+        this.ttlMillis = ttlMillis;
+        this.days = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<DayKey, DayOccupancy> eldest) {
+                return size() > maxDays;
+            }
+        };
+    }
+
+    private record DayKey(int shopId, LocalDate date) {
+    }
+
+    private static final class DayOccupancy {
+        // 読み込み中はデータベースを待つため、仮想スレッドを固定しないReentrantLockを使う
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int[] reservedSeats = new int[SLOTS_PER_DAY];
+        private boolean loaded = false;
+        private long loadedAt;
+        // 破棄のたびに進める世代番号（集計中に破棄された場合、古い集計を反映しないために使う）
+        private long generation = 0;
+
+        private int maxReservedSeats(int from, int to) {
+            int max = 0;
+            for (int slot = from; slot < to; slot++) {
+                max = Math.max(max, reservedSeats[slot]);
+            }
+            return max;
+        }
+
+        private void add(int from, int to, int numberOfPeople) {
+            for (int slot = from; slot < to; slot++) {
+                reservedSeats[slot] = Math.max(0, reservedSeats[slot] + numberOfPeople);
+            }
+        }
+
+        private void invalidate() {
+            generation++;
+            loaded = false;
+        }
+    }
+
+    // 指定した時刻から滞在時間分、何人まで予約できるか（表示用。キャッシュから答える）
+    // 参照するのは滞在時間分の枠（既定では12枠）だけなので、予約件数によらず一定の時間で答える
+    public int getSeatsLeft(Shop shop, LocalDate date, LocalTime time) {
+        DayKey key = new DayKey(shop.getId(), date);
+        DayOccupancy day = acquire(key);
+        int from = slotOf(time);
+        day.lock.lock();
+        try {
+            load(key, day);
+            return seatsLeft(day, from, endSlotOf(from), shop.getCapacity());
+        } finally {
+            day.lock.unlock();
+        }
+    }
+
+    // 期間内の日ごとに、各枠から滞在時間分何人まで予約できるかを返す（[日][枠]）
+    // まだ読み込んでいない日は期間全体の集計クエリ1回でまとめて読み込む
+    public int[][] getSeatsLeftBySlot(Shop shop, LocalDate startDate, LocalDate endDate) {
+        int numberOfDays = (int) ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        DayKey[] keys = new DayKey[numberOfDays];
+        DayOccupancy[] dayOccupancies = new DayOccupancy[numberOfDays];
+        for (int i = 0; i < numberOfDays; i++) {
+            keys[i] = new DayKey(shop.getId(), startDate.plusDays(i));
+            dayOccupancies[i] = acquire(keys[i]);
+        }
+        loadAll(shop.getId(), startDate, endDate, dayOccupancies);
+
+        int[][] seatsLeft = new int[numberOfDays][SLOTS_PER_DAY];
+        for (int i = 0; i < numberOfDays; i++) {
+            DayOccupancy day = dayOccupancies[i];
+            day.lock.lock();
+            try {
+                load(keys[i], day);
+                for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+                    seatsLeft[i][slot] = seatsLeft(day, slot, endSlotOf(slot), shop.getCapacity());
+                }
+            } finally {
+                day.lock.unlock();
+            }
+        }
+        return seatsLeft;
+    }
+
+    // 空席があればtrueを返す（呼び出し元のトランザクションで予約を登録する）
+    // トランザクション内で呼び出し、枠の行のロックはコミットまたはロールバックまで保持される
+    public boolean reserve(Shop shop, LocalDate date, LocalTime time, int numberOfPeople) {
+        List<Integer> slots = slotsOf(time);
+        int maxReservedSeats = lockSlots(shop.getId(), date, slots).stream().mapToInt(Integer::intValue).max().orElse(0);
+        if (shop.getCapacity() == null || maxReservedSeats + numberOfPeople > shop.getCapacity()) {
+            return false;
+        }
+        seatSlotRepository.addReservedSeats(shop.getId(), date, slots, numberOfPeople);
+
+        DayKey key = new DayKey(shop.getId(), date);
+        afterCommit(() -> invalidate(key));
+        return true;
+    }
+
+    // 予約を削除する前に呼び出し、枠の人数を減らす（予約の削除がコミットされたら、その日を読み直す）
+    public void cancel(Reservation reservation) {
+        int shopId = reservation.getShop().getId();
+        LocalDate date = reservation.getReservationDate();
+        List<Integer> slots = slotsOf(reservation.getReservationTime());
+        lockSlots(shopId, date, slots);
+        seatSlotRepository.addReservedSeats(shopId, date, slots, -reservation.getNumberOfPeople());
+
+        DayKey key = new DayKey(shopId, date);
+        afterCommit(() -> invalidate(key));
+    }
+
+    // 枠の行を枠の順にロックし、予約済み人数を返す（まだない行は、その日の予約の集計から作る）
+    // 行がない枠を占有する予約は、行を作らずに登録された予約（この仕組みの導入前の予約や初期データ）だけで、どれもコミット済みのため集計に含まれる
+    // 行がない場合は既存の行も含めて枠の順に作成・ロックし、ロックを取る順序を常に枠の昇順にそろえてデッドロックを防ぐ
+    private List<Integer> lockSlots(int shopId, LocalDate date, List<Integer> slots) {
+        if (seatSlotRepository.findSlots(shopId, date, slots).size() < slots.size()) {
+            int[] reservedSeats = new int[SLOTS_PER_DAY];
+            for (ReservedSeats seats : reservationRepository.sumNumberOfPeopleByShopIdAndReservationDate(shopId, date)) {
+                int start = slotOf(seats.getReservationTime());
+                for (int slot = start; slot < endSlotOf(start); slot++) {
+                    reservedSeats[slot] += seats.getNumberOfPeople().intValue();
+                }
+            }
+            for (int slot : slots) {
+                seatSlotRepository.insertOrLock(shopId, date, slot, reservedSeats[slot]);
+            }
+        }
+        return seatSlotRepository.lockReservedSeats(shopId, date, slots);
+    }
+
+    // 予約時刻から滞在時間分の枠の番号
+    private List<Integer> slotsOf(LocalTime time) {
+        int from = slotOf(time);
+        return IntStream.range(from, endSlotOf(from)).boxed().toList();
+    }
+
+    // 削除された店舗の予約状況を破棄する
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        if (!event.isDeleted()) {
+            return;
+        }
+        daysLock.lock();
+        try {
+            days.keySet().removeIf(key -> key.shopId() == event.getShopId());
+        } finally {
+            daysLock.unlock();
+        }
+    }
+
+    private DayOccupancy acquire(DayKey key) {
+        daysLock.lock();
+        try {
+            return days.computeIfAbsent(key, k -> new DayOccupancy());
+        } finally {
+            daysLock.unlock();
+        }
+    }
+
+    // 破棄済みの日は次の参照で作り直されるため、表に残っている場合だけ読み直させる
+    private void invalidate(DayKey key) {
+        DayOccupancy day;
+        daysLock.lock();
+        try {
+            day = days.get(key);
+        } finally {
+            daysLock.unlock();
+        }
+        if (day == null) {
+            return;
+        }
+        day.lock.lock();
+        try {
+            day.invalidate();
+        } finally {
+            day.lock.unlock();
+        }
+    }
+
+    private boolean isFresh(DayOccupancy day) {
+        return day.loaded && System.currentTimeMillis() - day.loadedAt <= ttlMillis;
+    }
+
+    // 日ごとのオブジェクトのロックを取得した状態で呼び出す
+    private void load(DayKey key, DayOccupancy day) {
+        if (isFresh(day)) {
+            return;
+        }
+        // 予約の確保中は呼び出し元のトランザクション（プライマリ）で、表示用の読み込みもコミット直後の予約を含めるためプライマリから読む
+        apply(day, ReadWriteRoutingDataSource.usePrimary(
+                () -> reservationRepository.sumNumberOfPeopleByShopIdAndReservationDate(key.shopId(), key.date())));
+    }
+
+    // 未読み込みの日がある場合、期間の集計はロックの外で行い、反映は日ごとのロック内で集計中に破棄されなかった日にだけ行う
+    private void loadAll(int shopId, LocalDate startDate, LocalDate endDate, DayOccupancy[] dayOccupancies) {
+        long[] generations = new long[dayOccupancies.length];
+        boolean allFresh = true;
+        for (int i = 0; i < dayOccupancies.length; i++) {
+            DayOccupancy day = dayOccupancies[i];
+            day.lock.lock();
+            try {
+                allFresh &= isFresh(day);
+                generations[i] = day.generation;
+            } finally {
+                day.lock.unlock();
+            }
+        }
+        if (allFresh) {
+            return;
+        }
+
+        Map<LocalDate, List<ReservedSeats>> reservedSeatsByDate = ReadWriteRoutingDataSource.usePrimary(
+                () -> reservationRepository.sumNumberOfPeopleByShopIdAndReservationDateBetween(shopId, startDate, endDate)).stream()
+                .collect(Collectors.groupingBy(ReservedSeats::getReservationDate));
+        for (int i = 0; i < dayOccupancies.length; i++) {
+            DayOccupancy day = dayOccupancies[i];
+            day.lock.lock();
+            try {
+                if (!isFresh(day) && day.generation == generations[i]) {
+                    apply(day, reservedSeatsByDate.getOrDefault(startDate.plusDays(i), List.of()));
+                }
+            } finally {
+                day.lock.unlock();
+            }
+        }
+    }
+
+    private void apply(DayOccupancy day, List<ReservedSeats> reservedSeatsList) {
+        Arrays.fill(day.reservedSeats, 0);
+        for (ReservedSeats reservedSeats : reservedSeatsList) {
+            int from = slotOf(reservedSeats.getReservationTime());
+            day.add(from, endSlotOf(from), reservedSeats.getNumberOfPeople().intValue());
+        }
+        day.loaded = true;
+        day.loadedAt = System.currentTimeMillis();
+    }
+
+    private int seatsLeft(DayOccupancy day, int from, int to, Integer capacity) {
+        if (capacity == null) {
+            return 0;
+        }
+        return Math.max(0, capacity - day.maxReservedSeats(from, to));
+    }
+
+    private int slotOf(LocalTime time) {
+        return time.toSecondOfDay() / 60 / SLOT_MINUTES;
+    }
+
+    private int endSlotOf(int from) {
+        return Math.min(from + staySlots, SLOTS_PER_DAY);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -1,27 +1,32 @@
 package com.example.nagoyameshi.service;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.LocalTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.example.nagoyameshi.dto.ShopListCursor;
+import com.example.nagoyameshi.dto.ShopListItem;
 import com.example.nagoyameshi.entity.Category;
 import com.example.nagoyameshi.entity.Shop;
+import com.example.nagoyameshi.event.ShopChangedEventPublisher;
 import com.example.nagoyameshi.form.ShopEditForm;
 import com.example.nagoyameshi.form.ShopRegisterForm;
 import com.example.nagoyameshi.repository.CategoryRepository;
 import com.example.nagoyameshi.repository.ShopRepository;
+import com.example.nagoyameshi.search.ShopSearchIndex;
+import com.example.nagoyameshi.storage.ImageStorage;
 
 
 
@@ -29,43 +34,50 @@ import com.example.nagoyameshi.repository.ShopRepository;
 public class ShopService {
    private final ShopRepository shopRepository;
    private final CategoryRepository categoryRepository;
+   private final ShopSearchIndex shopSearchIndex;
+   private final ShopChangedEventPublisher shopChangedEventPublisher;
+   private final ImageStorage imageStorage;
 
-   public ShopService(ShopRepository shopRepository, CategoryRepository categoryRepository) {
+   public ShopService(ShopRepository shopRepository, CategoryRepository categoryRepository, ShopSearchIndex shopSearchIndex, ShopChangedEventPublisher shopChangedEventPublisher, ImageStorage imageStorage) {
        this.shopRepository = shopRepository;
        this.categoryRepository = categoryRepository;
+       this.shopSearchIndex = shopSearchIndex;
+       this.shopChangedEventPublisher = shopChangedEventPublisher;
+       this.imageStorage = imageStorage;
    }
 
    // すべての店舗をページングされた状態で取得する
+   @Transactional(readOnly = true)
    public Page<Shop> findAllShops(Pageable pageable) {
        return shopRepository.findAll(pageable);
    }
    
-   // すべての店舗を平均評価が高い順に並べ替え、ページングされた状態で取得する
-   public Page<Shop> findAllShopsByOrderByAverageRatingDesc(Pageable pageable) {
-       return shopRepository.findAllByOrderByAverageRatingDesc(pageable);
-   } 
-
    // 指定されたキーワードを店舗名に含む店舗を、ページングされた状態で取得する
-   public Page<Shop> findShopByNameLike(String keyword, Pageable pageable) {
+   @Transactional(readOnly = true)
+   public Page<ShopListItem> findShopByNameLike(String keyword, Pageable pageable) {
        return shopRepository.findByNameLike("%" + keyword + "%", pageable);
    }
 
    // 指定したidを持つ店舗を取得する
+   @Transactional(readOnly = true)
    public Optional<Shop> findShopById(Integer id) {
        return shopRepository.findById(id);
    }
 
    // 店舗のレコード数を取得する
+   @Transactional(readOnly = true)
    public long countShops() {
        return shopRepository.count();
    }
 
    // idが最も大きい店舗を取得する
+   @Transactional(readOnly = true)
    public Shop findFirstShopByOrderByIdDesc() {
        return shopRepository.findFirstByOrderByIdDesc();
    }
    
    // 指定されたカテゴリの店舗を、ページングされた状態で取得する
+   @Transactional(readOnly = true)
    public Page<Shop> findShopsByCategory(String categoryName, Pageable pageable) {
 	    return shopRepository.findByCategory_Name(categoryName, pageable);
 	}
@@ -78,53 +90,87 @@ public class ShopService {
        return String.join(",", holidays);
    }
    
-// 指定されたキーワードを店舗名または住所に含む店舗を作成日時が新しい順に並べ替え、ページングされた状態で取得する
-   public Page<Shop> findShopsByNameLikeOrAddressLikeOrderByCreatedAtDesc(String nameKeyword, String addressKeyword, Pageable pageable) {
-       return shopRepository.findByNameLikeOrAddressLikeOrderByCreatedAtDesc("%" + nameKeyword + "%", "%" + addressKeyword + "%", pageable);
+// 指定されたキーワードを店舗名・カテゴリ名・住所に含む店舗を一致度が高い順に並べ替え、ページングされた状態で取得する
+   @Transactional(readOnly = true)
+   public Page<ShopListItem> searchShops(String keyword, Pageable pageable) {
+       List<Integer> shopIds = shopSearchIndex.search(keyword);
+       int from = (int) Math.min(pageable.getOffset(), shopIds.size());
+       int to = Math.min(from + pageable.getPageSize(), shopIds.size());
+       List<Integer> pageIds = shopIds.subList(from, to);
+       if (pageIds.isEmpty()) {
+           return new PageImpl<>(List.of(), pageable, shopIds.size());
+       }
+
+       // IN句の結果は順不同のため、検索インデックスの順位に並べ直す
+       Map<Integer, ShopListItem> shops = new HashMap<>();
+       for (ShopListItem shop : shopRepository.findListItemsByIdIn(pageIds)) {
+           shops.put(shop.getId(), shop);
+       }
+       List<ShopListItem> content = pageIds.stream().map(shops::get).filter(Objects::nonNull).toList();
+       return new PageImpl<>(content, pageable, shopIds.size());
    }
 
-   // 指定されたキーワードを住所に含む店舗を作成日時が新しい順に並べ替え、ページングされた状態で取得する
-   public Page<Shop> findShopsByAddressLikeOrderByCreatedAtDesc(String area, Pageable pageable) {
-       return shopRepository.findByAddressLikeOrderByCreatedAtDesc("%" + area + "%", pageable);
+   // 指定されたキーワードに一致する店舗を平均評価が高い順に並べ替え、ページングされた状態で取得する
+   @Transactional(readOnly = true)
+   public Page<ShopListItem> searchShopsOrderByAverageRatingDesc(String keyword, Pageable pageable) {
+       List<Integer> shopIds = shopSearchIndex.search(keyword);
+       Pageable unsorted = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+       if (shopIds.isEmpty()) {
+           return Page.empty(unsorted);
+       }
+       return shopRepository.findByIdInOrderByAverageRatingDesc(shopIds, unsorted);
    }
 
-   // すべての店舗を作成日時が新しい順に並べ替え、ページングされた状態で取得する
-   public Page<Shop> findAllShopsByOrderByCreatedAtDesc(Pageable pageable) {
-       return shopRepository.findAllByOrderByCreatedAtDesc(pageable);
+   // 作成日時が新しい順に、カーソル（直前のページ末尾）より後ろの店舗を1ページ分取得する
+   // categoryIdとareaがどちらもnullの場合は全店舗が対象
+   @Transactional(readOnly = true)
+   public Slice<ShopListItem> findShopsByOrderByCreatedAtDesc(Integer categoryId, String area, ShopListCursor cursor, int size) {
+       Pageable pageable = PageRequest.of(0, size);
+
+       if (area != null && !area.isEmpty()) {
+           return shopRepository.findNewestSliceByAddressLike("%" + area + "%", cursor.createdAt(), cursor.id(), pageable);
+       }
+       if (categoryId != null) {
+           return shopRepository.findNewestSliceByCategoryId(categoryId, cursor.createdAt(), cursor.id(), pageable);
+       }
+       return shopRepository.findNewestSlice(cursor.createdAt(), cursor.id(), pageable);
+   }
+
+   // 平均評価が高い順に、カーソル（直前のページ末尾）より後ろの店舗を1ページ分取得する
+   // categoryIdとareaがどちらもnullの場合は全店舗が対象
+   @Transactional(readOnly = true)
+   public Slice<ShopListItem> findShopsByOrderByAverageRatingDesc(Integer categoryId, String area, ShopListCursor cursor, int size) {
+       Pageable pageable = PageRequest.of(0, size);
+
+       if (area != null && !area.isEmpty()) {
+           return shopRepository.findRankingSliceByAddressLike("%" + area + "%", cursor.averageRating(), cursor.id(), pageable);
+       }
+       if (categoryId != null) {
+           return shopRepository.findRankingSliceByCategoryId(categoryId, cursor.averageRating(), cursor.id(), pageable);
+       }
+       return shopRepository.findRankingSlice(cursor.averageRating(), cursor.id(), pageable);
+   }
+
+   // 一覧の件数表示用
+   @Transactional(readOnly = true)
+   public long countShops(Integer categoryId, String area) {
+       if (area != null && !area.isEmpty()) {
+           return shopRepository.countByAddressLike("%" + area + "%");
+       }
+       return categoryId != null ? shopRepository.countByCategoryId(categoryId) : shopRepository.count();
    }
-   
-   // 指定されたカテゴリ名に該当する店舗を作成日時が新しい順に並べ替え、ページングされた状態で取得する
-   public Page<Shop> findByCategoryNameOrderByCreatedAtDesc(String categoryName, Pageable pageable) {
-	    return shopRepository.findByCategory_NameOrderByCreatedAtDesc(categoryName, pageable);
-	}
-   
-   // 指定されたidのカテゴリが設定された店舗を平均評価が高い順に並べ替え、ページングされた状態で取得する
-   public Page<Shop> findShopsByCategoryIdOrderByAverageRatingDesc(Integer categoryId, Pageable pageable) {
-       return shopRepository.findByCategoryIdOrderByAverageRatingDesc(categoryId, pageable);
-   } 
 
    // 作成日時が新しい順に10件の店舗を取得する
-   	public List<Shop> findTop10ShopsByOrderByCreatedAtDesc() {
-       return shopRepository.findTop10ByOrderByCreatedAtDesc();
+   	@Transactional(readOnly = true)
+   	public List<ShopListItem> findTop10ShopsByOrderByCreatedAtDesc() {
+       return shopRepository.findNewListItems(PageRequest.of(0, 10));
    }  
    	
-   	public Page<Shop> findShopsByNameLikeOrAddressLikeOrCategoryNameLikeOrderByAverageRatingDesc(
-   	        String nameKeyword, String addressKeyword, String categoryNameKeyword, Pageable pageable) {
-
-   	    return shopRepository.findByNameLikeOrAddressLikeOrCategoryNameLikeOrderByAverageRatingDesc(
-   	            "%" + nameKeyword + "%", "%" + addressKeyword + "%", "%" + categoryNameKeyword + "%", pageable);
-   	}
    	
-   	public List<Shop> findTop10ShopsByOrderByAverageRatingDesc() {
-   	    List<Shop> allShops = shopRepository.findAll();
-   	    return allShops.stream()
-   	            .sorted((s1, s2) -> Double.compare(s2.getAverageRating(), s1.getAverageRating()))
-   	            .limit(10)
-   	            .toList();
-   	}
-   	public List<Shop> findTop10ShopsByAverageRating() {
-   	    Pageable pageable = PageRequest.of(0, 10);
-   	    return shopRepository.findAllByOrderByAverageRatingDesc(pageable).getContent();
+   	// 平均評価が高い順に10件の店舗を取得する
+   	@Transactional(readOnly = true)
+   	public List<ShopListItem> findTop10ShopsByAverageRating() {
+   	    return shopRepository.findRankingListItems(PageRequest.of(0, 10));
    	}
 
 
@@ -134,11 +180,7 @@ public class ShopService {
        MultipartFile imageFile = shopRegisterForm.getImageFile();
 
        if (!imageFile.isEmpty()) {
-           String imageName = imageFile.getOriginalFilename(); 
-           String hashedImageName = generateNewFileName(imageName);
-           Path filePath = Paths.get("src/main/resources/static/storage/" + hashedImageName);
-           copyImageFile(imageFile, filePath);
-           shop.setImageName(hashedImageName);
+           shop.setImageName(imageStorage.store(imageFile));
        }
        
        Category category = categoryRepository.getReferenceById(shopRegisterForm.getCategoryId());
@@ -155,6 +197,7 @@ public class ShopService {
        shop.setPhoneNumber(shopRegisterForm.getPhoneNumber());
 
        shopRepository.save(shop);
+       shopChangedEventPublisher.publishShopSaved(shop.getId());
    }
 
    @Transactional
@@ -163,11 +206,7 @@ public class ShopService {
        MultipartFile imageFile = shopEditForm.getImageFile();
 
        if (!imageFile.isEmpty()) {
-           String imageName = imageFile.getOriginalFilename(); 
-           String hashedImageName = generateNewFileName(imageName);
-           Path filePath = Paths.get("src/main/resources/static/storage/" + hashedImageName);
-           copyImageFile(imageFile, filePath);
-           shop.setImageName(hashedImageName);
+           shop.setImageName(imageStorage.store(imageFile));
        }
        
        Category category = categoryRepository.getReferenceById(shopEditForm.getCategoryId());
@@ -183,11 +222,13 @@ public class ShopService {
        shop.setPhoneNumber(shopEditForm.getPhoneNumber());
 
        shopRepository.save(shop);
+       shopChangedEventPublisher.publishShopSaved(shop.getId());
    }
 
    @Transactional
    public void delete(Shop shop) {
        shopRepository.delete(shop);
+       shopChangedEventPublisher.publishShopDeleted(shop.getId());
    }
    
    // 営業時間のチェック
@@ -195,23 +236,9 @@ public class ShopService {
        return closingTime.isAfter(openingTime);
    }
 
-   // UUIDを使って生成したファイル名を返す
-   public String generateNewFileName(String fileName) {
-       String[] fileNames = fileName.split("\\.");                
-       for (int i = 0; i < fileNames.length - 1; i++) {
-           fileNames[i] = UUID.randomUUID().toString();            
-       }
-       String hashedFileName = String.join(".", fileNames);
-       return hashedFileName;
-   }     
-   
-   // 画像ファイルを指定したファイルにコピーする
-   public void copyImageFile(MultipartFile imageFile, Path filePath) {           
-       try {
-           Files.copy(imageFile.getInputStream(), filePath);
-       } catch (IOException e) {
-           e.printStackTrace();
-       }          
+   // 画像ファイルが未選択か、保存できる形式（JPEG・PNG・GIF）ならtrue
+   public boolean isSupportedImageFile(MultipartFile imageFile) {
+       return imageFile == null || imageFile.isEmpty() || imageStorage.isSupported(imageFile.getOriginalFilename());
    }
 }
 
@@ -1,28 +1,36 @@
 package com.example.nagoyameshi.service;
 
+import java.time.Instant;
 import java.util.Optional;
 
 import jakarta.servlet.http.HttpServletRequest;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.example.nagoyameshi.entity.User;
+import com.example.nagoyameshi.metrics.Metrics;
 import com.stripe.Stripe;
 import com.stripe.exception.ApiConnectionException;
 import com.stripe.exception.ApiException;
 import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.EventDataObjectDeserializationException;
 import com.stripe.exception.InvalidRequestException;
 import com.stripe.exception.PermissionException;
 import com.stripe.exception.RateLimitException;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Event;
+import com.stripe.model.EventDataObjectDeserializer;
 import com.stripe.model.StripeObject;
+import com.stripe.model.Subscription;
 import com.stripe.model.checkout.Session;
 import com.stripe.param.checkout.SessionCreateParams;
 
 @Service
 public class StripeService {
+    private static final Logger logger = LoggerFactory.getLogger(StripeService.class);
 
     @Value("${stripe.api-key}")
     private String stripeApiKey;
@@ -42,12 +50,33 @@ public class StripeService {
     private String stripeReturnUrl;
 
     private final UserService userService;
+    private final Metrics metrics;
 
-    public StripeService(UserService userService) {
+    public StripeService(UserService userService, Metrics metrics) {
         this.userService = userService;
+        this.metrics = metrics;
     }
 
-    public String createStripeSession(User user, HttpServletRequest request) {
+    @FunctionalInterface
+    private interface StripeCall<T> {
+        T call() throws StripeException;
+    }
+
+    // StripeのAPIの呼び出しごとに、応答までの時間を成否別に記録する
+    private <T> T callStripe(String operation, StripeCall<T> call) throws StripeException {
+        long startNanos = System.nanoTime();
+        String result = "error";
+        try {
+            T value = call.call();
+            result = "success";
+            return value;
+        } finally {
+            metrics.timer("nagoyameshi_stripe_requests_seconds", "StripeのAPIの応答時間", "operation", operation, "result", result)
+                    .record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public String createStripeSession(Integer userId, HttpServletRequest request) {
         Stripe.apiKey = stripeApiKey;
 
         SessionCreateParams sessionCreateParams = SessionCreateParams.builder()
@@ -59,60 +88,119 @@ public class StripeService {
                                 .setPrice("price_1RnhSxQv6HLiC3Qyw3Py0OuL")
                                 .setQuantity(1L)
                                 .build())
-                .putMetadata("userId", user.getId().toString())
+                .putMetadata("userId", userId.toString())
                 .build();
 
         try {
             // Stripeに送信する支払い情報をセッションとして作成する
-            Session session = Session.create(sessionCreateParams);
+            Session session = callStripe("checkout_session_create", () -> Session.create(sessionCreateParams));
 
             // 作成したセッションのIDを返す
             return session.getUrl();
             
         } catch (RateLimitException e) {
-            System.out.println("短時間のうちに過剰な回数のAPIコールが行われました。");
+            logger.warn("短時間のうちに過剰な回数のAPIコールが行われました。", e);
             return "";
         } catch (InvalidRequestException e) {
-            System.out.println("APIコールのパラメーターが誤っているか、状態が誤っているか、方法が無効でした。");
+            logger.warn("APIコールのパラメーターが誤っているか、状態が誤っているか、方法が無効でした。", e);
             return "";
         } catch (PermissionException e) {
-            System.out.println("このリクエストに使用されたAPIキーには必要な権限がありません。");
+            logger.warn("このリクエストに使用されたAPIキーには必要な権限がありません。", e);
             return "";
         } catch (AuthenticationException e) {
-            System.out.println("Stripeは、提供された情報では認証できません。");
+            logger.warn("Stripeは、提供された情報では認証できません。", e);
             return "";
         } catch (ApiConnectionException e) {
-            System.out.println("お客様のサーバーとStripeの間でネットワークの問題が発生しました。");
+            logger.warn("お客様のサーバーとStripeの間でネットワークの問題が発生しました。", e);
             return "";
         } catch (ApiException e) {
-            System.out.println("Stripe側で問題が発生しました（稀な状況です）。");
+            logger.warn("Stripe側で問題が発生しました（稀な状況です）。", e);
             return "";
         } catch (StripeException e) {
-            System.out.println("Stripeとの通信中に予期せぬエラーが発生しました。");
+            logger.warn("Stripeとの通信中に予期せぬエラーが発生しました。", e);
             return "";
         }
     }
 
-    // Webhookで呼び出され、ロールを変更
+    // Webhook（checkout.session.completed）で呼び出され、ロールを変更
+    // StripeWebhookServiceのトランザクション内で呼び出す（例外はそのまま投げ、インボックスで再試行する）
+    // どのイベントも、その会員に反映済みのイベントより古ければ何もしない（解約後に再送された古いイベントで有料会員に戻さない）
     public void processSessionCompleted(Event event) {
-        Optional<StripeObject> optional = event.getDataObjectDeserializer().getObject();
-
-        optional.ifPresent(stripeObject -> {
-            Session session = (Session) stripeObject;
-            String userId = session.getMetadata().get("userId");
-
-            if (userId != null) {
-                try {
-                    // ユーザーを取得してロールを更新
-                    Integer id = Integer.parseInt(userId);
-                    userService.updateUserRole(id, "ROLE_PREMIUM");
-                    System.out.println("ユーザーID " + userId + " をサブスク会員に変更しました");
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+        Session session = (Session) deserialize(event);
+        String userId = session.getMetadata() != null ? session.getMetadata().get("userId") : null;
+
+        if (userId != null) {
+            // ユーザーを取得してロールを更新し、以降のサブスクリプションのイベントで使う顧客idを保存する
+            Integer id = Integer.parseInt(userId);
+            if (!accept(id, event, false)) {
+                return;
+            }
+            userService.updateUserRole(id, "ROLE_PREMIUM");
+            if (session.getCustomer() != null) {
+                userService.updateStripeCustomerId(id, session.getCustomer());
+            }
+            logger.info("ユーザーID {} をサブスク会員に変更しました", userId);
+        }
+    }
+
+    // Webhook（customer.subscription.updated）で呼び出され、サブスクリプションの状態に合わせてロールを変更
+    public void processSubscriptionUpdated(Event event) {
+        Subscription subscription = (Subscription) deserialize(event);
+        String roleName = switch (subscription.getStatus()) {
+            case "active", "trialing" -> "ROLE_PREMIUM";
+            case "canceled", "unpaid", "incomplete_expired" -> "ROLE_USER";
+            // 支払い遅延中などはStripeの再請求の結果を待つ
+            default -> null;
+        };
+        if (roleName != null) {
+            updateRoleByStripeCustomerId(event, subscription.getCustomer(), roleName, false);
+        }
+    }
+
+    // Webhook（customer.subscription.deleted）で呼び出され、無料会員に戻す
+    // 解約は最後の状態のため、同じ秒に作成された更新イベントより優先する
+    public void processSubscriptionDeleted(Event event) {
+        Subscription subscription = (Subscription) deserialize(event);
+        updateRoleByStripeCustomerId(event, subscription.getCustomer(), "ROLE_USER", true);
+    }
+
+    // 管理者のロールは変更しない
+    private void updateRoleByStripeCustomerId(Event event, String stripeCustomerId, String roleName, boolean sameSecond) {
+        userService.findUserByStripeCustomerId(stripeCustomerId).ifPresent(user -> {
+            if (!accept(user.getId(), event, sameSecond)) {
+                return;
+            }
+            if (!"ROLE_ADMIN".equals(user.getRole().getName()) && !roleName.equals(user.getRole().getName())) {
+                userService.updateUserRole(user.getId(), roleName);
+                logger.info("ユーザーID {} のロールを {} に変更しました", user.getId(), roleName);
             }
         });
     }
+
+    // 反映済みのイベントより古いイベントはログに残して読み飛ばす（インボックスでは処理済みになる）
+    private boolean accept(Integer userId, Event event, boolean sameSecond) {
+        long created = event.getCreated() != null ? event.getCreated() : Instant.now().getEpochSecond();
+        if (userService.acceptStripeEvent(userId, created, sameSecond)) {
+            return true;
+        }
+        logger.info("反映済みのイベントより古いため、Webhookイベント {}（{}）をユーザーID {} に反映しませんでした", event.getId(), event.getType(), userId);
+        return false;
+    }
+
+    // イベントのAPIバージョンがライブラリと異なる場合も、受け取った内容のまま読み込む
+    private StripeObject deserialize(Event event) {
+        EventDataObjectDeserializer deserializer = event.getDataObjectDeserializer();
+        Optional<StripeObject> optional = deserializer.getObject();
+        if (optional.isPresent()) {
+            return optional.get();
+        }
+        try {
+            return deserializer.deserializeUnsafe();
+        } catch (EventDataObjectDeserializationException e) {
+            throw new IllegalStateException("Webhookイベントの内容を読み込めませんでした: " + event.getId(), e);
+        }
+    }
+
     public String createCustomerPortalUrl(User user) throws StripeException {
         Stripe.apiKey = stripeApiKey;
 
@@ -122,7 +210,7 @@ public class StripeService {
             .build();
 
         //Billing Portal用のSessionを生成
-        Session session = Session.create(params);
+        Session session = callStripe("billing_portal_session_create", () -> Session.create(params));
         return session.getUrl();
     }
 }
@@ -0,0 +1,138 @@
+package com.example.nagoyameshi.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.nagoyameshi.entity.StripeWebhookEvent;
+import com.example.nagoyameshi.event.StripeWebhookReceivedEventPublisher;
+import com.example.nagoyameshi.repository.StripeWebhookEventRepository;
+import com.stripe.model.Event;
+import com.stripe.model.StripeObject;
+import com.stripe.net.ApiResource;
+
+// StripeのWebhookイベントのインボックス（stripe_webhook_events）を操作する
+// イベントidを主キーにして受信時に1回だけ登録し、StripeWebhookProcessorが1回だけ処理済みにする
+@Service
+public class StripeWebhookService {
+    private static final int LAST_ERROR_MAX_LENGTH = 1000;
+
+    // インボックスに登録するイベントの種類（それ以外は受信を返すだけで何もしない）
+    private static final Set<String> HANDLED_EVENT_TYPES = Set.of(
+            "checkout.session.completed",
+            "customer.subscription.updated",
+            "customer.subscription.deleted");
+
+    private final StripeWebhookEventRepository stripeWebhookEventRepository;
+    private final StripeWebhookReceivedEventPublisher stripeWebhookReceivedEventPublisher;
+    private final StripeService stripeService;
+    private final int maxAttempts;
+    private final long retryBaseMillis;
+    private final long retryMaxMillis;
+
+    public StripeWebhookService(StripeWebhookEventRepository stripeWebhookEventRepository,
+                                StripeWebhookReceivedEventPublisher stripeWebhookReceivedEventPublisher,
+                                StripeService stripeService,
+                                @Value("${nagoyameshi.stripe.webhook-max-attempts:10}") int maxAttempts,
+                                @Value("${nagoyameshi.stripe.webhook-retry-base-ms:10000}") long retryBaseMillis,
+                                @Value("${nagoyameshi.stripe.webhook-retry-max-ms:3600000}") long retryMaxMillis) {
+        this.stripeWebhookEventRepository = stripeWebhookEventRepository;
+        this.stripeWebhookReceivedEventPublisher = stripeWebhookReceivedEventPublisher;
+        this.stripeService = stripeService;
+        this.maxAttempts = maxAttempts;
+        this.retryBaseMillis = retryBaseMillis;
+        this.retryMaxMillis = retryMaxMillis;
+    }
+
+    // 署名を確認したイベントを登録する（Stripeの再送などで登録済みのイベントは無視する）
+    // 新たに登録した場合はtrueを返す
+    @Transactional
+    public boolean receive(Event event, String payload) {
+        if (!HANDLED_EVENT_TYPES.contains(event.getType())) {
+            return false;
+        }
+
+        LocalDateTime eventCreated = event.getCreated() != null
+                ? LocalDateTime.ofInstant(Instant.ofEpochSecond(event.getCreated()), ZoneId.systemDefault())
+                : LocalDateTime.now();
+        int inserted = stripeWebhookEventRepository.insertIgnore(event.getId(), event.getType(), eventCreated, payload,
+                LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+        if (inserted == 0) {
+            return false;
+        }
+
+        stripeWebhookReceivedEventPublisher.publishStripeWebhookReceived();
+        return true;
+    }
+
+    public List<StripeWebhookEvent> findDueEvents(int limit) {
+        return stripeWebhookEventRepository.findDue(LocalDateTime.now(), PageRequest.of(0, limit));
+    }
+
+    // 処理するイベントを確保する（他のサーバーが先に確保した場合はfalse）
+    // 処理中の期限は処理済みにする際の条件に使うため、DBに保存される精度（秒）に切り捨てる
+    @Transactional
+    public boolean claim(StripeWebhookEvent webhookEvent, LocalDateTime leaseUntil) {
+        LocalDateTime truncatedLeaseUntil = leaseUntil.truncatedTo(ChronoUnit.SECONDS);
+        if (stripeWebhookEventRepository.claim(webhookEvent.getEventId(), webhookEvent.getNextAttemptAt(), truncatedLeaseUntil) != 1) {
+            return false;
+        }
+        webhookEvent.setNextAttemptAt(truncatedLeaseUntil);
+        return true;
+    }
+
+    // イベントの内容に合わせて会員情報を更新し、同じトランザクションで処理済みにする
+    // 処理中の期限が切れて他のサーバーが処理した場合は、更新ごと取り消す
+    @Transactional
+    public void process(StripeWebhookEvent webhookEvent) {
+        Event event = StripeObject.deserializeStripeObject(webhookEvent.getPayload(), Event.class, ApiResource.getGlobalResponseGetter());
+
+        switch (webhookEvent.getEventType()) {
+            case "checkout.session.completed" -> stripeService.processSessionCompleted(event);
+            case "customer.subscription.updated" -> stripeService.processSubscriptionUpdated(event);
+            case "customer.subscription.deleted" -> stripeService.processSubscriptionDeleted(event);
+            default -> throw new IllegalStateException("処理できないWebhookイベントです: " + webhookEvent.getEventType());
+        }
+
+        if (stripeWebhookEventRepository.markProcessed(webhookEvent.getEventId(), webhookEvent.getNextAttemptAt(), LocalDateTime.now()) != 1) {
+            throw new IllegalStateException("Webhookイベントは他の処理で処理済みです: " + webhookEvent.getEventId());
+        }
+    }
+
+    // 処理に失敗したイベントを再試行待ちにする（上限に達した場合はFAILEDにする）
+    // 再試行を中止した場合はtrueを返す
+    @Transactional
+    public boolean markFailed(StripeWebhookEvent webhookEvent, String error) {
+        int attempts = webhookEvent.getAttempts() + 1;
+        boolean failed = attempts >= maxAttempts;
+        long delayMillis = Math.min(retryMaxMillis, retryBaseMillis << Math.min(attempts - 1, 30));
+        String lastError = error != null && error.length() > LAST_ERROR_MAX_LENGTH ? error.substring(0, LAST_ERROR_MAX_LENGTH) : error;
+
+        stripeWebhookEventRepository.markFailed(webhookEvent.getEventId(), webhookEvent.getNextAttemptAt(),
+                failed ? StripeWebhookEvent.STATUS_FAILED : StripeWebhookEvent.STATUS_PENDING,
+                LocalDateTime.now().plusNanos(delayMillis * 1_000_000).truncatedTo(ChronoUnit.SECONDS),
+                lastError);
+        return failed;
+    }
+
+    public long countPendingEvents() {
+        return stripeWebhookEventRepository.countByStatus(StripeWebhookEvent.STATUS_PENDING);
+    }
+
+    public long countFailedEvents() {
+        return stripeWebhookEventRepository.countByStatus(StripeWebhookEvent.STATUS_FAILED);
+    }
+
+    @Transactional
+    public int deleteProcessedEventsBefore(LocalDateTime processedBefore) {
+        return stripeWebhookEventRepository.deleteProcessedBefore(processedBefore);
+    }
+}
@@ -2,13 +2,11 @@ package com.example.nagoyameshi.service;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -17,6 +15,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.example.nagoyameshi.entity.Role;
 import com.example.nagoyameshi.entity.User;
+import com.example.nagoyameshi.event.UserChangedEventPublisher;
 import com.example.nagoyameshi.form.SignupForm;
 import com.example.nagoyameshi.form.UserEditForm;
 import com.example.nagoyameshi.repository.RoleRepository;
@@ -28,11 +27,13 @@ public class UserService {
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserChangedEventPublisher userChangedEventPublisher;
 
-    public UserService(UserRepository userRepository, RoleRepository roleRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, RoleRepository roleRepository, PasswordEncoder passwordEncoder, UserChangedEventPublisher userChangedEventPublisher) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userChangedEventPublisher = userChangedEventPublisher;
     }
 
     @Transactional
@@ -84,6 +85,9 @@ public class UserService {
         }
 
         userRepository.save(user);
+        // ログイン中の氏名・メールアドレスを読み直させる（版番号は他のサーバーのセッション、イベントはこのサーバーですぐに反映するため）
+        userRepository.incrementPrincipalVersion(user.getId());
+        userChangedEventPublisher.publishUserChanged(user.getId());
     }   
     
     // メールアドレスが登録済みかどうかをチェックする
@@ -101,6 +105,8 @@ public class UserService {
     public void enableUser(User user) {
         user.setEnabled(true);
         userRepository.save(user);
+        userRepository.incrementPrincipalVersion(user.getId());
+        userChangedEventPublisher.publishUserChanged(user.getId());
     } 
     
     // メールアドレスが変更されたかどうかをチェックする
@@ -129,6 +135,11 @@ public class UserService {
     public Optional<User> findUserById(Integer id) {
         return userRepository.findById(id);
     }  
+
+    // 予約・レビューの登録や検索の条件に使うユーザー（idだけを持つ参照で、DBには問い合わせない）
+    public User getUserReference(Integer id) {
+        return userRepository.getReferenceById(id);
+    }
  
     
     // ユーザーのロールを更新
@@ -139,6 +150,27 @@ public class UserService {
         Role role = roleRepository.findByName(roleName);
         user.setRole(role);
         userRepository.save(user);
+        userRepository.incrementPrincipalVersion(userId);
+        userChangedEventPublisher.publishUserChanged(userId);
+    }
+    
+    // Stripeの顧客idを保存する（サブスクリプションのWebhookイベントからユーザーを探すため）
+    @Transactional
+    public void updateStripeCustomerId(Integer userId, String stripeCustomerId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new UsernameNotFoundException("ユーザーが見つかりません: ID = " + userId));
+        user.setStripeCustomerId(stripeCustomerId);
+        userRepository.save(user);
+    }
+
+    // Stripeのイベントを会員情報に反映してよいかを判定する（反映済みのイベントより古い場合はfalse）
+    @Transactional
+    public boolean acceptStripeEvent(Integer userId, long eventCreated, boolean sameSecond) {
+        return userRepository.acceptStripeEvent(userId, eventCreated, sameSecond) == 1;
+    }
+
+    public Optional<User> findUserByStripeCustomerId(String stripeCustomerId) {
+        return userRepository.findByStripeCustomerId(stripeCustomerId);
     }
     
     // パスワードを更新する（リセット時用）
@@ -149,13 +181,12 @@ public class UserService {
         userRepository.save(user);
     }
 
-    // ロール変更を反映
+    // ロール変更を現在のリクエストの画面に反映する（セッションの認証情報は次のリクエストでPrincipalRefreshFilterが読み直す）
     public void refreshAuthentication(User user) {
         UserDetailsImpl userDetails = new UserDetailsImpl(user);
-        SimpleGrantedAuthority authority = new SimpleGrantedAuthority(user.getRole().getName());
 
         UsernamePasswordAuthenticationToken newAuth =
-            new UsernamePasswordAuthenticationToken(userDetails, userDetails.getPassword(), List.of(authority));
+            UsernamePasswordAuthenticationToken.authenticated(userDetails, null, userDetails.getAuthorities());
 
         SecurityContextHolder.getContext().setAuthentication(newAuth);
     }
@@ -0,0 +1,16 @@
+package com.example.nagoyameshi.sql;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// コントローラーのメソッド（またはクラス）が1リクエストで実行してよいSQL文の数
+// 指定のないメソッドには nagoyameshi.sql.default-budget を使う
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface StatementBudget {
+    int value();
+}
@@ -0,0 +1,46 @@
+package com.example.nagoyameshi.sql;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.example.nagoyameshi.metrics.Metrics;
+
+// リクエストごとのSQL文の数を数える設定
+// 上限を超えた場合は既定ではログに出すだけで、テストでは nagoyameshi.sql.fail-on-budget-exceeded=true にして失敗させる
+@Configuration
+public class StatementBudgetConfig implements WebMvcConfigurer {
+    private final Metrics metrics;
+    private final int defaultBudget;
+    private final int repeatThreshold;
+    private final boolean failOnExceeded;
+
+    public StatementBudgetConfig(Metrics metrics,
+                                 @Value("${nagoyameshi.sql.default-budget:30}") int defaultBudget,
+                                 @Value("${nagoyameshi.sql.repeat-threshold:5}") int repeatThreshold,
+                                 @Value("${nagoyameshi.sql.fail-on-budget-exceeded:false}") boolean failOnExceeded) {
+        this.metrics = metrics;
+        this.defaultBudget = defaultBudget;
+        this.repeatThreshold = repeatThreshold;
+        this.failOnExceeded = failOnExceeded;
+    }
+
+    @Bean
+    public StatementCounter statementCounter() {
+        return new StatementCounter();
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer statementCounterCustomizer(StatementCounter statementCounter) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, statementCounter);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new StatementBudgetInterceptor(statementCounter(), metrics, defaultBudget, repeatThreshold, failOnExceeded));
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.nagoyameshi.sql;
+
+// nagoyameshi.sql.fail-on-budget-exceeded=true のとき、上限を超えたSQL文の実行時に投げる
+public class StatementBudgetExceededException extends RuntimeException {
+
+    public StatementBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.nagoyameshi.sql;
+
+import java.util.Map;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.example.nagoyameshi.metrics.Metrics;
+
+// コントローラーの呼び出しから画面の描画（Open Session in Viewの遅延読み込みを含む）までのSQL文を数え、
+// @StatementBudgetの上限を超えたリクエストと、同じ文を繰り返し実行したリクエスト（N+1の疑い）をログに出す
+public class StatementBudgetInterceptor implements HandlerInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(StatementBudgetInterceptor.class);
+
+    private static final String SCOPE_ATTRIBUTE = StatementBudgetInterceptor.class.getName() + ".scope";
+
+    private final StatementCounter statementCounter;
+    private final Metrics metrics;
+    private final int defaultBudget;
+    private final int repeatThreshold;
+    private final boolean failOnExceeded;
+
+    public StatementBudgetInterceptor(StatementCounter statementCounter, Metrics metrics,
+                                      int defaultBudget, int repeatThreshold, boolean failOnExceeded) {
+        this.statementCounter = statementCounter;
+        this.metrics = metrics;
+        this.defaultBudget = defaultBudget;
+        this.repeatThreshold = repeatThreshold;
+        this.failOnExceeded = failOnExceeded;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod handlerMethod) {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String route = request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+            StatementCounter.Scope scope = statementCounter.begin(route, budgetOf(handlerMethod), failOnExceeded);
+            if (scope != null) {
+                request.setAttribute(SCOPE_ATTRIBUTE, scope);
+            }
+        }
+        return true;
+    }
+
+    private int budgetOf(HandlerMethod handlerMethod) {
+        StatementBudget budget = handlerMethod.getMethodAnnotation(StatementBudget.class);
+        if (budget == null) {
+            budget = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getBeanType(), StatementBudget.class);
+        }
+        return budget != null ? budget.value() : defaultBudget;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(request.getAttribute(SCOPE_ATTRIBUTE) instanceof StatementCounter.Scope scope)) {
+            return;
+        }
+        request.removeAttribute(SCOPE_ATTRIBUTE);
+        statementCounter.end(scope);
+
+        String uri = scope.getRoute().substring(scope.getRoute().indexOf(' ') + 1);
+        metrics.counter("nagoyameshi_sql_statements", "コントローラーごとに実行したSQL文の数", "uri", uri).add(scope.getCount());
+        Map<String, Integer> repeated = scope.getRepeated(repeatThreshold);
+        if (scope.isExceeded()) {
+            metrics.counter("nagoyameshi_sql_budget_exceeded", "SQL文の数が上限を超えたリクエストの数", "uri", uri).increment();
+            logger.warn("{} のSQL文が上限を超えました（{}件、上限{}件）: {}",
+                    scope.getRoute(), scope.getCount(), scope.getBudget(), scope.describeRepeated(2));
+        } else if (!repeated.isEmpty()) {
+            logger.warn("{} で同じSQL文が繰り返し実行されました（N+1の可能性、計{}件）: {}",
+                    scope.getRoute(), scope.getCount(), scope.describeRepeated(repeatThreshold));
+        }
+    }
+}
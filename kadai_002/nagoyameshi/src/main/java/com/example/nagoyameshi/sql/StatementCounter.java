@@ -0,0 +1,104 @@
+package com.example.nagoyameshi.sql;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// Hibernateが実行するSQL文をリクエストごとに数える（StatementInspectorとしてセッションファクトリーに登録する）
+// パラメーターは ? のまま渡されるため、同じ文の繰り返し（N+1）は同じ文字列の件数で分かる
+public class StatementCounter implements StatementInspector {
+    // 1リクエストで種類ごとに数えるSQL文の上限（これを超えた種類は合計の件数にだけ含める）
+    private static final int MAX_DISTINCT_STATEMENTS = 200;
+
+    private final ThreadLocal<Scope> current = new ThreadLocal<>();
+
+    public static final class Scope {
+        private final String route;
+        private final int budget;
+        private final boolean failOnExceeded;
+        private final Map<String, Integer> statements = new LinkedHashMap<>();
+        private int count = 0;
+
+        private Scope(String route, int budget, boolean failOnExceeded) {
+            this.route = route;
+            this.budget = budget;
+            this.failOnExceeded = failOnExceeded;
+        }
+
+        private void record(String sql) {
+            count++;
+            if (statements.size() < MAX_DISTINCT_STATEMENTS || statements.containsKey(sql)) {
+                statements.merge(sql, 1, Integer::sum);
+            }
+            // 上限を超えた文の実行時に止めると、例外のスタックトレースから呼び出し元が分かる
+            if (failOnExceeded && count > budget) {
+                throw new StatementBudgetExceededException(
+                        route + " のSQL文が上限（" + budget + "件）を超えました: " + describeRepeated(2));
+            }
+        }
+
+        public String getRoute() {
+            return route;
+        }
+
+        public int getBudget() {
+            return budget;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public boolean isExceeded() {
+            return count > budget;
+        }
+
+        // threshold回以上実行された文を、回数の多い順に返す
+        public Map<String, Integer> getRepeated(int threshold) {
+            return statements.entrySet().stream()
+                    .filter(entry -> entry.getValue() >= threshold)
+                    .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()))
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a, LinkedHashMap::new));
+        }
+
+        public String describeRepeated(int threshold) {
+            Map<String, Integer> repeated = getRepeated(threshold);
+            if (repeated.isEmpty()) {
+                return "繰り返し実行された文はありません";
+            }
+            List<String> lines = repeated.entrySet().stream()
+                    .map(entry -> entry.getValue() + "回: " + entry.getKey())
+                    .toList();
+            return String.join(" / ", lines);
+        }
+    }
+
+    // 既に数えている場合（エラー画面への転送など）は、元のリクエストの範囲で数え続ける
+    public Scope begin(String route, int budget, boolean failOnExceeded) {
+        if (current.get() != null) {
+            return null;
+        }
+        Scope scope = new Scope(route, budget, failOnExceeded);
+        current.set(scope);
+        return scope;
+    }
+
+    public void end(Scope scope) {
+        if (current.get() == scope) {
+            current.remove();
+        }
+    }
+
+    @Override
+    public String inspect(String sql) {
+        Scope scope = current.get();
+        if (scope != null) {
+            scope.record(sql);
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.nagoyameshi.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.example.nagoyameshi.asset.StaticAssetConfig;
+
+// 公開画像（/storage/** と /images/**）を、セッションやセキュリティのフィルターより前で直接配信する
+// ファイルの内容はTomcatのsendfile（使えない場合はFileChannel.transferTo）で送り、アプリケーションのメモリに読み込まない
+// If-None-Match・If-Modified-Sinceには304、Range（1つの範囲のみ）には206で応答する
+// 配信できるファイルが見つからない場合は後続のフィルター（通常の静的リソースの処理）に任せる
+public class ImageServingFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(ImageServingFilter.class);
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // sendfileを使う最小のサイズ（小さいファイルは通常の書き込みの方が速い）
+    private static final long SENDFILE_MIN_LENGTH = 48 * 1024;
+    // 配信するファイルの情報を覚えておく件数の上限（超えたら覚え直す）
+    private static final int MAX_CACHED_FILES = 10_000;
+
+    private static final String IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable().getHeaderValue();
+    private static final String ONE_DAY = CacheControl.maxAge(Duration.ofDays(1)).cachePublic().getHeaderValue();
+    private static final String REVALIDATE = CacheControl.noCache().cachePublic().getHeaderValue();
+
+    private final ImageStorage imageStorage;
+    // jarの中にあるクラスパスの画像は、sendfileで送れるよう初回の配信時にこのディレクトリへ書き出す
+    private final Path extractDirectory;
+    private final Map<String, ServedFile> files = new ConcurrentHashMap<>();
+
+    private record ServedFile(Path path, long length, long lastModified, String etag, String contentType, String cacheControl) {
+    }
+
+    private record Range(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+    }
+
+    public ImageServingFilter(ImageStorage imageStorage) throws IOException {
+        this.imageStorage = imageStorage;
+        this.extractDirectory = imageStorage.getOriginalDirectory().resolveSibling("classpath");
+        // 以前のバージョンのjarから書き出したファイルが残らないよう、起動時に作り直す
+        FileSystemUtils.deleteRecursively(extractDirectory);
+        Files.createDirectories(extractDirectory);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean head = "HEAD".equals(request.getMethod());
+        ServedFile file = head || "GET".equals(request.getMethod()) ? resolve(request) : null;
+        if (file == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ETAG, file.etag());
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.lastModified());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, file.cacheControl());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        if (notModified(request, file)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        Range range = null;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && ifRangeMatches(request, file)) {
+            range = parseRange(rangeHeader, file.length());
+            if (range == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.length());
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+        if (range == null) {
+            range = new Range(0, file.length() - 1);
+        } else {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range.start() + "-" + range.end() + "/" + file.length());
+        }
+
+        response.setContentType(file.contentType());
+        response.setContentLengthLong(range.length());
+        if (head || range.length() <= 0) {
+            return;
+        }
+        send(request, response, file, range);
+    }
+
+    private void send(HttpServletRequest request, HttpServletResponse response, ServedFile file, Range range) throws IOException {
+        if (range.length() >= SENDFILE_MIN_LENGTH && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // レスポンスの書き込みはTomcatがファイルから直接行う
+            request.setAttribute(SENDFILE_FILENAME, file.path().toString());
+            request.setAttribute(SENDFILE_START, range.start());
+            request.setAttribute(SENDFILE_END, range.end() + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = range.start();
+            long remaining = range.length();
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+
+    // ETagが一致する場合、またはIf-None-Matchがなく更新日時が変わっていない場合は304
+    private boolean notModified(HttpServletRequest request, ServedFile file) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String trimmed = tag.trim();
+                if (trimmed.equals("*") || trimmed.equals(file.etag()) || trimmed.equals("W/" + file.etag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && file.lastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    // If-Rangeのファイルから変わっている場合は、範囲を無視してファイル全体を返す
+    private boolean ifRangeMatches(HttpServletRequest request, ServedFile file) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(file.etag());
+        }
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && file.lastModified() / 1000 == date / 1000;
+    }
+
+    // bytes=開始-終了、bytes=開始-、bytes=-末尾の長さ のいずれか1つだけを扱う（満たせない場合はnull）
+    // 複数の範囲が指定された場合はファイル全体を返す
+    private Range parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new Range(0, length - 1);
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new Range(0, length - 1);
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffixLength);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+            return start < length && start <= end ? new Range(start, end) : null;
+        } catch (NumberFormatException e) {
+            return new Range(0, length - 1);
+        }
+    }
+
+    private long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private ServedFile resolve(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        ServedFile file = files.get(path);
+        if (file != null) {
+            return file;
+        }
+
+        file = lookup(path);
+        if (file != null) {
+            if (files.size() >= MAX_CACHED_FILES) {
+                files.clear();
+            }
+            files.put(path, file);
+        }
+        return file;
+    }
+
+    // URLに対応するファイルを探す（サブディレクトリや「..」を含むURLは扱わない）
+    private ServedFile lookup(String path) {
+        try {
+            if (path.startsWith(ImageStorage.VARIANT_URL_PREFIX)) {
+                String name = fileName(path, ImageStorage.VARIANT_URL_PREFIX);
+                return name != null ? fromFile(imageStorage.getVariantDirectory().resolve(name), IMMUTABLE) : null;
+            }
+            if (path.startsWith(ImageStorage.URL_PREFIX)) {
+                String name = fileName(path, ImageStorage.URL_PREFIX);
+                if (name == null) {
+                    return null;
+                }
+                ServedFile file = fromFile(imageStorage.getOriginalDirectory().resolve(name), ONE_DAY);
+                return file != null ? file : fromClasspath("static/storage/", name, ONE_DAY);
+            }
+            if (path.startsWith("/images/")) {
+                String name = fileName(path, "/images/");
+                return name != null ? fromImages(name) : null;
+            }
+        } catch (IOException e) {
+            logger.warn("画像を配信できないため通常の処理に任せます（{}）", path, e);
+        }
+        return null;
+    }
+
+    // ハッシュ値付きの名前（StaticAssetConfigのリンク）は、ハッシュ値がファイルの内容と一致する場合だけ配信する
+    private ServedFile fromImages(String name) throws IOException {
+        Matcher matcher = StaticAssetConfig.FINGERPRINT.matcher(name);
+        if (!matcher.find()) {
+            return fromClasspath("static/images/", name, REVALIDATE);
+        }
+        ServedFile file = fromClasspath("static/images/", matcher.replaceFirst(""), StaticAssetConfig.IMMUTABLE);
+        if (file == null) {
+            return null;
+        }
+        try (InputStream inputStream = Files.newInputStream(file.path())) {
+            return matcher.group().substring(1).equals(DigestUtils.md5DigestAsHex(inputStream)) ? file : null;
+        }
+    }
+
+    private String fileName(String path, String prefix) {
+        String name = path.substring(prefix.length());
+        if (name.isEmpty() || name.startsWith(".") || name.contains("/") || name.contains("\\") || name.contains("%") || name.contains(";")) {
+            return null;
+        }
+        return name;
+    }
+
+    private ServedFile fromFile(Path path, String cacheControl) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        long length = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+        String contentType = MediaTypeFactory.getMediaType(path.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+        return new ServedFile(path, length, lastModified, etag, contentType, cacheControl);
+    }
+
+    // クラスパスの画像がファイルとして存在しない（jarの中にある）場合は書き出してから配信する
+    private ServedFile fromClasspath(String location, String name, String cacheControl) throws IOException {
+        Resource resource = new ClassPathResource(location + name);
+        if (!resource.exists()) {
+            return null;
+        }
+        if (resource.isFile()) {
+            return fromFile(resource.getFile().toPath(), cacheControl);
+        }
+
+        Path directory = Files.createDirectories(extractDirectory.resolve(location));
+        Path extracted = directory.resolve(name);
+        if (!Files.exists(extracted)) {
+            Path temporaryFile = Files.createTempFile(directory, "extract-", ".tmp");
+            try (InputStream inputStream = resource.getInputStream()) {
+                Files.copy(inputStream, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporaryFile, extracted, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+        return fromFile(extracted, cacheControl);
+    }
+}
@@ -0,0 +1,348 @@
+package com.example.nagoyameshi.storage;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+// 店舗画像の保存先（クラスパスの外のディレクトリ）
+// アップロードされた画像は内容のハッシュ値をファイル名にして original/ に保存し、
+// 一覧のカードや詳細ページ用に縮小した画像（バリアント）を別スレッドで variants/ に作成する
+// 以前の画像（クラスパスの static/storage/）も起動時にバリアントを作成する
+// バリアントのファイル名は画像のファイル名から決まるため（アップロードした画像は内容のハッシュ値、以前の画像はファイル名のハッシュ値）、
+// 作成済みかどうかはディスクのファイルで判定でき、再起動後も起動時の確認を待たずにバリアントを配信できる
+@Component
+public class ImageStorage {
+    private static final Logger logger = LoggerFactory.getLogger(ImageStorage.class);
+
+    public static final String URL_PREFIX = "/storage/";
+    public static final String VARIANT_URL_PREFIX = "/storage/variants/";
+    public static final String LEGACY_LOCATION = "classpath:/static/storage/";
+
+    private static final Set<String> EXTENSIONS = Set.of("jpg", "jpeg", "png", "gif");
+    private static final int HASH_LENGTH = 20;
+    // アップロードした画像のファイル名（内容のハッシュ値.拡張子）
+    private static final Pattern HASHED_NAME = Pattern.compile("[0-9a-f]{" + HASH_LENGTH + "}\\.[a-z]+");
+    private static final float JPEG_QUALITY = 0.82f;
+
+    // バリアントの名前と最大の横幅（元の画像より大きくはしない）
+    public enum Variant {
+        THUMBNAIL(320), CARD(640), HERO(1280);
+
+        private final int maxWidth;
+
+        Variant(int maxWidth) {
+            this.maxWidth = maxWidth;
+        }
+
+        public String suffix() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Path originalDirectory;
+    private final Path variantDirectory;
+    private final Path temporaryDirectory;
+
+    // バリアントのファイルがあることを確認済みのキー（ディスクの確認を画面の表示ごとに繰り返さないため。失っても確認し直せる）
+    private final Set<String> readyKeys = ConcurrentHashMap.newKeySet();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // 縮小はCPUを使い続ける処理のため、仮想スレッドモードでもプラットフォームスレッドで行う
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("image-variant-"));
+
+    public ImageStorage(@Value("${nagoyameshi.storage.dir:storage}") String directory) throws IOException {
+        Path root = Paths.get(directory).toAbsolutePath().normalize();
+        this.originalDirectory = Files.createDirectories(root.resolve("original"));
+        this.variantDirectory = Files.createDirectories(root.resolve("variants"));
+        this.temporaryDirectory = Files.createDirectories(root.resolve("tmp"));
+    }
+
+    public Path getOriginalDirectory() {
+        return originalDirectory;
+    }
+
+    public Path getVariantDirectory() {
+        return variantDirectory;
+    }
+
+    // アップロードされた画像をメモリに読み込まずに一時ファイルへ書き出し、書き出しながら計算したハッシュ値の名前で保存する
+    // 保存したファイル名を返す（同じ内容の画像は同じファイル名になる）
+    public String store(MultipartFile imageFile) {
+        String extension = extensionOf(imageFile.getOriginalFilename());
+        if (!isSupported(imageFile.getOriginalFilename())) {
+            throw new IllegalArgumentException("対応していない画像形式です: " + imageFile.getOriginalFilename());
+        }
+
+        Path temporaryFile = null;
+        try {
+            temporaryFile = Files.createTempFile(temporaryDirectory, "upload-", "." + extension);
+            MessageDigest digest = sha256();
+            try (InputStream inputStream = new DigestInputStream(imageFile.getInputStream(), digest)) {
+                Files.copy(inputStream, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest()).substring(0, HASH_LENGTH);
+            String imageName = hash + "." + extension;
+            Path originalFile = originalDirectory.resolve(imageName);
+            if (Files.exists(originalFile)) {
+                Files.delete(temporaryFile);
+            } else {
+                Files.move(temporaryFile, originalFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+            requestVariants(imageName, hash, originalFile);
+            return imageName;
+        } catch (IOException e) {
+            deleteQuietly(temporaryFile);
+            throw new UncheckedIOException("画像を保存できませんでした", e);
+        }
+    }
+
+    public boolean isSupported(String fileName) {
+        return EXTENSIONS.contains(extensionOf(fileName));
+    }
+
+    // 画像のURL（バリアントの作成が済んでいなければ元の画像のURL）
+    public String url(String imageName, String variant) {
+        if (imageName == null || !isSupported(imageName)) {
+            return URL_PREFIX + imageName;
+        }
+        String key = variantKey(imageName);
+        if (!variantsReady(key)) {
+            return URL_PREFIX + imageName;
+        }
+        return VARIANT_URL_PREFIX + variantFileName(key, Variant.valueOf(variant.toUpperCase(Locale.ROOT)));
+    }
+
+    // 保存先と以前の保存先にある画像のうち、バリアントがないものを作成する
+    @EventListener(ApplicationReadyEvent.class)
+    public void scan() {
+        executor.execute(() -> {
+            int created = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(originalDirectory)) {
+                for (Path file : files) {
+                    created += createMissingVariants(file.getFileName().toString(), () -> Files.newInputStream(file));
+                }
+                for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LEGACY_LOCATION + "*")) {
+                    if (resource.getFilename() != null) {
+                        created += createMissingVariants(resource.getFilename(), resource::getInputStream);
+                    }
+                }
+                logger.info("店舗画像のバリアントを確認しました（作成{}件）", created);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("店舗画像のバリアントを確認できませんでした", e);
+            }
+        });
+    }
+
+    // バリアントを作成した場合は1を返す（作成済み・対応していない形式の場合は0）
+    private int createMissingVariants(String imageName, ImageSource source) {
+        if (!isSupported(imageName) || variantsReady(variantKey(imageName))) {
+            return 0;
+        }
+        return createVariants(imageName, variantKey(imageName), source) ? 1 : 0;
+    }
+
+    private void requestVariants(String imageName, String hash, Path originalFile) {
+        if (variantsReady(hash)) {
+            return;
+        }
+        if (pending.add(imageName)) {
+            executor.execute(() -> {
+                try {
+                    createVariants(imageName, hash, () -> Files.newInputStream(originalFile));
+                } finally {
+                    pending.remove(imageName);
+                }
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface ImageSource {
+        InputStream open() throws IOException;
+    }
+
+    private boolean createVariants(String imageName, String key, ImageSource source) {
+        try {
+            BufferedImage image;
+            try (InputStream inputStream = source.open()) {
+                image = ImageIO.read(inputStream);
+            }
+            if (image == null) {
+                logger.warn("画像を読み込めないためバリアントを作成しません（{}）", imageName);
+                return false;
+            }
+            for (Variant variant : Variant.values()) {
+                writeJpeg(resize(image, variant.maxWidth), variantDirectory.resolve(variantFileName(key, variant)));
+            }
+            readyKeys.add(key);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("画像のバリアントを作成できませんでした（{}）", imageName, e);
+            return false;
+        }
+    }
+
+    // 半分ずつ縮小してから目的の大きさにする（一度に大きく縮小すると画質が落ちるため）
+    private BufferedImage resize(BufferedImage image, int maxWidth) {
+        int targetWidth = Math.min(maxWidth, image.getWidth());
+        int targetHeight = Math.max(1, (int) Math.round((double) image.getHeight() * targetWidth / image.getWidth()));
+
+        BufferedImage current = toRgb(image);
+        while (current.getWidth() / 2 >= targetWidth) {
+            current = draw(current, current.getWidth() / 2, Math.max(1, current.getHeight() / 2));
+        }
+        return current.getWidth() == targetWidth ? current : draw(current, targetWidth, targetHeight);
+    }
+
+    // 透過部分は白で塗りつぶす（JPEGは透過を扱えないため）
+    private BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+
+    private BufferedImage draw(BufferedImage image, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    // 書き込み途中のファイルが配信されないよう、一時ファイルに書いてから置き換える
+    private void writeJpeg(BufferedImage image, Path file) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("JPEGを書き込めません");
+        }
+        ImageWriter writer = writers.next();
+        Path temporaryFile = Files.createTempFile(temporaryDirectory, "variant-", ".jpg");
+        try {
+            try (ImageOutputStream outputStream = ImageIO.createImageOutputStream(Files.newOutputStream(temporaryFile))) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                writer.setOutput(outputStream);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(temporaryFile);
+            throw e;
+        }
+    }
+
+    // バリアントは小さい順に書き出すため、最後に書き出す最大のものから確認する
+    private boolean variantsReady(String key) {
+        if (readyKeys.contains(key)) {
+            return true;
+        }
+        Variant[] variants = Variant.values();
+        for (int i = variants.length - 1; i >= 0; i--) {
+            if (!Files.exists(variantDirectory.resolve(variantFileName(key, variants[i])))) {
+                return false;
+            }
+        }
+        readyKeys.add(key);
+        return true;
+    }
+
+    // バリアントのファイル名に使うキー（アップロードした画像はファイル名のハッシュ値部分、以前の画像はファイル名のハッシュ値）
+    // 以前の画像は内容を差し替える場合はファイル名も変える（同じ名前のままでは作成済みのバリアントが使われ続ける）
+    private static String variantKey(String imageName) {
+        if (HASHED_NAME.matcher(imageName).matches()) {
+            return imageName.substring(0, HASH_LENGTH);
+        }
+        return HexFormat.of().formatHex(sha256().digest(("legacy/" + imageName).getBytes(StandardCharsets.UTF_8))).substring(0, HASH_LENGTH);
+    }
+
+    private static String variantFileName(String key, Variant variant) {
+        return key + "-" + variant.suffix() + ".jpg";
+    }
+
+    private static String extensionOf(String fileName) {
+        if (fileName == null || fileName.lastIndexOf('.') < 0) {
+            return "";
+        }
+        return fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("一時ファイルを削除できませんでした（{}）", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
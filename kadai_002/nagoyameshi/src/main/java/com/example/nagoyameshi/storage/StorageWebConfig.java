@@ -0,0 +1,45 @@
+package com.example.nagoyameshi.storage;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.CacheControl;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+// 店舗画像の配信設定
+// バリアントは元画像のハッシュ値を含む名前で内容が変わらないため、ブラウザに1年間キャッシュさせる
+// 元の画像は保存先にない場合は以前の保存先（クラスパス）から配信する
+// GET・HEADはImageServingFilterが先に応答するため、ここでの設定はそれ以外の場合に使われる
+@Configuration
+public class StorageWebConfig implements WebMvcConfigurer {
+    private final ImageStorage imageStorage;
+
+    public StorageWebConfig(ImageStorage imageStorage) {
+        this.imageStorage = imageStorage;
+    }
+
+    // Spring Securityのフィルター（SecurityProperties.DEFAULT_FILTER_ORDER）より前に置く
+    @Bean
+    public FilterRegistrationBean<ImageServingFilter> imageServingFilter() throws IOException {
+        FilterRegistrationBean<ImageServingFilter> registration = new FilterRegistrationBean<>(new ImageServingFilter(imageStorage));
+        registration.addUrlPatterns(ImageStorage.URL_PREFIX + "*", "/images/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        registry.addResourceHandler(ImageStorage.VARIANT_URL_PREFIX + "**")
+                .addResourceLocations(imageStorage.getVariantDirectory().toUri().toString())
+                .setCacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable());
+
+        registry.addResourceHandler(ImageStorage.URL_PREFIX + "**")
+                .addResourceLocations(imageStorage.getOriginalDirectory().toUri().toString(), ImageStorage.LEGACY_LOCATION)
+                .setCacheControl(CacheControl.maxAge(Duration.ofDays(1)).cachePublic());
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.nagoyameshi.task;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.nagoyameshi.entity.MailOutbox;
+import com.example.nagoyameshi.event.MailQueuedEvent;
+import com.example.nagoyameshi.metrics.Metrics;
+import com.example.nagoyameshi.service.MailOutboxService;
+
+// アウトボックスに登録されたメールを非同期に送信する
+// 送信待ちのメールをまとめて確保し、一定件数ごとに1回のSMTP接続で送る（同時に送信するまとまりはワーカー数まで）
+// メールの登録時と一定間隔で送信を始め、送信待ちの件数・最も古いメールの待ち時間などを集計する
+@Component
+public class MailOutboxDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(MailOutboxDispatcher.class);
+
+    private final MailOutboxService mailOutboxService;
+    private final JavaMailSender mailSender;
+    private final Metrics metrics;
+    private final int batchSize;
+    private final int workers;
+    private final long leaseMillis;
+    private final int retentionDays;
+
+    // 送信待ちの取得と確保は1スレッドで行い、送信はワーカーに任せる
+    // JavaMailはsynchronizedのメソッドの中でSMTPサーバーの応答を待つため、仮想スレッドモードでもプラットフォームスレッドで送る
+    private final ExecutorService dispatcherExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("mail-dispatcher-"));
+    private final ExecutorService workerExecutor;
+    private final Semaphore workerPermits;
+    private final AtomicBoolean dispatchRequested = new AtomicBoolean(false);
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile long queueDepth = 0;
+    private volatile long deadCount = 0;
+    private volatile long oldestPendingAgeMillis = 0;
+    private volatile long lastDeliveryLatencyMillis = 0;
+
+    public MailOutboxDispatcher(MailOutboxService mailOutboxService, JavaMailSender mailSender, Metrics metrics,
+                                @Value("${nagoyameshi.mail.batch-size:20}") int batchSize,
+                                @Value("${nagoyameshi.mail.workers:2}") int workers,
+                                @Value("${nagoyameshi.mail.lease-ms:300000}") long leaseMillis,
+                                @Value("${nagoyameshi.mail.retention-days:7}") int retentionDays) {
+        this.mailOutboxService = mailOutboxService;
+        this.mailSender = mailSender;
+        this.metrics = metrics;
+        this.batchSize = Math.max(1, batchSize);
+        this.workers = Math.max(1, workers);
+        this.leaseMillis = leaseMillis;
+        this.retentionDays = retentionDays;
+        this.workerExecutor = Executors.newFixedThreadPool(this.workers, new CustomizableThreadFactory("mail-worker-"));
+        this.workerPermits = new Semaphore(this.workers);
+    }
+
+    // 登録したトランザクションのコミット後に送信を始める
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMailQueued(MailQueuedEvent event) {
+        requestDispatch();
+    }
+
+    // 再送待ちのメールと、登録時の通知を取りこぼしたメールを送る
+    @Scheduled(fixedDelayString = "${nagoyameshi.mail.poll-ms:5000}")
+    public void poll() {
+        refreshQueueMetrics();
+        requestDispatch();
+    }
+
+    @Scheduled(cron = "${nagoyameshi.mail.purge-cron:0 30 4 * * *}")
+    public void purgeSentMails() {
+        int deleted = mailOutboxService.deleteSentMailsBefore(LocalDateTime.now().minusDays(retentionDays));
+        logger.info("送信済みのメールを削除しました（{}件）", deleted);
+    }
+
+    // 送信中に依頼された場合は、現在の送信が終わった後にもう一度送信待ちを確認する
+    private void requestDispatch() {
+        if (dispatchRequested.compareAndSet(false, true)) {
+            dispatcherExecutor.execute(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        dispatchRequested.set(false);
+        try {
+            List<MailOutbox> dueMails;
+            int claimed;
+            do {
+                dueMails = mailOutboxService.findDueMails(batchSize * workers);
+                claimed = 0;
+                List<MailOutbox> batch = new ArrayList<>(batchSize);
+                for (MailOutbox mailOutbox : dueMails) {
+                    if (!mailOutboxService.claim(mailOutbox, LocalDateTime.now().plusNanos(leaseMillis * 1_000_000))) {
+                        continue;
+                    }
+                    claimed++;
+                    batch.add(mailOutbox);
+                    if (batch.size() == batchSize) {
+                        submit(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    submit(batch);
+                }
+            } while (claimed > 0 && dueMails.size() == batchSize * workers);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.warn("送信待ちメールの取得に失敗しました", e);
+        }
+    }
+
+    // ワーカーがすべて送信中の場合は空くまで待つ（送信待ちを取得しすぎないため）
+    private void submit(List<MailOutbox> batch) throws InterruptedException {
+        workerPermits.acquire();
+        try {
+            workerExecutor.execute(() -> {
+                try {
+                    send(batch);
+                } finally {
+                    workerPermits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            workerPermits.release();
+            throw e;
+        }
+    }
+
+    private void send(List<MailOutbox> batch) {
+        Map<MimeMessage, MailOutbox> messages = new LinkedHashMap<>();
+        for (MailOutbox mailOutbox : batch) {
+            try {
+                messages.put(createMessage(mailOutbox), mailOutbox);
+            } catch (MessagingException | RuntimeException e) {
+                fail(mailOutbox, e);
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        Map<Object, Exception> failedMessages;
+        long startNanos = System.nanoTime();
+        try {
+            mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+            failedMessages = Map.of();
+        } catch (MailSendException e) {
+            // 接続できなかった場合など、どのメールが失敗したか分からない場合はすべて失敗として扱う
+            failedMessages = e.getFailedMessages().isEmpty() ? allFailed(messages, e) : e.getFailedMessages();
+        } catch (MailException e) {
+            failedMessages = allFailed(messages, e);
+        }
+        // SMTPの接続から全件の送信までの時間（まとめて送った1回分）
+        metrics.timer("nagoyameshi_mail_send_seconds", "メールのまとまりをSMTPサーバーに送るのにかかった時間",
+                "result", failedMessages.isEmpty() ? "success" : "failure").record(System.nanoTime() - startNanos);
+
+        for (Map.Entry<MimeMessage, MailOutbox> entry : messages.entrySet()) {
+            MailOutbox mailOutbox = entry.getValue();
+            Exception failure = failedMessages.get(entry.getKey());
+            try {
+                if (failure != null) {
+                    fail(mailOutbox, failure);
+                } else {
+                    mailOutboxService.markSent(mailOutbox);
+                    sentCount.incrementAndGet();
+                    lastDeliveryLatencyMillis = System.currentTimeMillis() - mailOutbox.getCreatedAt().getTime();
+                }
+            } catch (RuntimeException e) {
+                // 状態を更新できなかったメールは確保の期限を過ぎた後に再送される
+                logger.warn("メールの送信結果を記録できませんでした（id={}）", mailOutbox.getId(), e);
+            }
+        }
+    }
+
+    private MimeMessage createMessage(MailOutbox mailOutbox) throws MessagingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, "UTF-8");
+        if (mailOutbox.getSender() != null) {
+            helper.setFrom(mailOutbox.getSender());
+        }
+        helper.setTo(mailOutbox.getRecipient());
+        helper.setSubject(mailOutbox.getSubject());
+        helper.setText(mailOutbox.getBody());
+        return mimeMessage;
+    }
+
+    private Map<Object, Exception> allFailed(Map<MimeMessage, MailOutbox> messages, Exception e) {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        for (MimeMessage mimeMessage : messages.keySet()) {
+            failedMessages.put(mimeMessage, e);
+        }
+        return failedMessages;
+    }
+
+    private void fail(MailOutbox mailOutbox, Exception e) {
+        failedCount.incrementAndGet();
+        if (mailOutboxService.markFailed(mailOutbox, e.toString())) {
+            logger.error("メールを送信できなかったため再送を中止しました（id={}、宛先={}）", mailOutbox.getId(), mailOutbox.getRecipient(), e);
+        } else {
+            logger.warn("メールの送信に失敗したため再送します（id={}、{}回目）", mailOutbox.getId(), mailOutbox.getAttempts() + 1, e);
+        }
+    }
+
+    private void refreshQueueMetrics() {
+        try {
+            queueDepth = mailOutboxService.countPendingMails();
+            deadCount = mailOutboxService.countDeadMails();
+            Timestamp oldestPendingCreatedAt = mailOutboxService.findOldestPendingCreatedAt();
+            oldestPendingAgeMillis = oldestPendingCreatedAt != null
+                    ? Math.max(0, System.currentTimeMillis() - oldestPendingCreatedAt.getTime())
+                    : 0;
+        } catch (RuntimeException e) {
+            logger.warn("送信待ちメールの件数を取得できませんでした", e);
+        }
+    }
+
+    // 送信待ち（再送待ちを含む）の件数（定期確認の時点）
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    // 再送の上限に達したメールの件数（定期確認の時点）
+    public long getDeadCount() {
+        return deadCount;
+    }
+
+    // 最も古い送信待ちメールの待ち時間（定期確認の時点）
+    public long getOldestPendingAgeMillis() {
+        return oldestPendingAgeMillis;
+    }
+
+    // 直近に送信したメールの登録から送信までの時間
+    public long getLastDeliveryLatencyMillis() {
+        return lastDeliveryLatencyMillis;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcherExecutor.shutdownNow();
+        workerExecutor.shutdown();
+    }
+}
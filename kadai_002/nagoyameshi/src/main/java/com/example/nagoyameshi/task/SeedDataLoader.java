@@ -0,0 +1,80 @@
+package com.example.nagoyameshi.task;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+
+// 初期データ（db/seed/data.sql）を投入する
+// スクリプトの内容のハッシュ値をseed_historyテーブルに記録し、同じ内容を投入済みなら起動時に何もしない
+// スクリプトはINSERT IGNOREで書かれているため、複数のサーバーが同時に起動して重複実行しても結果は変わらない
+// 投入した場合は、スクリプトのレビューを店舗の平均評価・レビュー件数に反映するため続けて再集計する
+// 同じくスクリプトの予約を座席の確保の判定に含めるため、seat_slotsの行を削除する（次の確保で予約の集計から作り直される）
+// ApplicationRunnerは起動完了イベントより前に実行されるため、トップページのキャッシュや検索インデックスの作成より先に投入される
+@Component
+@ConditionalOnProperty(name = "nagoyameshi.seed.enabled", havingValue = "true")
+public class SeedDataLoader implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(SeedDataLoader.class);
+
+    private static final String SEED_SCRIPT = "db/seed/data.sql";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ShopRatingReconciliationTask shopRatingReconciliationTask;
+
+    public SeedDataLoader(DataSource dataSource, JdbcTemplate jdbcTemplate, ShopRatingReconciliationTask shopRatingReconciliationTask) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shopRatingReconciliationTask = shopRatingReconciliationTask;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        Resource script = new ClassPathResource(SEED_SCRIPT);
+        String fingerprint = fingerprint(script);
+
+        Integer applied = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM seed_history WHERE fingerprint = ?", Integer.class, fingerprint);
+        if (applied != null && applied > 0) {
+            logger.info("初期データは投入済みのため省略しました（{}）", SEED_SCRIPT);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(script);
+        populator.setSqlScriptEncoding(StandardCharsets.UTF_8.name());
+        populator.execute(dataSource);
+
+        jdbcTemplate.update("INSERT IGNORE INTO seed_history (fingerprint, script) VALUES (?, ?)", fingerprint, SEED_SCRIPT);
+        logger.info("初期データを投入しました（{}、{}ms）", SEED_SCRIPT, System.currentTimeMillis() - start);
+
+        // スクリプトの予約は枠ごとの予約済み人数に反映されないため、枠の行を削除して次の確保で予約の集計から作り直させる
+        jdbcTemplate.update("DELETE FROM seat_slots");
+
+        shopRatingReconciliationTask.reconcile();
+    }
+
+    private String fingerprint(Resource script) throws IOException {
+        try (InputStream inputStream = script.getInputStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(inputStream.readAllBytes()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.nagoyameshi.task;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.nagoyameshi.entity.StripeWebhookEvent;
+import com.example.nagoyameshi.event.StripeWebhookReceivedEvent;
+import com.example.nagoyameshi.service.StripeWebhookService;
+import com.example.nagoyameshi.thread.TaskThreads;
+
+// インボックスに登録されたStripeのWebhookイベントを非同期に処理する
+// Webhookの応答はイベントの登録までで返し、会員情報の更新はワーカーで行う（失敗したイベントは間隔を空けて再試行する）
+@Component
+public class StripeWebhookProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(StripeWebhookProcessor.class);
+
+    private final StripeWebhookService stripeWebhookService;
+    private final int workers;
+    private final long leaseMillis;
+    private final int retentionDays;
+
+    // 処理待ちの取得と確保は1スレッドで行い、処理はワーカーに任せる（仮想スレッドモードでは両方とも仮想スレッド）
+    private final ExecutorService dispatcherExecutor;
+    private final ExecutorService workerExecutor;
+    private final Semaphore workerPermits;
+    private final AtomicBoolean dispatchRequested = new AtomicBoolean(false);
+
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private volatile long queueDepth = 0;
+    private volatile long deadCount = 0;
+
+    public StripeWebhookProcessor(StripeWebhookService stripeWebhookService, TaskThreads taskThreads,
+                                  @Value("${nagoyameshi.stripe.webhook-workers:2}") int workers,
+                                  @Value("${nagoyameshi.stripe.webhook-lease-ms:300000}") long leaseMillis,
+                                  @Value("${nagoyameshi.stripe.webhook-retention-days:30}") int retentionDays) {
+        this.stripeWebhookService = stripeWebhookService;
+        this.workers = Math.max(1, workers);
+        this.leaseMillis = leaseMillis;
+        this.retentionDays = retentionDays;
+        this.dispatcherExecutor = taskThreads.newSingleThreadExecutor("stripe-webhook-dispatcher-");
+        this.workerExecutor = taskThreads.newWorkerExecutor("stripe-webhook-worker-", this.workers);
+        this.workerPermits = new Semaphore(this.workers);
+    }
+
+    // 登録したトランザクションのコミット後に処理を始める
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStripeWebhookReceived(StripeWebhookReceivedEvent event) {
+        requestDispatch();
+    }
+
+    // 再試行待ちのイベントと、登録時の通知を取りこぼしたイベントを処理する
+    @Scheduled(fixedDelayString = "${nagoyameshi.stripe.webhook-poll-ms:10000}")
+    public void poll() {
+        refreshQueueMetrics();
+        requestDispatch();
+    }
+
+    @Scheduled(cron = "${nagoyameshi.stripe.webhook-purge-cron:0 45 4 * * *}")
+    public void purgeProcessedEvents() {
+        int deleted = stripeWebhookService.deleteProcessedEventsBefore(LocalDateTime.now().minusDays(retentionDays));
+        logger.info("処理済みのWebhookイベントを削除しました（{}件）", deleted);
+    }
+
+    // 処理中に依頼された場合は、現在の処理が終わった後にもう一度処理待ちを確認する
+    private void requestDispatch() {
+        if (dispatchRequested.compareAndSet(false, true)) {
+            dispatcherExecutor.execute(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        dispatchRequested.set(false);
+        try {
+            List<StripeWebhookEvent> dueEvents;
+            int claimed;
+            do {
+                dueEvents = stripeWebhookService.findDueEvents(workers * 10);
+                claimed = 0;
+                for (StripeWebhookEvent webhookEvent : dueEvents) {
+                    if (!stripeWebhookService.claim(webhookEvent, LocalDateTime.now().plusNanos(leaseMillis * 1_000_000))) {
+                        continue;
+                    }
+                    claimed++;
+                    submit(webhookEvent);
+                }
+            } while (claimed > 0 && dueEvents.size() == workers * 10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.warn("処理待ちのWebhookイベントの取得に失敗しました", e);
+        }
+    }
+
+    // ワーカーがすべて処理中の場合は空くまで待つ（処理待ちを確保しすぎないため）
+    private void submit(StripeWebhookEvent webhookEvent) throws InterruptedException {
+        workerPermits.acquire();
+        try {
+            workerExecutor.execute(() -> {
+                try {
+                    process(webhookEvent);
+                } finally {
+                    workerPermits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            workerPermits.release();
+            throw e;
+        }
+    }
+
+    private void process(StripeWebhookEvent webhookEvent) {
+        try {
+            stripeWebhookService.process(webhookEvent);
+            processedCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            failedCount.incrementAndGet();
+            try {
+                if (stripeWebhookService.markFailed(webhookEvent, e.toString())) {
+                    logger.error("Webhookイベントを処理できなかったため再試行を中止しました（id={}、種類={}）",
+                            webhookEvent.getEventId(), webhookEvent.getEventType(), e);
+                } else {
+                    logger.warn("Webhookイベントの処理に失敗したため再試行します（id={}、{}回目）",
+                            webhookEvent.getEventId(), webhookEvent.getAttempts() + 1, e);
+                }
+            } catch (RuntimeException markFailedException) {
+                // 状態を更新できなかったイベントは処理中の期限を過ぎた後に再試行される
+                logger.warn("Webhookイベントの処理結果を記録できませんでした（id={}）", webhookEvent.getEventId(), markFailedException);
+            }
+        }
+    }
+
+    private void refreshQueueMetrics() {
+        try {
+            queueDepth = stripeWebhookService.countPendingEvents();
+            deadCount = stripeWebhookService.countFailedEvents();
+        } catch (RuntimeException e) {
+            logger.warn("処理待ちのWebhookイベントの件数を取得できませんでした", e);
+        }
+    }
+
+    // 処理待ち（再試行待ちを含む）の件数（定期確認の時点）
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    // 再試行の上限に達したイベントの件数（定期確認の時点）
+    public long getDeadCount() {
+        return deadCount;
+    }
+
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcherExecutor.shutdownNow();
+        workerExecutor.shutdown();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.nagoyameshi.thread;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+// 仮想スレッドモードで、仮想スレッドがキャリアスレッドを固定した（synchronizedの中などで待った）箇所を記録する
+// JFRのjdk.VirtualThreadPinnedイベントを読み、固定した時間がしきい値を超えた箇所ごとに件数を数えて最初の1回だけログに出す
+// 起動時にはJDBCドライバーが仮想スレッドに対応しているか（MySQL Connector/J 9.0以降か）も確認する
+@Component
+public class PinnedThreadMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(PinnedThreadMonitor.class);
+
+    private static final String EVENT_NAME = "jdk.VirtualThreadPinned";
+    private static final String APPLICATION_PACKAGE = "com.example.nagoyameshi.";
+    private static final int MAX_SITES = 100;
+
+    private final TaskThreads taskThreads;
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final Duration threshold;
+
+    private final AtomicLong pinnedCount = new AtomicLong();
+    private final AtomicLong pinnedNanos = new AtomicLong();
+    // 固定した箇所（アプリのコードで最も内側のフレーム）→ 件数
+    private final Map<String, LongAdder> pinnedSites = new ConcurrentHashMap<>();
+    private RecordingStream recordingStream;
+
+    public PinnedThreadMonitor(TaskThreads taskThreads, DataSource dataSource,
+                               @Value("${nagoyameshi.threads.pinning-diagnostics:true}") boolean enabled,
+                               @Value("${nagoyameshi.threads.pinning-threshold-ms:20}") long thresholdMillis) {
+        this.taskThreads = taskThreads;
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.threshold = Duration.ofMillis(thresholdMillis);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!taskThreads.isVirtual()) {
+            return;
+        }
+        checkJdbcDriver();
+        if (!enabled || recordingStream != null) {
+            return;
+        }
+        recordingStream = new RecordingStream();
+        recordingStream.enable(EVENT_NAME).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(EVENT_NAME, this::record);
+        recordingStream.startAsync();
+        logger.info("仮想スレッドの固定の記録を開始しました（しきい値 {}ms）", threshold.toMillis());
+    }
+
+    private void record(RecordedEvent event) {
+        pinnedCount.incrementAndGet();
+        pinnedNanos.addAndGet(event.getDuration().toNanos());
+        String site = siteOf(event);
+        LongAdder count = pinnedSites.get(site);
+        if (count == null) {
+            if (pinnedSites.size() >= MAX_SITES) {
+                return;
+            }
+            LongAdder created = new LongAdder();
+            count = pinnedSites.putIfAbsent(site, created);
+            if (count == null) {
+                count = created;
+                logger.warn("仮想スレッドがキャリアスレッドを {}ms 固定しました: {}", event.getDuration().toMillis(), stackOf(event));
+            }
+        }
+        count.increment();
+    }
+
+    // 固定の原因はライブラリの中にあることが多いため、それを呼び出したアプリのコードの位置でまとめる
+    private static String siteOf(RecordedEvent event) {
+        if (event.getStackTrace() == null || event.getStackTrace().getFrames().isEmpty()) {
+            return "(不明)";
+        }
+        RecordedFrame top = event.getStackTrace().getFrames().get(0);
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            if (frame.isJavaFrame() && frame.getMethod().getType().getName().startsWith(APPLICATION_PACKAGE)) {
+                return frameOf(frame);
+            }
+        }
+        return frameOf(top);
+    }
+
+    private static String stackOf(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "(スタックトレースなし)";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            builder.append(System.lineSeparator()).append("\tat ").append(frameOf(frame));
+        }
+        return builder.toString();
+    }
+
+    private static String frameOf(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    // synchronizedでソケットを待つドライバーは、DBの応答を待つ間ずっとキャリアスレッドを固定する
+    private void checkJdbcDriver() {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String driverName = metaData.getDriverName();
+            logger.info("JDBCドライバー: {} {}", driverName, metaData.getDriverVersion());
+            if (driverName.startsWith("MySQL Connector/J") && metaData.getDriverMajorVersion() < 9) {
+                logger.warn("MySQL Connector/J {} はsynchronizedで通信するため、仮想スレッドがキャリアスレッドを固定します（9.0以降に更新してください）", metaData.getDriverVersion());
+            }
+        } catch (SQLException e) {
+            logger.warn("JDBCドライバーを確認できませんでした", e);
+        }
+    }
+
+    public long getPinnedCount() {
+        return pinnedCount.get();
+    }
+
+    public long getPinnedMillis() {
+        return Duration.ofNanos(pinnedNanos.get()).toMillis();
+    }
+
+    public Map<String, Long> getPinnedSites() {
+        Map<String, Long> sites = new TreeMap<>();
+        pinnedSites.forEach((site, count) -> sites.put(site, count.sum()));
+        return sites;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+            recordingStream = null;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.nagoyameshi.thread;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+// バックグラウンド処理のスレッドを作る
+// spring.threads.virtual.enabled=true（仮想スレッドモード）では、Tomcatのリクエスト処理と同じく仮想スレッドを使う
+// ロックを持ったままI/Oを待つライブラリ（JavaMailなど）を使う処理は、モードに関係なくプラットフォームスレッドを使うこと
+@Component
+public class TaskThreads {
+    private final boolean virtual;
+
+    public TaskThreads(Environment environment) {
+        this.virtual = Threading.VIRTUAL.isActive(environment);
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public ThreadFactory factory(String prefix) {
+        return virtual ? Thread.ofVirtual().name(prefix, 1).factory() : new CustomizableThreadFactory(prefix);
+    }
+
+    public ExecutorService newSingleThreadExecutor(String prefix) {
+        return Executors.newSingleThreadExecutor(factory(prefix));
+    }
+
+    // 同時に動かす数は呼び出し側がSemaphoreで制限するため、仮想スレッドはプールせずにタスクごとに作る
+    public ExecutorService newWorkerExecutor(String prefix, int workers) {
+        return virtual ? Executors.newThreadPerTaskExecutor(factory(prefix)) : Executors.newFixedThreadPool(workers, factory(prefix));
+    }
+}
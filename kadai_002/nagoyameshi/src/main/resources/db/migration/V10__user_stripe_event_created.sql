@@ -0,0 +1,3 @@
+-- 会員情報に反映した最後のStripeのイベントの作成日時（エポック秒）
+-- Stripeはイベントの到着順を保証せず再送もするため、これより古いイベントは反映しない（削除後に届いた古い更新イベントで有料会員に戻さない）
+ALTER TABLE users ADD COLUMN stripe_event_created BIGINT NULL AFTER stripe_customer_id;
@@ -0,0 +1,2 @@
+-- 最近変更された会員の取得用（PrincipalVersionsが各サーバーで一定間隔ごとに版番号を読み直す）
+CREATE INDEX idx_users_updated_at ON users (updated_at);
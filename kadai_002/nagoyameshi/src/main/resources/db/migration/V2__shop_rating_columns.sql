@@ -0,0 +1,14 @@
+-- 店舗の平均評価・レビュー件数をshopsテーブルに保持する（ReviewServiceが差分更新する）
+UPDATE shops SET average_rating = 0 WHERE average_rating IS NULL;
+ALTER TABLE shops MODIFY average_rating DOUBLE NOT NULL DEFAULT 0;
+ALTER TABLE shops ADD COLUMN review_count INT NOT NULL DEFAULT 0 AFTER average_rating;
+
+UPDATE shops
+SET average_rating = COALESCE((SELECT AVG(r.rating) FROM reviews r WHERE r.shop_id = shops.id), 0),
+    review_count = (SELECT COUNT(*) FROM reviews r WHERE r.shop_id = shops.id);
+
+-- 評価順・新着順のキーセットページング用
+CREATE INDEX idx_shops_category_rating ON shops (category_id, average_rating, id);
+CREATE INDEX idx_shops_rating ON shops (average_rating, id);
+CREATE INDEX idx_shops_category_created ON shops (category_id, created_at, id);
+CREATE INDEX idx_shops_created ON shops (created_at, id);
@@ -0,0 +1,14 @@
+-- お気に入り：existsByUserIdAndShopId・findByUserIdAndShopId用（同じ組み合わせの重複登録も防ぐ）
+DELETE FROM favorite
+WHERE id NOT IN (SELECT id FROM (SELECT MIN(id) AS id FROM favorite GROUP BY user_id, shop_id) AS first_favorites);
+CREATE UNIQUE INDEX uk_favorite_user_shop ON favorite (user_id, shop_id);
+
+-- レビュー：店舗詳細の最新レビュー・レビュー一覧（店舗ごとの投稿日時順）用
+CREATE INDEX idx_reviews_shop_created ON reviews (shop_id, created_at);
+
+-- 予約：予約一覧（ユーザーごとの作成日時順）用
+CREATE INDEX idx_reservations_user_created ON reservations (user_id, created_at);
+
+-- トークン：findByToken用
+CREATE UNIQUE INDEX uk_password_reset_tokens_token ON password_reset_tokens (token);
+CREATE UNIQUE INDEX uk_verification_tokens_token ON verification_tokens (token);
@@ -0,0 +1,6 @@
+-- 初期データ（db/seed）の投入履歴。スクリプトの内容のハッシュ値が記録済みなら起動時の投入を省略する
+CREATE TABLE IF NOT EXISTS seed_history (
+    fingerprint VARCHAR(64) NOT NULL PRIMARY KEY,
+    script VARCHAR(255) NOT NULL,
+    applied_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
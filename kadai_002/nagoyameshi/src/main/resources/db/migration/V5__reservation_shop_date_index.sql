@@ -0,0 +1,2 @@
+-- 予約：店舗・日付ごとの予約人数の集計（SeatAvailabilityの読み込み）用
+CREATE INDEX idx_reservations_shop_date ON reservations (shop_id, reservation_date);
@@ -0,0 +1,18 @@
+-- 送信待ちメール（アウトボックス）。リクエスト内では登録だけ行い、MailOutboxDispatcherが非同期に送信する
+-- status：PENDING（送信待ち・再送待ち）、SENT（送信済み）、DEAD（再送の上限に達した）
+CREATE TABLE IF NOT EXISTS mail_outbox (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    sender VARCHAR(255),
+    recipient VARCHAR(255) NOT NULL,
+    subject VARCHAR(255) NOT NULL,
+    body TEXT NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at DATETIME NOT NULL,
+    last_error VARCHAR(1000),
+    created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    sent_at DATETIME
+);
+
+-- 送信対象（status・送信予定日時順）の取得用
+CREATE INDEX idx_mail_outbox_status_next_attempt ON mail_outbox (status, next_attempt_at);
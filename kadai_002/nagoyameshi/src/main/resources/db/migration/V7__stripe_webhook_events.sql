@@ -0,0 +1,18 @@
+-- 受信したStripeのWebhookイベント（インボックス）。イベントidを主キーにして、再送された同じイベントを重複して登録しない
+-- 受信時は登録だけ行い、StripeWebhookProcessorが非同期に処理する
+-- status：PENDING（処理待ち・再試行待ち）、PROCESSED（処理済み）、FAILED（再試行の上限に達した）
+CREATE TABLE IF NOT EXISTS stripe_webhook_events (
+    event_id VARCHAR(255) NOT NULL PRIMARY KEY,
+    event_type VARCHAR(100) NOT NULL,
+    event_created DATETIME NOT NULL,
+    payload MEDIUMTEXT NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at DATETIME NOT NULL,
+    last_error VARCHAR(1000),
+    received_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    processed_at DATETIME
+);
+
+-- 処理対象（status・処理予定日時順）の取得用
+CREATE INDEX idx_stripe_webhook_events_status_next_attempt ON stripe_webhook_events (status, next_attempt_at);
@@ -0,0 +1,3 @@
+-- ログイン中の認証情報が古くなったかどうかを判定するための版番号（氏名・メールアドレス・ロール・有効かどうかを変更するたびに1増やす）
+-- どのサーバーで変更しても同じ行を更新するため、セッションを持つ別のサーバーでも変更を検知できる
+ALTER TABLE users ADD COLUMN principal_version BIGINT NOT NULL DEFAULT 0 AFTER stripe_customer_id;
@@ -0,0 +1,12 @@
+-- 店舗・日付・10分単位の枠ごとの予約済み人数（SeatAvailabilityが予約の確保・取消で更新する）
+-- 予約の確保は重なる枠の行だけをロック（SELECT ... FOR UPDATE）して判定するため、同じ店舗でも別の日付・時間帯の予約は待たされない
+-- 行は枠が初めて予約されるときにreservationsの集計から作る（既存の予約の分も含まれるため、移行時に作成しておく必要はない）
+-- 滞在時間（nagoyameshi.reservation.stay-minutes）を変更した場合は行を削除すれば、新しい滞在時間で作り直される
+CREATE TABLE IF NOT EXISTS seat_slots (
+    shop_id INT NOT NULL,
+    reservation_date DATE NOT NULL,
+    slot SMALLINT NOT NULL,
+    reserved_seats INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (shop_id, reservation_date, slot),
+    FOREIGN KEY (shop_id) REFERENCES shops(id) ON DELETE CASCADE
+);
@@ -1,17 +1,117 @@
 let maxDate = new Date();
 maxDate.setMonth(maxDate.getMonth() + 3);
 
-flatpickr('#reservationDateTimePicker', {
+const dateTimePicker = document.querySelector('#reservationDateTimePicker');
+const numberOfPeopleInput = document.querySelector("input[name='numberOfPeople']");
+const availabilityMessage = document.querySelector('#reservationAvailabilityMessage');
+
+// 月（yyyy-MM）ごとの予約カレンダー（空席状況）
+const calendars = {};
+
+function monthOf(year, month) {
+  return year + '-' + String(month + 1).padStart(2, '0');
+}
+
+function numberOfPeople() {
+  return Math.max(1, parseInt(numberOfPeopleInput && numberOfPeopleInput.value, 10) || 1);
+}
+
+function findDay(date) {
+  const calendar = calendars[monthOf(date.getFullYear(), date.getMonth())];
+  if (!calendar) {
+    return null;
+  }
+  return calendar.days[date.getDate() - 1];
+}
+
+// 選択した時刻の残席数（カレンダーを読み込んでいない場合はnull）
+function seatsLeftAt(date) {
+  const calendar = calendars[monthOf(date.getFullYear(), date.getMonth())];
+  const day = findDay(date);
+  if (!calendar || !day) {
+    return null;
+  }
+  const [hour, minute] = calendar.firstTime.split(':').map(Number);
+  const index = Math.floor((date.getHours() * 60 + date.getMinutes() - hour * 60 - minute) / calendar.slotMinutes);
+  return index >= 0 && index < day.seatsLeft.length ? day.seatsLeft[index] : 0;
+}
+
+// 定休日と、どの時刻も人数分の空席がない日は選択できないようにする
+function isUnavailable(date) {
+  const day = findDay(date);
+  if (!day) {
+    return false;
+  }
+  return day.closed || !day.seatsLeft.some(seats => seats >= numberOfPeople());
+}
+
+function showAvailability(instance) {
+  if (!availabilityMessage) {
+    return;
+  }
+  const selectedDate = instance.selectedDates[0];
+  const seatsLeft = selectedDate ? seatsLeftAt(selectedDate) : null;
+  if (seatsLeft === null || seatsLeft >= numberOfPeople()) {
+    availabilityMessage.textContent = '';
+  } else if (seatsLeft === 0) {
+    availabilityMessage.textContent = '選択した日時は満席です。';
+  } else {
+    availabilityMessage.textContent = '選択した日時の残席は' + seatsLeft + '席です。';
+  }
+}
+
+// 表示中の月の空席状況を読み込む（変更がなければサーバーは304を返し、ブラウザのキャッシュを使う）
+function loadCalendar(instance) {
+  const month = monthOf(instance.currentYear, instance.currentMonth);
+  if (!dateTimePicker.dataset.availabilityUrl) {
+    return;
+  }
+  fetch(dateTimePicker.dataset.availabilityUrl + '?month=' + month, { headers: { 'Accept': 'application/json' } })
+    .then(response => {
+      if (!response.ok) {
+        throw new Error(response.status);
+      }
+      return response.json();
+    })
+    .then(calendar => {
+      calendars[month] = calendar;
+      const openDay = calendar.days.find(day => !day.closed);
+      if (openDay) {
+        const [hour, minute] = calendar.firstTime.split(':').map(Number);
+        const lastMinutes = Math.min(hour * 60 + minute + (openDay.seatsLeft.length - 1) * calendar.slotMinutes, 23 * 60 + 59);
+        instance.set('minTime', calendar.firstTime);
+        instance.set('maxTime', String(Math.floor(lastMinutes / 60)).padStart(2, '0') + ':' + String(lastMinutes % 60).padStart(2, '0'));
+      }
+      instance.redraw();
+      showAvailability(instance);
+    })
+    .catch(() => {
+      // 読み込みに失敗した場合は従来どおりサーバー側の確認に任せる
+    });
+}
+
+const reservationPicker = flatpickr('#reservationDateTimePicker', {
   enableTime: true,
   dateFormat: "Y-m-d H:i",
   locale: 'ja',
   minDate: 'today',
-  maxDate: maxDate, 
-  onClose: function(selectedDates, dateStr) {
+  maxDate: maxDate,
+  minuteIncrement: 10,
+  disable: [isUnavailable],
+  onReady: function(selectedDates, dateStr, instance) {
+    loadCalendar(instance);
+  },
+  onMonthChange: function(selectedDates, dateStr, instance) {
+    loadCalendar(instance);
+  },
+  onChange: function(selectedDates, dateStr, instance) {
+    showAvailability(instance);
+  },
+  onClose: function(selectedDates, dateStr, instance) {
     if (selectedDates.length > 0) {
       const selectedDate = selectedDates[0];
-      const date = selectedDate.toISOString().split("T")[0];
-      const time = selectedDate.toTimeString().substring(0, 5);
+      const date = instance.formatDate(selectedDate, "Y-m-d");
+      const time = instance.formatDate(selectedDate, "H:i");
 
       document.querySelector("input[name='reservationDate']").value = date;
       document.querySelector("input[name='reservationTime']").value = time;
@@ -21,3 +121,11 @@ flatpickr('#reservationDateTimePicker', {
     }
   }
 });
+
+// 人数を変えたら、選択できる日と残席の表示を更新する
+if (numberOfPeopleInput && reservationPicker) {
+  numberOfPeopleInput.addEventListener('input', () => {
+    reservationPicker.redraw();
+    showAvailability(reservationPicker);
+  });
+}
@@ -0,0 +1,36 @@
+// 店舗一覧の無限スクロール
+// 「もっと見る」が画面に入ったら続きの店舗カードを読み込み、その位置に差し込む
+const moreObserver = new IntersectionObserver(entries => {
+  entries.forEach(entry => {
+    if (!entry.isIntersecting) {
+      return;
+    }
+    const more = entry.target;
+    moreObserver.unobserve(more);
+
+    fetch(more.dataset.url)
+      .then(response => {
+        if (!response.ok) {
+          throw new Error(response.status);
+        }
+        return response.text();
+      })
+      .then(html => {
+        more.insertAdjacentHTML('afterend', html);
+        more.remove();
+        observeMore();
+      })
+      .catch(() => {
+        // 読み込みに失敗した場合はリンクのまま残す
+      });
+  });
+}, { rootMargin: '200px' });
+
+function observeMore() {
+  const more = document.querySelector('.nagoyameshi-more');
+  if (more) {
+    moreObserver.observe(more);
+  }
+}
+
+observeMore();
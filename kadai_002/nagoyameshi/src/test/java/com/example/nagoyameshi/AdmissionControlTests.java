@@ -0,0 +1,216 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.FilterChain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.example.nagoyameshi.admission.AdmissionControlFilter;
+import com.example.nagoyameshi.admission.AdmissionLane;
+import com.example.nagoyameshi.admission.PoolSaturation;
+import com.example.nagoyameshi.admission.RouteClass;
+import com.zaxxer.hikari.HikariDataSource;
+
+// AdmissionControlFilterの振り分け・待ち行列・プールの混雑による503を確認し、
+// 管理画面・レビュー一覧へのアクセスが集中したときの店舗詳細の応答時間（p99）を受付制御の有無で比べてログに出す
+class AdmissionControlTests {
+	private static final Logger logger = LoggerFactory.getLogger(AdmissionControlTests.class);
+
+	private static final int MAXIMUM_POOL_SIZE = 5;
+	private static final long QUERY_MILLIS = 50;
+
+	private PoolSaturation poolSaturation;
+	private HikariDataSource dataSource;
+
+	@BeforeEach
+	void start() {
+		poolSaturation = new PoolSaturation();
+		dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl("jdbc:h2:mem:admission;DB_CLOSE_DELAY=-1");
+		dataSource.setMaximumPoolSize(MAXIMUM_POOL_SIZE);
+		dataSource.setConnectionTimeout(30_000);
+		poolSaturation.postProcessBeforeInitialization(dataSource, "dataSource");
+	}
+
+	@AfterEach
+	void stop() {
+		dataSource.close();
+	}
+
+	private AdmissionControlFilter filter(int lowMaxConcurrent, int lowMaxQueue) {
+		return new AdmissionControlFilter(Map.of(
+				RouteClass.CRITICAL, new AdmissionLane(RouteClass.CRITICAL, 40, 400, 5000),
+				RouteClass.NORMAL, new AdmissionLane(RouteClass.NORMAL, 40, 200, 3000),
+				RouteClass.LOW, new AdmissionLane(RouteClass.LOW, lowMaxConcurrent, lowMaxQueue, 500)),
+				poolSaturation, 2, 20, 5);
+	}
+
+	// コネクションを借りてクエリの時間だけ持つ画面
+	private FilterChain query() {
+		return (request, response) -> {
+			try (Connection connection = dataSource.getConnection()) {
+				Thread.sleep(QUERY_MILLIS);
+			} catch (SQLException | InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		};
+	}
+
+	private static MockHttpServletResponse get(AdmissionControlFilter filter, String path, FilterChain chain) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+
+	@Test
+	void shedsLowPriorityRoutesBeforeThePoolIsExhausted() throws Exception {
+		AdmissionControlFilter filter = filter(2, 4);
+		// 5本のうち3本を貸し出した状態（予備の2本だけが残っている）
+		List<Connection> held = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			held.add(dataSource.getConnection());
+		}
+		try {
+			MockHttpServletResponse reviews = get(filter, "/shops/1/reviews", query());
+			MockHttpServletResponse admin = get(filter, "/admin/shops", query());
+			MockHttpServletResponse shop = get(filter, "/shops/1", query());
+			MockHttpServletResponse home = get(filter, "/", query());
+
+			assertThat(reviews.getStatus()).isEqualTo(503);
+			assertThat(reviews.getHeader("Retry-After")).isEqualTo("5");
+			assertThat(admin.getStatus()).isEqualTo(503);
+			assertThat(shop.getStatus()).isEqualTo(200);
+			assertThat(home.getStatus()).isEqualTo(200);
+		} finally {
+			for (Connection connection : held) {
+				connection.close();
+			}
+		}
+		assertThat(get(filter, "/shops/1/reviews", query()).getStatus()).isEqualTo(200);
+		assertThat(get(filter, "/css/style.css", query()).getStatus()).isEqualTo(200);
+		assertThat(filter.getLanes().get(RouteClass.LOW).getRejectedCount()).isEqualTo(2);
+	}
+
+	@Test
+	void boundsConcurrencyAndQueueLengthPerRouteClass() throws Exception {
+		AdmissionControlFilter filter = filter(1, 1);
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		FilterChain blocking = (request, response) -> {
+			entered.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<MockHttpServletResponse> running = executor.submit(() -> get(filter, "/admin/users", blocking));
+			assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+			Future<MockHttpServletResponse> waiting = executor.submit(() -> get(filter, "/admin/users", (request, response) -> { }));
+			while (filter.getLanes().get(RouteClass.LOW).getQueued() == 0) {
+				Thread.sleep(1);
+			}
+
+			// 同時実行数（1）も待ち行列（1）も一杯のため、待たずに断る
+			long startNanos = System.nanoTime();
+			MockHttpServletResponse rejected = get(filter, "/admin/users", (request, response) -> { });
+			long rejectedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			// 他の分類は影響を受けない
+			MockHttpServletResponse shop = get(filter, "/shops/1", (request, response) -> { });
+
+			release.countDown();
+			assertThat(running.get().getStatus()).isEqualTo(200);
+			assertThat(waiting.get().getStatus()).isEqualTo(200);
+			assertThat(rejected.getStatus()).isEqualTo(503);
+			assertThat(rejectedMillis).isLessThan(100);
+			assertThat(shop.getStatus()).isEqualTo(200);
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void compareShopDetailLatencyDuringLowPriorityBurst() throws Exception {
+		long without = measure(null);
+		long with = measure(filter(2, 4));
+		logger.info(String.format("受付制御: プール=%d 低優先度の同時アクセス=%d 店舗詳細のp99 受付制御なし=%dms あり=%dms",
+				MAXIMUM_POOL_SIZE, 60, without, with));
+		assertThat(with).isLessThan(without);
+	}
+
+	// 管理画面・レビュー一覧への60件の同時アクセス中に、店舗詳細へ20件ずつ5回アクセスしたときのp99
+	private long measure(AdmissionControlFilter filter) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(80);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			for (int i = 0; i < 60; i++) {
+				String path = i % 2 == 0 ? "/admin/shops" : "/shops/" + i + "/reviews";
+				executor.execute(() -> {
+					try {
+						start.await();
+						for (int round = 0; round < 5; round++) {
+							request(filter, path);
+						}
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				});
+			}
+			start.countDown();
+			Thread.sleep(QUERY_MILLIS);
+
+			List<Long> latencies = new ArrayList<>();
+			for (int round = 0; round < 5; round++) {
+				List<Future<Long>> futures = new ArrayList<>();
+				for (int i = 0; i < 20; i++) {
+					futures.add(executor.submit(() -> {
+						long startNanos = System.nanoTime();
+						assertThat(request(filter, "/shops/1")).isEqualTo(200);
+						return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+					}));
+				}
+				for (Future<Long> future : futures) {
+					latencies.add(future.get());
+				}
+			}
+			long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+			Arrays.sort(sorted);
+			return sorted[(int) Math.ceil(0.99 * sorted.length) - 1];
+		} finally {
+			executor.shutdown();
+			assertThat(executor.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+		}
+	}
+
+	private int request(AdmissionControlFilter filter, String path) throws Exception {
+		if (filter == null) {
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			query().doFilter(new MockHttpServletRequest("GET", path), response);
+			return response.getStatus();
+		}
+		return get(filter, path, query()).getStatus();
+	}
+}
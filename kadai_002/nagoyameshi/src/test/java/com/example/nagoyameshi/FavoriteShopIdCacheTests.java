@@ -0,0 +1,64 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.nagoyameshi.dto.FavoriteShopIds;
+import com.example.nagoyameshi.repository.FavoriteRepository;
+import com.example.nagoyameshi.service.FavoriteShopIdCache;
+
+// 読み込み中に同じユーザーのお気に入りが変わった場合だけ読み込んだ内容を捨て、他のユーザーの変更では捨てないことを確認する
+class FavoriteShopIdCacheTests {
+
+	private final FavoriteRepository favoriteRepository = mock(FavoriteRepository.class);
+	private final FavoriteShopIdCache cache = new FavoriteShopIdCache(favoriteRepository, 100);
+	private final CountDownLatch loading = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	// ユーザー1の読み込みを、releaseが開くまで止める
+	private CompletableFuture<FavoriteShopIds> startBlockedLoad() throws InterruptedException {
+		when(favoriteRepository.findShopIdsByUserId(1)).thenAnswer(invocation -> {
+			loading.countDown();
+			assertThat(release.await(10, TimeUnit.SECONDS)).isTrue();
+			return List.of(10);
+		});
+		CompletableFuture<FavoriteShopIds> load = CompletableFuture.supplyAsync(() -> cache.get(1));
+		assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+		return load;
+	}
+
+	@Test
+	void otherUsersChangesDoNotDiscardLoad() throws Exception {
+		CompletableFuture<FavoriteShopIds> load = startBlockedLoad();
+		cache.added(2, 20);
+		cache.removed(3, 30);
+		release.countDown();
+		assertThat(load.get(10, TimeUnit.SECONDS).contains(10)).isTrue();
+
+		assertThat(cache.get(1).contains(10)).isTrue();
+		verify(favoriteRepository, times(1)).findShopIdsByUserId(1);
+	}
+
+	@Test
+	void sameUsersChangeDiscardsLoad() throws Exception {
+		CompletableFuture<FavoriteShopIds> load = startBlockedLoad();
+		cache.added(1, 11);
+		release.countDown();
+		load.get(10, TimeUnit.SECONDS);
+
+		// 変更前の内容はキャッシュされず、次の参照で読み直す
+		when(favoriteRepository.findShopIdsByUserId(1)).thenReturn(List.of(10, 11));
+		assertThat(cache.get(1).contains(11)).isTrue();
+		verify(favoriteRepository, times(2)).findShopIdsByUserId(1);
+	}
+}
@@ -0,0 +1,223 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+
+import com.example.nagoyameshi.storage.ImageServingFilter;
+import com.example.nagoyameshi.storage.ImageStorage;
+
+// ImageServingFilterの条件付きGET・Rangeの応答を確認し、
+// 従来の静的リソースの処理（ResourceHttpRequestHandler）と同じ画像を配信したときの処理件数を比べてログに出す
+// 従来の処理はSpring Securityのフィルターを通さずに測るため、実際の差はこれより大きい
+class ImageServingBenchmarkTests {
+	private static final Logger logger = LoggerFactory.getLogger(ImageServingBenchmarkTests.class);
+
+	private static final String VARIANT = "0123456789abcdef0123-card.jpg";
+	private static final int LENGTH = 300 * 1024;
+	private static final int REQUESTS = 2_000;
+
+	@TempDir
+	static Path storageDirectory;
+
+	private static Tomcat tomcat;
+	private static HttpClient client;
+	private static String baseUrl;
+	private static byte[] content;
+
+	// 新しい処理は「/」、従来の処理は「/legacy」のコンテキストで同じファイルを配信する
+	@BeforeAll
+	static void start() throws Exception {
+		ImageStorage imageStorage = new ImageStorage(storageDirectory.toString());
+		content = new byte[LENGTH];
+		ThreadLocalRandom.current().nextBytes(content);
+		Files.write(imageStorage.getVariantDirectory().resolve(VARIANT), content);
+
+		tomcat = new Tomcat();
+		tomcat.setBaseDir(Files.createDirectories(storageDirectory.resolve("tomcat")).toString());
+		tomcat.setPort(0);
+
+		Context context = tomcat.addContext("", null);
+		FilterDef filterDef = new FilterDef();
+		filterDef.setFilterName("imageServingFilter");
+		filterDef.setFilter(new ImageServingFilter(imageStorage));
+		context.addFilterDef(filterDef);
+		FilterMap filterMap = new FilterMap();
+		filterMap.setFilterName("imageServingFilter");
+		filterMap.addURLPattern("/storage/*");
+		context.addFilterMap(filterMap);
+		Tomcat.addServlet(context, "notFound", new HttpServlet() {
+			@Override
+			protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			}
+		});
+		context.addServletMappingDecoded("/", "notFound");
+
+		ResourceHttpRequestHandler handler = new ResourceHttpRequestHandler();
+		handler.setLocations(List.of(new FileSystemResource(imageStorage.getVariantDirectory().toString() + "/")));
+		handler.setServletContext(new MockServletContext());
+		handler.afterPropertiesSet();
+		Context legacyContext = tomcat.addContext("/legacy", null);
+		Tomcat.addServlet(legacyContext, "resourceHandler", new HttpServlet() {
+			@Override
+			protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+				request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, request.getPathInfo().substring(1));
+				handler.handleRequest(request, response);
+			}
+		});
+		legacyContext.addServletMappingDecoded("/storage/variants/*", "resourceHandler");
+
+		tomcat.getConnector();
+		tomcat.start();
+		baseUrl = "http://localhost:" + tomcat.getConnector().getLocalPort();
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	}
+
+	@AfterAll
+	static void stop() throws Exception {
+		tomcat.stop();
+		tomcat.destroy();
+	}
+
+	private HttpResponse<byte[]> get(String path, String... headers) throws Exception {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path));
+		if (headers.length > 0) {
+			builder.headers(headers);
+		}
+		return client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+	@Test
+	void servesWholeFileWithValidators() throws Exception {
+		HttpResponse<byte[]> response = get("/storage/variants/" + VARIANT);
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.body()).isEqualTo(content);
+		assertThat(response.headers().firstValue("Content-Type")).hasValue("image/jpeg");
+		assertThat(response.headers().firstValue("Cache-Control")).hasValue("max-age=31536000, public, immutable");
+		assertThat(response.headers().firstValue("ETag")).isPresent();
+		assertThat(response.headers().firstValue("Last-Modified")).isPresent();
+	}
+
+	@Test
+	void answersConditionalGetWithNotModified() throws Exception {
+		HttpResponse<byte[]> response = get("/storage/variants/" + VARIANT);
+		String etag = response.headers().firstValue("ETag").orElseThrow();
+		String lastModified = response.headers().firstValue("Last-Modified").orElseThrow();
+
+		HttpResponse<byte[]> byEtag = get("/storage/variants/" + VARIANT, "If-None-Match", etag);
+		HttpResponse<byte[]> byDate = get("/storage/variants/" + VARIANT, "If-Modified-Since", lastModified);
+		HttpResponse<byte[]> otherEtag = get("/storage/variants/" + VARIANT, "If-None-Match", "\"other\"");
+
+		assertThat(byEtag.statusCode()).isEqualTo(304);
+		assertThat(byEtag.body()).isEmpty();
+		assertThat(byDate.statusCode()).isEqualTo(304);
+		assertThat(otherEtag.statusCode()).isEqualTo(200);
+	}
+
+	@Test
+	void servesSingleRanges() throws Exception {
+		HttpResponse<byte[]> middle = get("/storage/variants/" + VARIANT, "Range", "bytes=100-199");
+		HttpResponse<byte[]> suffix = get("/storage/variants/" + VARIANT, "Range", "bytes=-50");
+		HttpResponse<byte[]> unsatisfiable = get("/storage/variants/" + VARIANT, "Range", "bytes=" + LENGTH + "-");
+		HttpResponse<byte[]> staleIfRange = get("/storage/variants/" + VARIANT, "Range", "bytes=0-9", "If-Range", "\"stale\"");
+
+		assertThat(middle.statusCode()).isEqualTo(206);
+		assertThat(middle.headers().firstValue("Content-Range")).hasValue("bytes 100-199/" + LENGTH);
+		assertThat(middle.body()).isEqualTo(Arrays.copyOfRange(content, 100, 200));
+		assertThat(suffix.statusCode()).isEqualTo(206);
+		assertThat(suffix.body()).isEqualTo(Arrays.copyOfRange(content, LENGTH - 50, LENGTH));
+		assertThat(unsatisfiable.statusCode()).isEqualTo(416);
+		assertThat(unsatisfiable.headers().firstValue("Content-Range")).hasValue("bytes */" + LENGTH);
+		assertThat(staleIfRange.statusCode()).isEqualTo(200);
+		assertThat(staleIfRange.body()).hasSize(LENGTH);
+	}
+
+	@Test
+	void leavesUnknownAndUnsafePathsToTheChain() throws Exception {
+		assertThat(get("/storage/variants/missing.jpg").statusCode()).isEqualTo(404);
+		assertThat(get("/storage/variants/..%2F..%2Fetc%2Fpasswd").statusCode()).isIn(400, 404);
+	}
+
+	// 処理件数の比較は計測用のため既定のmvn testでは実行しない（mvn test -Pbenchmark で実行する）
+	@Tag("benchmark")
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 8, 32 })
+	void compareThroughput(int threads) throws Exception {
+		// 計測前に両方の処理を一度ずつ通しておく
+		assertThat(get("/legacy/storage/variants/" + VARIANT).body()).isEqualTo(content);
+		assertThat(get("/storage/variants/" + VARIANT).body()).isEqualTo(content);
+
+		double legacy = measure(threads, "/legacy/storage/variants/" + VARIANT);
+		double filter = measure(threads, "/storage/variants/" + VARIANT);
+
+		logger.info(String.format("画像配信: スレッド数=%d サイズ=%dKB 従来=%.0f件/秒 ImageServingFilter=%.0f件/秒（%.2f倍）",
+				threads, LENGTH / 1024, legacy, filter, filter / legacy));
+	}
+
+	private double measure(int threads, String path) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicInteger remaining = new AtomicInteger(REQUESTS);
+		AtomicLong bytes = new AtomicLong();
+		for (int i = 0; i < threads; i++) {
+			executor.execute(() -> {
+				try {
+					start.await();
+					while (remaining.getAndDecrement() > 0) {
+						bytes.addAndGet(get(path).body().length);
+					}
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+		}
+		long startNanos = System.nanoTime();
+		start.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(120, TimeUnit.SECONDS)).isTrue();
+		long elapsedNanos = System.nanoTime() - startNanos;
+
+		assertThat(bytes.get()).isEqualTo((long) REQUESTS * LENGTH);
+		return REQUESTS / (elapsedNanos / 1_000_000_000.0);
+	}
+}
@@ -0,0 +1,143 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.example.nagoyameshi.storage.ImageServingFilter;
+import com.example.nagoyameshi.storage.ImageStorage;
+
+// アップロードした画像の保存・バリアントの作成・URLの切り替えと、再起動後もバリアントのURLを返すことを確認する
+class ImageStorageTests {
+
+	@TempDir
+	Path storageDirectory;
+
+	private ImageStorage imageStorage;
+
+	@AfterEach
+	void shutdown() {
+		if (imageStorage != null) {
+			imageStorage.shutdown();
+		}
+	}
+
+	@Test
+	void uploadCreatesOriginalAndVariants() throws Exception {
+		imageStorage = new ImageStorage(storageDirectory.toString());
+		byte[] png = png(2000, 1000);
+
+		String imageName = imageStorage.store(new MockMultipartFile("imageFile", "photo.png", "image/png", png));
+
+		assertThat(imageName).matches("[0-9a-f]{20}\\.png");
+		assertThat(Files.readAllBytes(imageStorage.getOriginalDirectory().resolve(imageName))).isEqualTo(png);
+		// 同じ内容の画像は同じファイル名で保存される
+		assertThat(imageStorage.store(new MockMultipartFile("imageFile", "copy.png", "image/png", png))).isEqualTo(imageName);
+
+		awaitVariants(imageName);
+		String hash = imageName.substring(0, 20);
+		assertThat(imageStorage.url(imageName, "thumbnail")).isEqualTo("/storage/variants/" + hash + "-thumbnail.jpg");
+		assertThat(imageStorage.url(imageName, "card")).isEqualTo("/storage/variants/" + hash + "-card.jpg");
+		assertThat(imageStorage.url(imageName, "hero")).isEqualTo("/storage/variants/" + hash + "-hero.jpg");
+		assertThat(width(hash + "-thumbnail.jpg")).isEqualTo(320);
+		assertThat(width(hash + "-card.jpg")).isEqualTo(640);
+		assertThat(width(hash + "-hero.jpg")).isEqualTo(1280);
+
+		// 配信されるのは作成したバリアントの内容
+		MockHttpServletResponse response = serve(imageStorage.url(imageName, "card"));
+		assertThat(response.getStatus()).isEqualTo(200);
+		assertThat(response.getContentType()).isEqualTo("image/jpeg");
+		assertThat(response.getContentAsByteArray())
+				.isEqualTo(Files.readAllBytes(imageStorage.getVariantDirectory().resolve(hash + "-card.jpg")));
+		assertThat(serve("/storage/" + imageName).getContentAsByteArray()).isEqualTo(png);
+	}
+
+	@Test
+	void smallImageIsNotEnlarged() throws Exception {
+		imageStorage = new ImageStorage(storageDirectory.toString());
+
+		String imageName = imageStorage.store(new MockMultipartFile("imageFile", "small.png", "image/png", png(500, 250)));
+
+		awaitVariants(imageName);
+		String hash = imageName.substring(0, 20);
+		assertThat(width(hash + "-thumbnail.jpg")).isEqualTo(320);
+		assertThat(width(hash + "-card.jpg")).isEqualTo(500);
+		assertThat(width(hash + "-hero.jpg")).isEqualTo(500);
+	}
+
+	@Test
+	void fallsBackToOriginalUntilVariantsAreReady() throws Exception {
+		imageStorage = new ImageStorage(storageDirectory.toString());
+		// バリアントのない画像（アップロード直後や、以前のバージョンで保存した画像）
+		String imageName = "0123456789abcdef0123.png";
+		Files.write(imageStorage.getOriginalDirectory().resolve(imageName), png(800, 600));
+
+		assertThat(imageStorage.url(imageName, "card")).isEqualTo("/storage/" + imageName);
+		assertThat(serve(imageStorage.url(imageName, "card")).getStatus()).isEqualTo(200);
+
+		// 起動時の確認で作成された後はバリアントのURLになる
+		imageStorage.scan();
+		awaitVariants(imageName);
+		assertThat(imageStorage.url(imageName, "card")).isEqualTo("/storage/variants/0123456789abcdef0123-card.jpg");
+	}
+
+	@Test
+	void variantsAreFoundAfterRestart() throws Exception {
+		imageStorage = new ImageStorage(storageDirectory.toString());
+		String imageName = imageStorage.store(new MockMultipartFile("imageFile", "photo.png", "image/png", png(1600, 900)));
+		awaitVariants(imageName);
+		String cardUrl = imageStorage.url(imageName, "card");
+		imageStorage.shutdown();
+
+		// 再起動後は起動時の確認（scan）より前でも、ディスクのバリアントからURLを返す
+		imageStorage = new ImageStorage(storageDirectory.toString());
+		assertThat(imageStorage.url(imageName, "card")).isEqualTo(cardUrl);
+		assertThat(serve(cardUrl).getStatus()).isEqualTo(200);
+	}
+
+	private void awaitVariants(String imageName) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!imageStorage.url(imageName, "hero").startsWith(ImageStorage.VARIANT_URL_PREFIX)) {
+			assertThat(System.currentTimeMillis()).as("バリアントの作成を待つ時間を過ぎました").isLessThan(deadline);
+			Thread.sleep(20);
+		}
+	}
+
+	private int width(String variantFileName) throws IOException {
+		return ImageIO.read(imageStorage.getVariantDirectory().resolve(variantFileName).toFile()).getWidth();
+	}
+
+	private MockHttpServletResponse serve(String url) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+		new ImageServingFilter(imageStorage).doFilter(new MockHttpServletRequest("GET", url), response, chain);
+		assertThat(chain.getRequest()).as("ImageServingFilterで配信されませんでした: %s", url).isNull();
+		return response;
+	}
+
+	private static byte[] png(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < width; x += 10) {
+			image.setRGB(x, x * height / width, 0xff8800);
+		}
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", outputStream);
+		assertThat(ImageIO.read(new ByteArrayInputStream(outputStream.toByteArray()))).isNotNull();
+		return outputStream.toByteArray();
+	}
+}
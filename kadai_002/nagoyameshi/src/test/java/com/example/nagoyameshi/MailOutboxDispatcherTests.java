@@ -0,0 +1,274 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.example.nagoyameshi.metrics.Metrics;
+import com.example.nagoyameshi.service.MailOutboxService;
+import com.example.nagoyameshi.task.MailOutboxDispatcher;
+
+// アウトボックスのメールを、テスト内で起動した最小限のSMTPサーバーに実際に送信して確認する
+// 複数のサーバーが同時に送信しても1件につき1回だけ送ること、失敗したメールを間隔を倍にしながら再送すること、上限に達したらDEADにすることを確かめる
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:mail-outbox;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=whsec_dummy",
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user",
+		"nagoyameshi.seed.enabled=true",
+		"nagoyameshi.mail.batch-size=5",
+		"nagoyameshi.mail.workers=4",
+		"nagoyameshi.mail.max-attempts=3",
+		"nagoyameshi.mail.retry-base-ms=" + MailOutboxDispatcherTests.RETRY_BASE_MILLIS,
+		"nagoyameshi.mail.retry-max-ms=60000",
+		"nagoyameshi.mail.poll-ms=100" })
+class MailOutboxDispatcherTests {
+	static final long RETRY_BASE_MILLIS = 500;
+
+	private static final SmtpStub smtp = SmtpStub.start();
+
+	@DynamicPropertySource
+	static void mailProperties(DynamicPropertyRegistry registry) {
+		registry.add("spring.mail.port", smtp::port);
+	}
+
+	@Autowired
+	private MailOutboxService mailOutboxService;
+
+	@Autowired
+	private MailOutboxDispatcher mailOutboxDispatcher;
+
+	@Autowired
+	private JavaMailSender mailSender;
+
+	@Autowired
+	private Metrics metrics;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void eachMailIsSentOnceUnderConcurrentDispatch() throws Exception {
+		int mails = 60;
+		// 同じデータベースを使う別のサーバーの送信処理
+		MailOutboxDispatcher otherServer = new MailOutboxDispatcher(mailOutboxService, mailSender, metrics, 5, 4, 300_000, 7);
+		ExecutorService pollers = Executors.newFixedThreadPool(4);
+		AtomicBoolean running = new AtomicBoolean(true);
+		try {
+			for (int i = 0; i < 4; i++) {
+				MailOutboxDispatcher dispatcher = i % 2 == 0 ? mailOutboxDispatcher : otherServer;
+				pollers.execute(() -> {
+					while (running.get()) {
+						dispatcher.poll();
+						Thread.onSpinWait();
+					}
+				});
+			}
+			for (int i = 0; i < mails; i++) {
+				mailOutboxService.enqueue(null, "concurrent@example.com", "concurrent-" + i, "body");
+			}
+
+			await(() -> count("SELECT COUNT(*) FROM mail_outbox WHERE recipient = 'concurrent@example.com' AND status = 'SENT'") == mails);
+		} finally {
+			running.set(false);
+			pollers.shutdown();
+			pollers.awaitTermination(10, TimeUnit.SECONDS);
+			otherServer.shutdown();
+		}
+
+		List<String> subjects = smtp.deliveredSubjects("concurrent@example.com");
+		assertThat(subjects).hasSize(mails).doesNotHaveDuplicates();
+		assertThat(count("SELECT COUNT(*) FROM mail_outbox WHERE recipient = 'concurrent@example.com' AND attempts <> 1")).isZero();
+	}
+
+	@Test
+	void failedMailIsRetriedWithBackoff() throws Exception {
+		// 2回目までは一時的なエラーで受け付けず、3回目で受け付ける
+		smtp.rejectTimes("flaky@example.com", 2);
+		mailOutboxService.enqueue(null, "flaky@example.com", "flaky", "body");
+
+		await(() -> count("SELECT COUNT(*) FROM mail_outbox WHERE recipient = 'flaky@example.com' AND status = 'SENT'") == 1);
+
+		List<Long> attempts = smtp.attemptMillis("flaky@example.com");
+		assertThat(attempts).hasSize(3);
+		// 1回目の失敗の後は基準の間隔、2回目の失敗の後はその倍以上空けて再送する
+		assertThat(attempts.get(1) - attempts.get(0)).isGreaterThanOrEqualTo(RETRY_BASE_MILLIS);
+		assertThat(attempts.get(2) - attempts.get(1)).isGreaterThanOrEqualTo(RETRY_BASE_MILLIS * 2);
+		assertThat(smtp.deliveredSubjects("flaky@example.com")).containsExactly("flaky");
+		assertThat(count("SELECT attempts FROM mail_outbox WHERE recipient = 'flaky@example.com'")).isEqualTo(3);
+	}
+
+	@Test
+	void mailIsDeadAfterMaxAttempts() throws Exception {
+		smtp.rejectTimes("dead@example.com", Integer.MAX_VALUE);
+		mailOutboxService.enqueue(null, "dead@example.com", "dead", "body");
+
+		await(() -> count("SELECT COUNT(*) FROM mail_outbox WHERE recipient = 'dead@example.com' AND status = 'DEAD'") == 1);
+		// DEADにした後は再送しない（再送の間隔より長く待って確認する）
+		Thread.sleep(RETRY_BASE_MILLIS * 4);
+
+		assertThat(smtp.attemptMillis("dead@example.com")).hasSize(3);
+		assertThat(smtp.deliveredSubjects("dead@example.com")).isEmpty();
+		assertThat(count("SELECT attempts FROM mail_outbox WHERE recipient = 'dead@example.com'")).isEqualTo(3);
+		assertThat(jdbcTemplate.queryForObject("SELECT last_error FROM mail_outbox WHERE recipient = 'dead@example.com'", String.class))
+				.contains("451");
+	}
+
+	private int count(String sql) {
+		return jdbcTemplate.queryForObject(sql, Integer.class);
+	}
+
+	private void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 30_000;
+		while (!condition.getAsBoolean()) {
+			assertThat(System.currentTimeMillis()).as("送信の完了を待つ時間を過ぎました").isLessThan(deadline);
+			Thread.sleep(50);
+		}
+	}
+
+	// 宛先（RCPT TO）ごとの受付時刻と、受け付けたメールの件名を記録するだけのSMTPサーバー
+	// 宛先ごとに指定した回数だけ、一時的なエラー（451）で受け付けない
+	private static final class SmtpStub {
+		private final ServerSocket serverSocket;
+		private final Map<String, Queue<Long>> attempts = new ConcurrentHashMap<>();
+		private final Map<String, Integer> rejections = new ConcurrentHashMap<>();
+		private final List<String[]> deliveries = new CopyOnWriteArrayList<>();
+
+		private SmtpStub(ServerSocket serverSocket) {
+			this.serverSocket = serverSocket;
+		}
+
+		static SmtpStub start() {
+			try {
+				SmtpStub stub = new SmtpStub(new ServerSocket(0));
+				Thread.ofPlatform().daemon().name("smtp-stub").start(stub::accept);
+				return stub;
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		int port() {
+			return serverSocket.getLocalPort();
+		}
+
+		void rejectTimes(String recipient, int times) {
+			rejections.put(recipient, times);
+		}
+
+		List<Long> attemptMillis(String recipient) {
+			return new ArrayList<>(attempts.getOrDefault(recipient, new ConcurrentLinkedQueue<>()));
+		}
+
+		List<String> deliveredSubjects(String recipient) {
+			return deliveries.stream().filter(delivery -> delivery[0].equals(recipient)).map(delivery -> delivery[1]).toList();
+		}
+
+		private void accept() {
+			while (true) {
+				try {
+					Socket socket = serverSocket.accept();
+					Thread.ofPlatform().daemon().start(() -> serve(socket));
+				} catch (IOException e) {
+					return;
+				}
+			}
+		}
+
+		private void serve(Socket socket) {
+			try (socket;
+					BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+					Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1)) {
+				reply(writer, "220 localhost");
+				List<String> recipients = new ArrayList<>();
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String command = line.toUpperCase();
+					if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+						reply(writer, "250 localhost");
+					} else if (command.startsWith("MAIL FROM")) {
+						recipients.clear();
+						reply(writer, "250 OK");
+					} else if (command.startsWith("RCPT TO")) {
+						String recipient = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+						attempts.computeIfAbsent(recipient, key -> new ConcurrentLinkedQueue<>()).add(System.currentTimeMillis());
+						if (rejections.getOrDefault(recipient, 0) > 0) {
+							rejections.merge(recipient, -1, Integer::sum);
+							reply(writer, "451 4.3.0 Try again later");
+						} else {
+							recipients.add(recipient);
+							reply(writer, "250 OK");
+						}
+					} else if (command.equals("DATA")) {
+						reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+						StringBuilder data = new StringBuilder();
+						while (!(line = reader.readLine()).equals(".")) {
+							data.append(line.startsWith("..") ? line.substring(1) : line).append("\r\n");
+						}
+						String subject = subject(data.toString());
+						for (String recipient : recipients) {
+							deliveries.add(new String[] { recipient, subject });
+						}
+						reply(writer, "250 OK");
+					} else if (command.equals("QUIT")) {
+						reply(writer, "221 Bye");
+						return;
+					} else {
+						reply(writer, "250 OK");
+					}
+				}
+			} catch (IOException | MessagingException e) {
+				// 送信側が接続を切った場合は何もしない
+			}
+		}
+
+		private String subject(String data) throws MessagingException {
+			return new MimeMessage(Session.getInstance(new Properties()),
+					new ByteArrayInputStream(data.getBytes(StandardCharsets.ISO_8859_1))).getSubject();
+		}
+
+		private void reply(Writer writer, String line) throws IOException {
+			writer.write(line + "\r\n");
+			writer.flush();
+		}
+	}
+}
@@ -3,7 +3,18 @@ package com.example.nagoyameshi;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// マイグレーションはMySQLの構文を含むため、組み込みデータベース（H2）はMySQL互換モードで起動する
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:context-loads;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=whsec_dummy",
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user" })
 class NagoyameshiApplicationTests {
 
 	@Test
@@ -0,0 +1,95 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.nagoyameshi.repository.UserRepository;
+import com.example.nagoyameshi.security.PrincipalVersions;
+import com.example.nagoyameshi.security.UserDetailsImpl;
+import com.example.nagoyameshi.security.UserDetailsServiceImpl;
+import com.example.nagoyameshi.service.UserService;
+
+// ロールを変更すると、変更したサーバーではすぐに、同じデータベースを使う別のサーバー（別のPrincipalVersions）では次の読み直しで
+// 変更前に読み込んだUserDetailsImplが古いと判定されることと、判定のたびにデータベースへ問い合わせないことを確認する
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:principal-versions;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=whsec_dummy",
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user",
+		"nagoyameshi.seed.enabled=true" })
+class PrincipalVersionsTests {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private UserDetailsServiceImpl userDetailsService;
+
+	@Autowired
+	private PrincipalVersions principalVersions;
+
+	@Test
+	void roleChangeIsDetectedOnEveryServer() {
+		Integer userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE role_id = 2 ORDER BY id LIMIT 1", Integer.class);
+		// 別のサーバーのPrincipalVersions（このサーバーのイベントは届かず、sync()の読み直しで変更を知る）
+		PrincipalVersions otherServer = new PrincipalVersions(userRepository, 60_000);
+
+		UserDetailsImpl before = userDetailsService.loadUserById(userId).orElseThrow();
+		assertThat(principalVersions.isStale(before)).isFalse();
+		assertThat(otherServer.isStale(before)).isFalse();
+
+		userService.updateUserRole(userId, "ROLE_USER");
+
+		assertThat(principalVersions.isStale(before)).isTrue();
+		assertThat(otherServer.isStale(before)).isFalse();
+		otherServer.sync();
+		assertThat(otherServer.isStale(before)).isTrue();
+
+		UserDetailsImpl after = userDetailsService.loadUserById(userId).orElseThrow();
+		assertThat(after.getRoleName()).isEqualTo("ROLE_USER");
+		assertThat(principalVersions.isStale(after)).isFalse();
+		assertThat(otherServer.isStale(after)).isFalse();
+	}
+
+	@Test
+	void staleCheckUsesMemoryAfterFirstLoad() {
+		UserRepository repository = mock(UserRepository.class);
+		when(repository.findPrincipalVersionById(1)).thenReturn(Optional.of(3L));
+		PrincipalVersions versions = new PrincipalVersions(repository, 60_000);
+		UserDetailsImpl userDetails = mock(UserDetailsImpl.class);
+		when(userDetails.getUserId()).thenReturn(1);
+		when(userDetails.getVersion()).thenReturn(3L);
+
+		for (int i = 0; i < 100; i++) {
+			assertThat(versions.isStale(userDetails)).isFalse();
+		}
+		versions.sync();
+		versions.sync();
+
+		verify(repository, times(1)).findPrincipalVersionById(1);
+		verify(repository, times(2)).findPrincipalVersionsUpdatedSince(any());
+	}
+}
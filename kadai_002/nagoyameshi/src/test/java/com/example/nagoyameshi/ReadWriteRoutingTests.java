@@ -0,0 +1,141 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.nagoyameshi.datasource.ReadWriteRoutingDataSource;
+import com.example.nagoyameshi.datasource.ReadYourWrites;
+import com.example.nagoyameshi.entity.Role;
+import com.example.nagoyameshi.entity.User;
+import com.example.nagoyameshi.security.UserDetailsImpl;
+import com.zaxxer.hikari.HikariDataSource;
+
+// 2つの組み込みデータベースをプライマリ・レプリカに見立て、ReadWriteRoutingDataSourceの振り分けを確認する
+// レプリカには書き込みが届かない（遅れ続ける）ため、どちらから読んだかは読み取った値で分かる
+class ReadWriteRoutingTests {
+
+	private HikariDataSource primary;
+	private HikariDataSource replica;
+	private ReadWriteRoutingDataSource routing;
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate writeTransaction;
+	private TransactionTemplate readOnlyTransaction;
+
+	@BeforeEach
+	void start() {
+		primary = dataSource("routing-primary");
+		replica = dataSource("routing-replica");
+		ReadYourWrites readYourWrites = new ReadYourWrites(60_000);
+		routing = new ReadWriteRoutingDataSource(primary, replica, readYourWrites);
+
+		// アプリケーションと同じく、トランザクションの読み取り専用の指定が決まってからコネクションを選ばせる
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+		transactionManager.addListener(readYourWrites);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		writeTransaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction.setReadOnly(true);
+
+		for (HikariDataSource target : new HikariDataSource[] { primary, replica }) {
+			new JdbcTemplate(target).execute("CREATE TABLE reviews (id INT AUTO_INCREMENT PRIMARY KEY, user_id INT, comment VARCHAR(255))");
+		}
+	}
+
+	@AfterEach
+	void stop() {
+		SecurityContextHolder.clearContext();
+		primary.close();
+		replica.close();
+	}
+
+	private static HikariDataSource dataSource(String name) {
+		HikariDataSource dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl("jdbc:h2:mem:" + name);
+		dataSource.setMaximumPoolSize(2);
+		return dataSource;
+	}
+
+	private static void login(int userId) {
+		Role role = new Role();
+		role.setName("ROLE_PREMIUM");
+		User user = new User();
+		user.setId(userId);
+		user.setName("user" + userId);
+		user.setEmail("user" + userId + "@example.com");
+		user.setPassword("password");
+		user.setRole(role);
+		user.setEnabled(true);
+		UserDetailsImpl userDetails = new UserDetailsImpl(user);
+		SecurityContextHolder.getContext().setAuthentication(
+				UsernamePasswordAuthenticationToken.authenticated(userDetails, null, userDetails.getAuthorities()));
+	}
+
+	private void postReview(int userId) {
+		writeTransaction.executeWithoutResult(status ->
+				jdbcTemplate.update("INSERT INTO reviews (user_id, comment) VALUES (?, ?)", userId, "おいしかった"));
+	}
+
+	private long countReviews() {
+		return readOnlyTransaction.execute(status -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reviews", Long.class));
+	}
+
+	@Test
+	void routesReadOnlyTransactionsToTheReplicaAndWritesToThePrimary() {
+		postReview(1);
+
+		assertThat(new JdbcTemplate(primary).queryForObject("SELECT COUNT(*) FROM reviews", Long.class)).isEqualTo(1);
+		assertThat(countReviews()).isZero();
+		assertThat(routing.getReplicaCount()).isEqualTo(1);
+	}
+
+	@Test
+	void readsOwnWritesFromThePrimary() {
+		login(1);
+		assertThat(countReviews()).isZero();
+		postReview(1);
+		// 書き込んだユーザーは一定時間プライマリから読む
+		assertThat(countReviews()).isEqualTo(1);
+
+		// 他のユーザー・ログインしていない閲覧者はレプリカから読む
+		login(2);
+		assertThat(countReviews()).isZero();
+		SecurityContextHolder.clearContext();
+		assertThat(countReviews()).isZero();
+
+		// 読み取り専用のトランザクションでは固定しない
+		login(3);
+		countReviews();
+		assertThat(countReviews()).isZero();
+	}
+
+	@Test
+	void expiresStickinessAfterTheConfiguredPeriod() throws InterruptedException {
+		ReadYourWrites readYourWrites = new ReadYourWrites(50);
+		login(1);
+		readYourWrites.afterCommit(new SimpleTransactionStatus(), null);
+		assertThat(readYourWrites.isRecentWriter()).isTrue();
+		Thread.sleep(100);
+		assertThat(readYourWrites.isRecentWriter()).isFalse();
+	}
+
+	@Test
+	void usePrimaryForcesThePrimaryInsideReadOnlyTransactions() {
+		postReview(1);
+
+		long count = ReadWriteRoutingDataSource.usePrimary(this::countReviews);
+
+		assertThat(count).isEqualTo(1);
+		assertThat(countReviews()).isZero();
+	}
+}
@@ -0,0 +1,267 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.nagoyameshi.entity.Shop;
+import com.example.nagoyameshi.entity.User;
+import com.example.nagoyameshi.form.ReservationInputForm;
+import com.example.nagoyameshi.repository.ShopRepository;
+import com.example.nagoyameshi.repository.UserRepository;
+import com.example.nagoyameshi.service.ReservationService;
+import com.example.nagoyameshi.service.SeatAvailability;
+
+// ReservationService.createReservationを複数スレッドから実際のトランザクションで呼び出し、
+// 登録・ロールバック・取消が入り混じっても、予約テーブルの枠ごとの人数の合計が定員を超えないことを確認する
+// 座席の確保はseat_slotsテーブルの枠の行ロックで判定するため、アプリケーション内のキャッシュを共有しない複数のサーバーでも同じ結果になる
+// 枠の行がないときに予約の集計から作る経路も確かめるため、行を作らずに登録した予約（初期データと同じ扱い）を1件含めておく
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:reservation-concurrency;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE;LOCK_TIMEOUT=30000",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=whsec_dummy",
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user",
+		"nagoyameshi.seed.enabled=true" })
+class ReservationConcurrencyTests {
+	private static final Logger logger = LoggerFactory.getLogger(ReservationConcurrencyTests.class);
+
+	private static final int CAPACITY = 10;
+	private static final int SHOPS = 3;
+	private static final int DAYS = 2;
+	// スレッドごとに別の会員で予約する（取消は自分の予約だけを対象にする）
+	private static final int THREADS = 8;
+	private static final int ATTEMPTS = 1_500;
+	private static final int STAY_MINUTES = 120;
+	private static final LocalDate FIRST_DATE = LocalDate.of(2030, 1, 1);
+
+	@Autowired
+	private ReservationService reservationService;
+
+	@Autowired
+	private SeatAvailability seatAvailability;
+
+	@Autowired
+	private ShopRepository shopRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void concurrentReservationsNeverExceedCapacity() throws InterruptedException {
+		List<Integer> shopIds = jdbcTemplate.queryForList("SELECT id FROM shops ORDER BY id LIMIT " + SHOPS, Integer.class);
+		jdbcTemplate.update("UPDATE shops SET capacity = ? WHERE id IN (" + String.join(",", shopIds.stream().map(String::valueOf).toList()) + ")", CAPACITY);
+		List<Shop> shops = shopIds.stream().map(id -> shopRepository.findById(id).orElseThrow()).toList();
+		List<User> users = jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id LIMIT " + THREADS, Integer.class).stream()
+				.map(id -> userRepository.findById(id).orElseThrow())
+				.toList();
+		jdbcTemplate.update("INSERT INTO reservations (shop_id, user_id, reservation_date, reservation_time, number_of_people) VALUES (?, ?, ?, ?, ?)",
+				shopIds.get(0), users.get(0).getId(), FIRST_DATE, LocalTime.of(18, 0), 3);
+
+		AtomicInteger remaining = new AtomicInteger(ATTEMPTS);
+		AtomicInteger committed = new AtomicInteger();
+		AtomicInteger rejected = new AtomicInteger();
+		AtomicInteger rolledBack = new AtomicInteger();
+		AtomicInteger released = new AtomicInteger();
+		Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		for (User user : users) {
+			executor.execute(() -> {
+				try {
+					start.await();
+					while (remaining.getAndDecrement() > 0) {
+						ThreadLocalRandom random = ThreadLocalRandom.current();
+						int action = random.nextInt(100);
+						if (action < 15) {
+							// 自分の予約を1件取り消す
+							List<Integer> ids = jdbcTemplate.queryForList("SELECT id FROM reservations WHERE user_id = ? AND reservation_date >= ?",
+									Integer.class, user.getId(), FIRST_DATE);
+							if (!ids.isEmpty()) {
+								reservationService.deleteReservation(reservationService.findReservationById(ids.get(random.nextInt(ids.size()))).orElseThrow());
+								released.incrementAndGet();
+							}
+							continue;
+						}
+
+						Shop shop = shops.get(random.nextInt(shops.size()));
+						ReservationInputForm form = new ReservationInputForm();
+						form.setShopId(shop.getId());
+						form.setReservationDate(FIRST_DATE.plusDays(random.nextInt(DAYS)));
+						form.setReservationTime(LocalTime.of(17, 0).plusMinutes(10L * random.nextInt(24)));
+						form.setNumberOfPeople(1 + random.nextInt(4));
+						boolean rollback = action < 30;
+						Boolean reserved = transactionTemplate.execute(status -> {
+							boolean result = reservationService.createReservation(form, shop, user);
+							if (rollback) {
+								status.setRollbackOnly();
+							}
+							return result;
+						});
+						if (!reserved) {
+							rejected.incrementAndGet();
+						} else if (rollback) {
+							rolledBack.incrementAndGet();
+						} else {
+							committed.incrementAndGet();
+						}
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			});
+		}
+		long startNanos = System.nanoTime();
+		start.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.MINUTES)).isTrue();
+		double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+
+		logger.info(String.format("予約の同時実行: スレッド数=%d 試行=%d 登録=%d 満席=%d ロールバック=%d 取消=%d 処理件数=%.0f件/秒",
+				THREADS, ATTEMPTS, committed.get(), rejected.get(), rolledBack.get(), released.get(), ATTEMPTS / seconds));
+		assertThat(errors).isEmpty();
+		assertThat(committed.get()).isPositive();
+		assertThat(rejected.get()).isPositive();
+		assertThat(rolledBack.get()).isPositive();
+		assertThat(released.get()).isPositive();
+
+		// 予約テーブルから枠ごとの人数を数え直し、定員以下であること・枠の行の人数と空席数の表示に一致することを確認する
+		for (Shop shop : shops) {
+			for (int day = 0; day < DAYS; day++) {
+				LocalDate date = FIRST_DATE.plusDays(day);
+				int[] occupancy = occupancy(shop.getId(), date);
+				for (int slot = 0; slot < SeatAvailability.SLOTS_PER_DAY; slot++) {
+					assertThat(occupancy[slot]).as("店舗%d %s 枠%d", shop.getId(), date, slot).isLessThanOrEqualTo(CAPACITY);
+				}
+				jdbcTemplate.query("SELECT slot, reserved_seats FROM seat_slots WHERE shop_id = ? AND reservation_date = ?", resultSet -> {
+					assertThat(resultSet.getInt(2)).as("店舗%d %s 枠%d", shop.getId(), date, resultSet.getInt(1))
+							.isEqualTo(occupancy[resultSet.getInt(1)]);
+				}, shop.getId(), date);
+				for (int minutes = 0; minutes < 24 * 10; minutes += 10) {
+					LocalTime time = LocalTime.of(17, 0).plusMinutes(minutes);
+					int from = time.toSecondOfDay() / 60 / SeatAvailability.SLOT_MINUTES;
+					int max = 0;
+					for (int slot = from; slot < Math.min(from + STAY_MINUTES / SeatAvailability.SLOT_MINUTES, SeatAvailability.SLOTS_PER_DAY); slot++) {
+						max = Math.max(max, occupancy[slot]);
+					}
+					assertThat(seatAvailability.getSeatsLeft(shop, date, time)).isEqualTo(CAPACITY - max);
+				}
+			}
+		}
+	}
+
+	// 1・8・64スレッドでcreateReservationを呼び出し、処理件数と定員超過がないことを確認する
+	// 店舗・日付・時刻をばらけさせ、枠が重ならない確保どうしが互いを待たずに進むかを測る（枠が重なる確保は同じ行で待ち合わせる）
+	// 計測用のため既定のmvn testでは実行しない（mvn test -Pbenchmark で実行する）
+	@Tag("benchmark")
+	@Test
+	void reservationThroughputByThreads() throws InterruptedException {
+		List<Integer> shopIds = jdbcTemplate.queryForList("SELECT id FROM shops ORDER BY id LIMIT 10", Integer.class);
+		jdbcTemplate.update("UPDATE shops SET capacity = ? WHERE id IN (" + String.join(",", shopIds.stream().map(String::valueOf).toList()) + ")", CAPACITY);
+		List<Shop> shops = shopIds.stream().map(id -> shopRepository.findById(id).orElseThrow()).toList();
+		List<User> users = jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id", Integer.class).stream()
+				.map(id -> userRepository.findById(id).orElseThrow())
+				.toList();
+		int days = 30;
+		int attempts = 3_000;
+
+		int run = 0;
+		for (int threads : new int[] { 1, 8, 64 }) {
+			// 計測ごとに別の期間を使い、前の計測の予約の影響を受けないようにする
+			LocalDate firstDate = FIRST_DATE.plusYears(1).plusDays(run++ * days);
+			AtomicInteger remaining = new AtomicInteger(attempts);
+			AtomicInteger committed = new AtomicInteger();
+			Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			CountDownLatch start = new CountDownLatch(1);
+			for (int i = 0; i < threads; i++) {
+				User user = users.get(i % users.size());
+				executor.execute(() -> {
+					try {
+						start.await();
+						while (remaining.getAndDecrement() > 0) {
+							ThreadLocalRandom random = ThreadLocalRandom.current();
+							Shop shop = shops.get(random.nextInt(shops.size()));
+							ReservationInputForm form = new ReservationInputForm();
+							form.setShopId(shop.getId());
+							form.setReservationDate(firstDate.plusDays(random.nextInt(days)));
+							form.setReservationTime(LocalTime.of(11, 0).plusMinutes(10L * random.nextInt(66)));
+							form.setNumberOfPeople(1 + random.nextInt(4));
+							if (reservationService.createReservation(form, shop, user)) {
+								committed.incrementAndGet();
+							}
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				});
+			}
+			long startNanos = System.nanoTime();
+			start.countDown();
+			executor.shutdown();
+			assertThat(executor.awaitTermination(5, TimeUnit.MINUTES)).isTrue();
+			double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+
+			int overbooked = 0;
+			for (Shop shop : shops) {
+				for (int day = 0; day < days; day++) {
+					for (int seats : occupancy(shop.getId(), firstDate.plusDays(day))) {
+						if (seats > CAPACITY) {
+							overbooked++;
+						}
+					}
+				}
+			}
+			logger.info(String.format("予約の処理件数: スレッド数=%d 試行=%d 登録=%d 定員超過の枠=%d 処理件数=%.0f件/秒",
+					threads, attempts, committed.get(), overbooked, attempts / seconds));
+			assertThat(errors).isEmpty();
+			assertThat(committed.get()).isPositive();
+			assertThat(overbooked).isZero();
+		}
+	}
+
+	// 予約時刻ごとの人数の合計（SUM(number_of_people)）から、各枠に滞在している人数を求める
+	private int[] occupancy(Integer shopId, LocalDate date) {
+		int[] occupancy = new int[SeatAvailability.SLOTS_PER_DAY];
+		jdbcTemplate.query("SELECT reservation_time, SUM(number_of_people) FROM reservations "
+				+ "WHERE shop_id = ? AND reservation_date = ? GROUP BY reservation_time", resultSet -> {
+					int from = resultSet.getTime(1).toLocalTime().toSecondOfDay() / 60 / SeatAvailability.SLOT_MINUTES;
+					for (int slot = from; slot < Math.min(from + STAY_MINUTES / SeatAvailability.SLOT_MINUTES, SeatAvailability.SLOTS_PER_DAY); slot++) {
+						occupancy[slot] += resultSet.getInt(2);
+					}
+				}, shopId, date);
+		return occupancy;
+	}
+}
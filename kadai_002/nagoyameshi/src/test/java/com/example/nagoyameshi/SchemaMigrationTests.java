@@ -0,0 +1,78 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+// db/migrationのマイグレーションを組み込みデータベース（H2のMySQL互換モード）に適用し、
+// 主な検索が追加したインデックスを使う実行計画になることを確認する
+class SchemaMigrationTests {
+
+	private static JdbcTemplate jdbcTemplate;
+
+	@BeforeAll
+	static void migrate() {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:migration;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+		Flyway.configure().dataSource(dataSource).load().migrate();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	private String explain(String sql) {
+		return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class).toLowerCase();
+	}
+
+	@Test
+	void favoriteLookupUsesUserShopIndex() {
+		assertThat(explain("SELECT id FROM favorite WHERE user_id = 1 AND shop_id = 2"))
+				.contains("uk_favorite_user_shop");
+	}
+
+	@Test
+	void latestReviewsUseShopCreatedIndex() {
+		assertThat(explain("SELECT id FROM reviews WHERE shop_id = 1 ORDER BY created_at DESC LIMIT 6"))
+				.contains("idx_reviews_shop_created");
+	}
+
+	@Test
+	void reservationListUsesUserCreatedIndex() {
+		assertThat(explain("SELECT id FROM reservations WHERE user_id = 1 ORDER BY created_at DESC LIMIT 10"))
+				.contains("idx_reservations_user_created");
+	}
+
+	@Test
+	void seatAvailabilityUsesShopDateIndex() {
+		assertThat(explain("SELECT reservation_time, SUM(number_of_people) FROM reservations WHERE shop_id = 1 AND reservation_date = '2025-01-01' GROUP BY reservation_time"))
+				.contains("idx_reservations_shop_date");
+	}
+
+	@Test
+	void tokenLookupsUseUniqueIndexes() {
+		assertThat(explain("SELECT id FROM password_reset_tokens WHERE token = 'abc'"))
+				.contains("uk_password_reset_tokens_token");
+		assertThat(explain("SELECT id FROM verification_tokens WHERE token = 'abc'"))
+				.contains("uk_verification_tokens_token");
+	}
+
+	@Test
+	void categoryRankingUsesCategoryRatingIndex() {
+		assertThat(explain("SELECT id FROM shops WHERE category_id = 1 ORDER BY average_rating DESC, id DESC LIMIT 7"))
+				.contains("idx_shops_category_rating");
+	}
+
+	@Test
+	void duplicateFavoritesAreRejected() {
+		jdbcTemplate.update("INSERT INTO roles (id, name) VALUES (1, 'ROLE_USER')");
+		jdbcTemplate.update("INSERT INTO users (id, name, furigana, email, postal_code, address, phone_number, password, enabled, role_id) "
+				+ "VALUES (1, 'name', 'furigana', 'user@example.com', '000-0000', 'address', '000', 'password', true, 1)");
+		jdbcTemplate.update("INSERT INTO shops (id, name, description, postal_code, address, opening_time, closing_time, regular_holiday, phone_number, capacity) "
+				+ "VALUES (1, 'shop', 'description', '000-0000', 'address', '10:00', '20:00', 'なし', '000', 10)");
+		jdbcTemplate.update("INSERT INTO favorite (user_id, shop_id) VALUES (1, 1)");
+
+		assertThat(jdbcTemplate.update("INSERT IGNORE INTO favorite (user_id, shop_id) VALUES (1, 1)")).isZero();
+	}
+}
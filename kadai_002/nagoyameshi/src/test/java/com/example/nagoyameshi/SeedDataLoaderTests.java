@@ -0,0 +1,56 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.nagoyameshi.task.SeedDataLoader;
+
+// 初期データの投入済みのデータベースでSeedDataLoaderをもう一度実行しても、スクリプトを実行せず件数が変わらないことを確認する
+// 再起動の所要時間の比較はSeedStartupBenchmarkTestsで行う
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:seed-data-loader;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=whsec_dummy",
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user",
+		"nagoyameshi.seed.enabled=true" })
+class SeedDataLoaderTests {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private SeedDataLoader seedDataLoader;
+
+	private int count(String table) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+	}
+
+	@Test
+	void unchangedSeedIsNotAppliedAgain() throws Exception {
+		int shops = count("shops");
+		int reviews = count("reviews");
+		assertThat(shops).isPositive();
+		assertThat(count("seed_history")).isEqualTo(1);
+
+		// 投入済みでなければ、削除した店舗がスクリプトで入れ直される
+		jdbcTemplate.update("DELETE FROM favorite WHERE shop_id = 1");
+		jdbcTemplate.update("DELETE FROM reviews WHERE shop_id = 1");
+		jdbcTemplate.update("DELETE FROM reservations WHERE shop_id = 1");
+		jdbcTemplate.update("DELETE FROM shops WHERE id = 1");
+		seedDataLoader.run(null);
+
+		assertThat(count("shops")).isEqualTo(shops - 1);
+		assertThat(count("seed_history")).isEqualTo(1);
+		assertThat(reviews).isPositive();
+	}
+}
@@ -0,0 +1,103 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// 初期データが投入済みのデータベースでアプリケーションを再起動したときの起動時間を、
+// 従来のspring.sql.init.mode=always（起動のたびにdata.sqlを実行する）とSeedDataLoader（ハッシュ値が同じなら省略する）で比べてログに出す
+// どちらも1回目の起動で投入済みにしてから計測し、JITの影響を減らすため2通りを交互に起動する
+// 計測用のため既定のmvn testでは実行しない（mvn test -Pbenchmark で実行する）
+@Tag("benchmark")
+class SeedStartupBenchmarkTests {
+	private static final Logger logger = LoggerFactory.getLogger(SeedStartupBenchmarkTests.class);
+
+	private static final int ROUNDS = 3;
+
+	@TempDir
+	static Path databaseDirectory;
+
+	private static final String[] COMMON_PROPERTIES = {
+			"server.port=0",
+			"spring.datasource.username=sa",
+			"spring.datasource.password=",
+			"spring.mail.host=localhost",
+			"stripe.api-key=sk_test_dummy",
+			"stripe.subscription.price-id=price_dummy",
+			"stripe.webhook-secret=whsec_dummy",
+			"stripe.success-url=http://localhost/subscription/success",
+			"stripe.cancel-url=http://localhost/subscription/cancel",
+			"stripe.return-url=http://localhost/user" };
+
+	private record Startup(long millis, int shops, int reviews) {
+	}
+
+	private Startup start(String database, String... properties) {
+		String url = "spring.datasource.url=jdbc:h2:file:" + databaseDirectory.resolve(database)
+				+ ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE";
+		long start = System.nanoTime();
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(NagoyameshiApplication.class)
+				.properties(COMMON_PROPERTIES)
+				.properties(url)
+				.properties(properties)
+				.run()) {
+			long millis = (System.nanoTime() - start) / 1_000_000;
+			JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+			return new Startup(millis,
+					jdbcTemplate.queryForObject("SELECT COUNT(*) FROM shops", Integer.class),
+					jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reviews", Integer.class));
+		}
+	}
+
+	// 従来の設定（初期データのスクリプトを毎回実行する）
+	private Startup startWithScriptInitialization() {
+		return start("sql-init",
+				"spring.sql.init.mode=always",
+				"spring.sql.init.data-locations=classpath:db/seed/data.sql",
+				"spring.sql.init.encoding=UTF-8");
+	}
+
+	private Startup startWithSeedLoader() {
+		return start("seed-loader", "nagoyameshi.seed.enabled=true");
+	}
+
+	@Test
+	void seedLoaderSkipsUnchangedSeedOnRestart() {
+		Startup firstScript = startWithScriptInitialization();
+		Startup firstLoader = startWithSeedLoader();
+		logger.info(String.format("1回目の起動（投入あり）: spring.sql.init %dms SeedDataLoader %dms", firstScript.millis(), firstLoader.millis()));
+
+		Map<String, Startup> restarts = new LinkedHashMap<>();
+		for (int round = 1; round <= ROUNDS; round++) {
+			restarts.put("spring.sql.init " + round + "回目", startWithScriptInitialization());
+			restarts.put("SeedDataLoader " + round + "回目", startWithSeedLoader());
+		}
+		restarts.forEach((name, startup) -> logger.info(String.format("再起動（投入済み）: %s %dms（店舗 %d件 レビュー %d件）",
+				name, startup.millis(), startup.shops(), startup.reviews())));
+		for (String method : new String[] { "spring.sql.init", "SeedDataLoader" }) {
+			long best = restarts.entrySet().stream()
+					.filter(entry -> entry.getKey().startsWith(method + " "))
+					.mapToLong(entry -> entry.getValue().millis())
+					.min().orElseThrow();
+			logger.info(String.format("再起動（投入済み）の最短: %s %dms", method, best));
+		}
+
+		// 再起動で初期データが重複せず、どちらの方法でも同じ件数になる
+		assertThat(restarts.values()).allSatisfy(startup -> {
+			assertThat(startup.shops()).isEqualTo(firstLoader.shops());
+			assertThat(startup.reviews()).isEqualTo(firstLoader.reviews());
+		});
+		assertThat(firstScript.shops()).isEqualTo(firstLoader.shops());
+	}
+}
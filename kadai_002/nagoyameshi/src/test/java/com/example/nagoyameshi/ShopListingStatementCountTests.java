@@ -0,0 +1,130 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.nagoyameshi.event.ShopChangedEvent;
+import com.example.nagoyameshi.metrics.Metrics;
+import com.example.nagoyameshi.security.UserDetailsImpl;
+import com.example.nagoyameshi.security.UserDetailsServiceImpl;
+import com.example.nagoyameshi.service.HomeShopCache;
+import com.example.nagoyameshi.sql.StatementCounter;
+
+// 店舗一覧（トップページ・店舗一覧・管理者の店舗一覧）のSQL文の数が、レビューの件数に左右されないことを確認する
+// 平均評価をshopsテーブルに持つ前は、店舗ごとにレビューを読み込んでいたため件数に比例して文が増えていた
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:shop-listing-statements;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=whsec_dummy",
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user",
+		"nagoyameshi.seed.enabled=true" })
+@AutoConfigureMockMvc
+class ShopListingStatementCountTests {
+	private static final Logger logger = LoggerFactory.getLogger(ShopListingStatementCountTests.class);
+
+	// 追加するレビュー投稿者の数（店舗ごとにこの人数分のレビューが増える）
+	private static final int REVIEWERS = 200;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private UserDetailsServiceImpl userDetailsService;
+
+	@Autowired
+	private HomeShopCache homeShopCache;
+
+	@Autowired
+	private StatementCounter statementCounter;
+
+	@Autowired
+	private Metrics metrics;
+
+	@Test
+	void statementCountDoesNotGrowWithReviews() throws Exception {
+		String email = jdbcTemplate.queryForObject("SELECT u.email FROM users u JOIN roles r ON r.id = u.role_id "
+				+ "WHERE r.name = 'ROLE_ADMIN' ORDER BY u.id LIMIT 1", String.class);
+		UserDetailsImpl admin = (UserDetailsImpl) userDetailsService.loadUserByUsername(email);
+
+		// 初回だけ読み込まれるキャッシュ（カテゴリー一覧など）の文を含めないよう、一度開いてから数える
+		countListingStatements(admin);
+		Map<String, Long> before = countListingStatements(admin);
+		int reviewsBefore = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reviews", Integer.class);
+
+		addReviews();
+
+		int reviewsAfter = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reviews", Integer.class);
+		Map<String, Long> after = countListingStatements(admin);
+
+		logger.info(String.format("レビュー %d件: %s", reviewsBefore, before));
+		logger.info(String.format("レビュー %d件: %s", reviewsAfter, after));
+		assertThat(reviewsAfter).isGreaterThan(reviewsBefore * 10);
+		assertThat(after).isEqualTo(before);
+	}
+
+	// トップページは一覧をキャッシュから返すため、キャッシュの読み込みも合わせて数える
+	private Map<String, Long> countListingStatements(UserDetailsImpl admin) throws Exception {
+		Map<String, Long> counts = new LinkedHashMap<>();
+
+		StatementCounter.Scope scope = statementCounter.begin("トップページの一覧の読み込み", Integer.MAX_VALUE, false);
+		try {
+			homeShopCache.onShopChanged(new ShopChangedEvent(this, null, false));
+			homeShopCache.refreshIfNeeded();
+			counts.put("トップページの一覧の読み込み", (long) scope.getCount());
+		} finally {
+			statementCounter.end(scope);
+		}
+
+		counts.put("/", perform("/", "/", admin));
+		counts.put("/shops", perform("/shops", "/shops", admin));
+		counts.put("/shops?order=ratingDesc", perform("/shops", "/shops?order=ratingDesc", admin));
+		counts.put("/admin/shops", perform("/admin/shops", "/admin/shops", admin));
+		return counts;
+	}
+
+	private long perform(String route, String url, UserDetailsImpl admin) throws Exception {
+		long before = statements(route);
+		int status = mockMvc.perform(get(url).with(user(admin))).andReturn().getResponse().getStatus();
+		assertThat(status).as(url).isEqualTo(200);
+		return statements(route) - before;
+	}
+
+	private long statements(String route) {
+		return metrics.counter("nagoyameshi_sql_statements", "コントローラーごとに実行したSQL文の数", "uri", route).sum();
+	}
+
+	// 投稿者を追加し、全店舗に1件ずつレビューを付けてから平均評価・件数を集計し直す
+	private void addReviews() {
+		jdbcTemplate.update("INSERT INTO users (name, furigana, email, postal_code, address, phone_number, password, enabled, role_id) "
+				+ "SELECT '評価 太郎', 'ヒョウカ タロウ', CONCAT('reviewer', n.\"X\", '@example.com'), '101-0022', '東京都千代田区神田練塀町300番地', "
+				+ "'090-1234-5678', 'password', TRUE, 2 FROM SYSTEM_RANGE(1, " + REVIEWERS + ") n");
+		jdbcTemplate.update("INSERT INTO reviews (shop_id, user_id, rating, comment) "
+				+ "SELECT s.id, u.id, MOD(s.id + u.id, 5) + 1, 'とても美味しかったです。' "
+				+ "FROM shops s CROSS JOIN users u WHERE u.email LIKE 'reviewer%@example.com'");
+		jdbcTemplate.update("UPDATE shops SET "
+				+ "average_rating = COALESCE((SELECT AVG(r.rating) FROM reviews r WHERE r.shop_id = shops.id), 0), "
+				+ "review_count = (SELECT COUNT(*) FROM reviews r WHERE r.shop_id = shops.id)");
+	}
+}
@@ -0,0 +1,140 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.example.nagoyameshi.dto.ShopListCursor;
+import com.example.nagoyameshi.service.ReviewService;
+import com.example.nagoyameshi.service.ShopService;
+
+// 店舗1万件・レビュー100万件を組み込みデータベース（H2のMySQL互換モード）に投入し、
+// 評価順の一覧について、従来のreviewsを集計する問い合わせ（GROUP BY s.id ORDER BY AVG(r.rating)）と
+// 保持した平均評価をインデックスで読むfindRankingSlice・findRankingSliceByCategoryIdの所要時間を比べてログに出す（実行計画はShopRankingPlanTestsで確認する）
+// メモリに収まらない件数のため、データベースは一時ディレクトリのファイルに作成する
+// H2は変更のない表への同じ問い合わせの結果を再利用するため、OPTIMIZE_REUSE_RESULTSを無効にして毎回実行させる
+// 計測用のため既定のmvn testでは実行しない（mvn test -Pbenchmark で実行する）
+@Tag("benchmark")
+@SpringBootTest(properties = {
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=whsec_dummy",
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user" })
+class ShopRankingBenchmarkTests {
+	private static final Logger logger = LoggerFactory.getLogger(ShopRankingBenchmarkTests.class);
+
+	private static final int SHOPS = 10_000;
+	private static final int CATEGORIES = 20;
+	// 全店舗にこの人数分のレビューを付ける（店舗1万件 × 100人 = 100万件）
+	private static final int REVIEWERS = 100;
+	private static final int PAGE_SIZE = 6;
+	private static final int RUNS = 3;
+
+	// 従来の問い合わせ（findAllByOrderByAverageRatingDesc・findByCategoryIdOrderByAverageRatingDescの1ページ分）
+	private static final String LEGACY_RANKING = "SELECT s.id FROM shops s LEFT JOIN reviews r ON r.shop_id = s.id "
+			+ "GROUP BY s.id ORDER BY AVG(r.rating) DESC LIMIT " + PAGE_SIZE;
+	private static final String LEGACY_CATEGORY_RANKING = "SELECT s.id FROM shops s LEFT JOIN reviews r ON r.shop_id = s.id "
+			+ "WHERE s.category_id = ? GROUP BY s.id ORDER BY AVG(r.rating) DESC LIMIT " + PAGE_SIZE;
+
+	private static boolean seeded = false;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ShopService shopService;
+
+	@Autowired
+	private ReviewService reviewService;
+
+	@DynamicPropertySource
+	static void database(DynamicPropertyRegistry registry) throws IOException {
+		String path = Files.createTempDirectory("ranking-benchmark").resolve("nagoyameshi").toString();
+		registry.add("spring.datasource.url",
+				() -> "jdbc:h2:file:" + path + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE;OPTIMIZE_REUSE_RESULTS=FALSE");
+	}
+
+	@BeforeEach
+	void seed() {
+		if (seeded) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		jdbcTemplate.update("INSERT INTO roles (id, name) VALUES (1, 'ROLE_USER')");
+		jdbcTemplate.update("INSERT INTO categories (id, name) SELECT n, CONCAT('カテゴリー', n) FROM SYSTEM_RANGE(1, " + CATEGORIES + ") AS r(n)");
+		jdbcTemplate.update("INSERT INTO shops (id, name, category_id, description, postal_code, address, opening_time, closing_time, "
+				+ "regular_holiday, phone_number, capacity) "
+				+ "SELECT n, CONCAT('店舗', n), MOD(n, " + CATEGORIES + ") + 1, '説明', '460-0001', '愛知県名古屋市中区', "
+				+ "'10:00', '22:00', 'なし', '052-000-0000', 30 FROM SYSTEM_RANGE(1, " + SHOPS + ") AS r(n)");
+		jdbcTemplate.update("INSERT INTO users (id, name, furigana, email, postal_code, address, phone_number, password, enabled, role_id) "
+				+ "SELECT n, '評価 太郎', 'ヒョウカ タロウ', CONCAT('reviewer', n, '@example.com'), '460-0001', '愛知県名古屋市中区', "
+				+ "'090-0000-0000', 'password', TRUE, 1 FROM SYSTEM_RANGE(1, " + REVIEWERS + ") AS r(n)");
+		jdbcTemplate.update("INSERT INTO reviews (shop_id, user_id, rating, comment) "
+				+ "SELECT s.id, u.id, MOD(s.id * 7 + u.id * 3, 5) + 1, 'とても美味しかったです。' FROM shops s CROSS JOIN users u");
+		int reconciled = reviewService.reconcileShopRatings();
+		seeded = true;
+
+		logger.info(String.format("投入: 店舗 %d件 レビュー %d件（平均評価の集計 %d件）%dms",
+				jdbcTemplate.queryForObject("SELECT COUNT(*) FROM shops", Integer.class),
+				jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reviews", Integer.class),
+				reconciled, System.currentTimeMillis() - start));
+	}
+
+	// RUNS回実行し、最も短い所要時間（ミリ秒）を返す
+	private double measure(Supplier<?> query) {
+		double best = Double.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			query.get();
+			best = Math.min(best, (System.nanoTime() - start) / 1_000_000.0);
+		}
+		return best;
+	}
+
+	// 1ページ目と、カーソルで辿った10ページ目の所要時間を従来の問い合わせと比べる
+	@Test
+	void rankingIsFasterThanGroupByAverage() {
+		List<String> results = new ArrayList<>();
+
+		double legacy = measure(() -> jdbcTemplate.queryForList(LEGACY_RANKING, Integer.class));
+		double legacyCategory = measure(() -> jdbcTemplate.queryForList(LEGACY_CATEGORY_RANKING, Integer.class, 1));
+		double ranking = measure(() -> shopService.findShopsByOrderByAverageRatingDesc(null, null, ShopListCursor.FIRST, PAGE_SIZE));
+		double categoryRanking = measure(() -> shopService.findShopsByOrderByAverageRatingDesc(1, null, ShopListCursor.FIRST, PAGE_SIZE));
+
+		ShopListCursor cursor = ShopListCursor.FIRST;
+		for (int page = 1; page < 10; page++) {
+			var slice = shopService.findShopsByOrderByAverageRatingDesc(1, null, cursor, PAGE_SIZE);
+			cursor = ShopListCursor.after(slice.getContent().get(slice.getNumberOfElements() - 1));
+		}
+		ShopListCursor tenth = cursor;
+		double categoryRankingTenth = measure(() -> shopService.findShopsByOrderByAverageRatingDesc(1, null, tenth, PAGE_SIZE));
+
+		results.add(String.format("全店舗: 従来 %.1fms 保持した平均評価 %.1fms", legacy, ranking));
+		results.add(String.format("カテゴリー: 従来 %.1fms 保持した平均評価 %.1fms（10ページ目 %.1fms）", legacyCategory, categoryRanking, categoryRankingTenth));
+		results.forEach(result -> logger.info(String.format("評価順の一覧（店舗 %d件・レビュー %d件）: %s", SHOPS, SHOPS * REVIEWERS, result)));
+
+		assertThat(ranking).isLessThan(legacy);
+		assertThat(categoryRanking).isLessThan(legacyCategory);
+		assertThat(categoryRankingTenth).isLessThan(legacyCategory);
+	}
+}
@@ -0,0 +1,72 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.nagoyameshi.dto.ShopListCursor;
+import com.example.nagoyameshi.service.ShopService;
+import com.example.nagoyameshi.sql.StatementCounter;
+
+// 評価順の一覧でリポジトリが実行するSQL文を取り出し、保持した平均評価のインデックスを使う実行計画になることを確認する
+// 件数を増やした所要時間の比較はShopRankingBenchmarkTestsで行う
+// H2はカテゴリーの等価条件の後ろの列で並んでいることを判断しないため、カテゴリー内の行は並べ替える（MySQLはインデックス順に読む）
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:shop-ranking-plan;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=whsec_dummy",
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user",
+		"nagoyameshi.seed.enabled=true" })
+class ShopRankingPlanTests {
+	private static final int PAGE_SIZE = 6;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ShopService shopService;
+
+	@Autowired
+	private StatementCounter statementCounter;
+
+	// リポジトリが実行したSQL文を取り出し、同じ値を渡して実行計画を確認する
+	private String explainRepositoryQuery(Runnable query, Object... parameters) {
+		StatementCounter.Scope scope = statementCounter.begin("実行計画の確認", Integer.MAX_VALUE, false);
+		try {
+			query.run();
+			String sql = scope.getRepeated(1).keySet().iterator().next();
+			return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, parameters).toLowerCase();
+		} finally {
+			statementCounter.end(scope);
+		}
+	}
+
+	@Test
+	void categoryRankingUsesCategoryRatingIndex() {
+		ShopListCursor first = ShopListCursor.FIRST;
+		String plan = explainRepositoryQuery(
+				() -> shopService.findShopsByOrderByAverageRatingDesc(1, null, first, PAGE_SIZE),
+				1, first.averageRating(), first.averageRating(), first.id(), PAGE_SIZE + 1);
+
+		assertThat(plan).contains("idx_shops_category_rating");
+	}
+
+	@Test
+	void rankingUsesRatingIndex() {
+		ShopListCursor first = ShopListCursor.FIRST;
+		String plan = explainRepositoryQuery(
+				() -> shopService.findShopsByOrderByAverageRatingDesc(null, null, first, PAGE_SIZE),
+				first.averageRating(), first.averageRating(), first.id(), PAGE_SIZE + 1);
+
+		assertThat(plan).contains("idx_shops_rating").contains("index sorted");
+	}
+}
@@ -0,0 +1,98 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.nagoyameshi.dto.ShopListItem;
+import com.example.nagoyameshi.form.CategoryEditForm;
+import com.example.nagoyameshi.repository.ShopRepository;
+import com.example.nagoyameshi.search.ShopSearchIndex;
+import com.example.nagoyameshi.service.CategoryService;
+
+// カテゴリ名を変更すると、検索インデックスに保持したカテゴリ名も新しい名前に置き換わることと、
+// 作成前に検索が同時に届いても全店舗の読み込みは1回だけ行われることを確認する
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:shop-search-index;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=whsec_dummy",
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user",
+		"nagoyameshi.seed.enabled=true" })
+class ShopSearchIndexTests {
+	// 店舗名・住所には含まれない名前にする
+	private static final String NEW_NAME = "ジビエ料理";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private CategoryService categoryService;
+
+	@Autowired
+	private ShopSearchIndex shopSearchIndex;
+
+	@Autowired
+	private ShopRepository shopRepository;
+
+	@Test
+	void categoryRenameIsReindexed() {
+		Integer categoryId = jdbcTemplate.queryForObject("SELECT category_id FROM shops GROUP BY category_id ORDER BY COUNT(*) DESC LIMIT 1", Integer.class);
+		List<Integer> shopIds = jdbcTemplate.queryForList("SELECT id FROM shops WHERE category_id = ?", Integer.class, categoryId);
+		assertThat(shopSearchIndex.search(NEW_NAME)).isEmpty();
+
+		CategoryEditForm form = new CategoryEditForm();
+		form.setId(categoryId);
+		form.setName(NEW_NAME);
+		categoryService.updateCategory(form);
+
+		assertThat(shopSearchIndex.search(NEW_NAME)).containsExactlyInAnyOrderElementsOf(shopIds);
+	}
+
+	@Test
+	void concurrentFirstSearchesBuildOnce() throws Exception {
+		Page<ShopListItem> shops = shopRepository.findAllListItems(Pageable.unpaged());
+		ShopRepository slowRepository = mock(ShopRepository.class);
+		when(slowRepository.findAllListItems(any())).thenAnswer(invocation -> {
+			Thread.sleep(200);
+			return shops;
+		});
+		ShopSearchIndex index = new ShopSearchIndex(slowRepository);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Callable<List<Integer>>> searches = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				searches.add(() -> index.search("名古屋"));
+			}
+			for (Future<List<Integer>> result : executor.invokeAll(searches)) {
+				assertThat(result.get()).isNotEmpty();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		verify(slowRepository, times(1)).findAllListItems(any());
+	}
+}
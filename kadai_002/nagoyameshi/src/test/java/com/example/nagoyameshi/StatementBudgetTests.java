@@ -0,0 +1,134 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.example.nagoyameshi.metrics.Metrics;
+import com.example.nagoyameshi.security.UserDetailsImpl;
+import com.example.nagoyameshi.security.UserDetailsServiceImpl;
+import com.example.nagoyameshi.service.FavoriteService;
+import com.example.nagoyameshi.sql.StatementBudgetExceededException;
+import com.example.nagoyameshi.sql.StatementCounter;
+
+// アプリケーションを組み込みデータベース（H2のMySQL互換モード）と初期データで起動し、
+// 主な画面のSQL文の数がコントローラーに宣言した上限（@StatementBudget）に収まることを確認する
+// 上限を超えるとその文の実行時に例外になるため、N+1が入り込んだ画面はステータス200にならない
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:statement-budget;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=whsec_dummy",
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user",
+		"nagoyameshi.seed.enabled=true",
+		"nagoyameshi.sql.fail-on-budget-exceeded=true" })
+@AutoConfigureMockMvc
+class StatementBudgetTests {
+	private static final Logger logger = LoggerFactory.getLogger(StatementBudgetTests.class);
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private UserDetailsServiceImpl userDetailsService;
+
+	@Autowired
+	private FavoriteService favoriteService;
+
+	@Autowired
+	private StatementCounter statementCounter;
+
+	@Autowired
+	private Metrics metrics;
+
+	private Integer userId;
+	private UserDetailsImpl userDetails;
+
+	// お気に入り・予約が複数件ある会員で確認する（1件ずつ読み込んでいれば件数分の文が増える）
+	@BeforeEach
+	void login() {
+		userId = jdbcTemplate.queryForObject("SELECT f.user_id FROM favorite f JOIN reservations r ON r.user_id = f.user_id "
+				+ "GROUP BY f.user_id ORDER BY COUNT(DISTINCT f.id) + COUNT(DISTINCT r.id) DESC LIMIT 1", Integer.class);
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM favorite WHERE user_id = ?", Integer.class, userId)).isGreaterThan(2);
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reservations WHERE user_id = ?", Integer.class, userId)).isGreaterThan(2);
+		String email = jdbcTemplate.queryForObject("SELECT email FROM users WHERE id = ?", String.class, userId);
+		userDetails = (UserDetailsImpl) userDetailsService.loadUserByUsername(email);
+	}
+
+	// 同じ画面を2回開き、キャッシュが空のとき（読み込みを含む）と温まった後の両方を確認する
+	private void assertWithinBudget(String route, MockHttpServletRequestBuilder request) throws Exception {
+		for (int i = 1; i <= 2; i++) {
+			long before = statements(route);
+			int status = mockMvc.perform(request.with(user(userDetails))).andReturn().getResponse().getStatus();
+			logger.info(String.format("SQL文の数: %s %d回目 %d件", route, i, statements(route) - before));
+			assertThat(status).as(route).isEqualTo(200);
+		}
+	}
+
+	private long statements(String route) {
+		return metrics.counter("nagoyameshi_sql_statements", "コントローラーごとに実行したSQL文の数", "uri", route).sum();
+	}
+
+	@Test
+	void home() throws Exception {
+		assertWithinBudget("/", get("/"));
+	}
+
+	@Test
+	void shopList() throws Exception {
+		assertWithinBudget("/shops", get("/shops"));
+		assertWithinBudget("/shops", get("/shops").param("keyword", "名古屋"));
+		assertWithinBudget("/shops", get("/shops").param("order", "ratingDesc"));
+	}
+
+	@Test
+	void shopDetail() throws Exception {
+		Integer shopId = jdbcTemplate.queryForObject("SELECT shop_id FROM reviews GROUP BY shop_id ORDER BY COUNT(*) DESC LIMIT 1", Integer.class);
+		assertWithinBudget("/shops/{id}", get("/shops/{id}", shopId));
+	}
+
+	@Test
+	void reservations() throws Exception {
+		assertWithinBudget("/reservations", get("/reservations"));
+	}
+
+	@Test
+	void favorites() throws Exception {
+		assertWithinBudget("/favorites", get("/favorites"));
+	}
+
+	// 店舗をまとめて読み込まない問い合わせでは、同じ文の繰り返しとして上限を超える
+	@Test
+	void detectsRepeatedStatements() {
+		StatementCounter.Scope scope = statementCounter.begin("N+1の確認", 3, true);
+		try {
+			assertThatThrownBy(() -> favoriteService.getFavoritesByUser(userId, PageRequest.of(0, 10)))
+					.isInstanceOf(StatementBudgetExceededException.class)
+					.hasMessageContaining("from shops");
+			logger.info(String.format("SQL文の数: N+1の確認 %d件 %s", scope.getCount(), scope.describeRepeated(2)));
+		} finally {
+			statementCounter.end(scope);
+		}
+	}
+}
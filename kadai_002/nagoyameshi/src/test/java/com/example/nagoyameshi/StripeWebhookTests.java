@@ -0,0 +1,149 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.stripe.net.Webhook;
+
+// StripeのWebhookを実際の署名付きで受け取り、インボックスの処理後の会員のロールを確認する
+// 署名の誤り・同じイベントの再送・古いイベントの遅延到着のいずれでも、ロールが誤って変わらないことを確かめる
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:stripe-webhook;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE",
+		"spring.datasource.username=sa",
+		"spring.datasource.password=",
+		"spring.mail.host=localhost",
+		"stripe.api-key=sk_test_dummy",
+		"stripe.subscription.price-id=price_dummy",
+		"stripe.webhook-secret=" + StripeWebhookTests.WEBHOOK_SECRET,
+		"stripe.success-url=http://localhost/subscription/success",
+		"stripe.cancel-url=http://localhost/subscription/cancel",
+		"stripe.return-url=http://localhost/user",
+		"nagoyameshi.seed.enabled=true" })
+@AutoConfigureMockMvc
+class StripeWebhookTests {
+	static final String WEBHOOK_SECRET = "whsec_dummy";
+
+	private static final int ROLE_USER = 1;
+	private static final int ROLE_PREMIUM = 2;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void wrongSignatureIsRejected() throws Exception {
+		long now = Instant.now().getEpochSecond();
+		String payload = subscriptionEvent("evt_wrong_signature", "customer.subscription.deleted", now, "cus_wrong_signature", "canceled");
+
+		mockMvc.perform(post("/stripe/webhook").contentType(MediaType.APPLICATION_JSON).content(payload)
+				.header("Stripe-Signature", "t=" + now + ",v1=" + Webhook.Util.computeHmacSha256("whsec_other", now + "." + payload)))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(post("/stripe/webhook").contentType(MediaType.APPLICATION_JSON).content(payload + " ")
+				.header("Stripe-Signature", signature(payload)))
+				.andExpect(status().isBadRequest());
+
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stripe_webhook_events WHERE event_id = 'evt_wrong_signature'", Integer.class))
+				.isZero();
+	}
+
+	@Test
+	void duplicateDeliveryIsAppliedOnce() throws Exception {
+		int userId = customer("cus_duplicate", ROLE_USER);
+		long principalVersion = principalVersion(userId);
+		String payload = subscriptionEvent("evt_duplicate", "customer.subscription.updated", Instant.now().getEpochSecond(), "cus_duplicate", "active");
+
+		deliver(payload);
+		deliver(payload);
+		awaitProcessed("evt_duplicate");
+
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stripe_webhook_events WHERE event_id = 'evt_duplicate'", Integer.class))
+				.isEqualTo(1);
+		assertThat(roleId(userId)).isEqualTo(ROLE_PREMIUM);
+		assertThat(principalVersion(userId)).isEqualTo(principalVersion + 1);
+	}
+
+	@Test
+	void staleEventDeliveredAfterDeletionIsIgnored() throws Exception {
+		int userId = customer("cus_out_of_order", ROLE_PREMIUM);
+		long created = Instant.now().getEpochSecond();
+
+		// 解約のイベントが先に届き、その前に作成された「有効」の更新イベントが再送で後から届く
+		deliver(subscriptionEvent("evt_deleted", "customer.subscription.deleted", created, "cus_out_of_order", "canceled"));
+		awaitProcessed("evt_deleted");
+		assertThat(roleId(userId)).isEqualTo(ROLE_USER);
+
+		deliver(subscriptionEvent("evt_stale_active", "customer.subscription.updated", created - 60, "cus_out_of_order", "active"));
+		awaitProcessed("evt_stale_active");
+		assertThat(roleId(userId)).isEqualTo(ROLE_USER);
+
+		// 同じ秒に作成された更新イベントも、解約より後とはみなさない
+		deliver(subscriptionEvent("evt_same_second_active", "customer.subscription.updated", created, "cus_out_of_order", "active"));
+		awaitProcessed("evt_same_second_active");
+		assertThat(roleId(userId)).isEqualTo(ROLE_USER);
+
+		// 解約より後に作成されたイベント（再契約）は反映する
+		deliver(subscriptionEvent("evt_resubscribed", "customer.subscription.updated", created + 60, "cus_out_of_order", "active"));
+		awaitProcessed("evt_resubscribed");
+		assertThat(roleId(userId)).isEqualTo(ROLE_PREMIUM);
+	}
+
+	private int customer(String stripeCustomerId, int roleId) {
+		Integer userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE role_id <> 3 AND stripe_customer_id IS NULL ORDER BY id LIMIT 1",
+				Integer.class);
+		jdbcTemplate.update("UPDATE users SET stripe_customer_id = ?, role_id = ? WHERE id = ?", stripeCustomerId, roleId, userId);
+		return userId;
+	}
+
+	private int roleId(int userId) {
+		return jdbcTemplate.queryForObject("SELECT role_id FROM users WHERE id = ?", Integer.class, userId);
+	}
+
+	private long principalVersion(int userId) {
+		return jdbcTemplate.queryForObject("SELECT principal_version FROM users WHERE id = ?", Long.class, userId);
+	}
+
+	private void deliver(String payload) throws Exception {
+		mockMvc.perform(post("/stripe/webhook").contentType(MediaType.APPLICATION_JSON).content(payload)
+				.header("Stripe-Signature", signature(payload)))
+				.andExpect(status().isOk());
+	}
+
+	// 受信のコミット後にStripeWebhookProcessorが別スレッドで処理するため、処理済みになるまで待つ
+	private void awaitProcessed(String eventId) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (System.currentTimeMillis() < deadline) {
+			String status = jdbcTemplate.queryForObject("SELECT status FROM stripe_webhook_events WHERE event_id = ?", String.class, eventId);
+			if ("PROCESSED".equals(status)) {
+				return;
+			}
+			Thread.sleep(50);
+		}
+		throw new AssertionError("Webhookイベントが処理されませんでした: " + eventId);
+	}
+
+	// Stripeと同じ形式の署名（t=タイムスタンプ,v1=HMAC-SHA256）
+	private String signature(String payload) throws Exception {
+		long timestamp = Instant.now().getEpochSecond();
+		return "t=" + timestamp + ",v1=" + Webhook.Util.computeHmacSha256(WEBHOOK_SECRET, timestamp + "." + payload);
+	}
+
+	private String subscriptionEvent(String eventId, String type, long created, String customer, String status) {
+		return """
+				{"id": "%s", "object": "event", "api_version": "2024-12-18.acacia", "created": %d, "type": "%s",
+				 "data": {"object": {"id": "sub_%s", "object": "subscription", "customer": "%s", "status": "%s"}}}
+				""".formatted(eventId, created, type, customer, customer, status);
+	}
+}
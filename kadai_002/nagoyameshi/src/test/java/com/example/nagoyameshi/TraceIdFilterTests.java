@@ -0,0 +1,76 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.example.nagoyameshi.metrics.TraceIdFilter;
+
+// リクエストの処理中だけMDCにトレースid・スパンidが入り、traceparent・X-Request-Idを引き継いで応答に返すことを確認する
+class TraceIdFilterTests {
+
+	private record Traced(String traceId, String spanId, String responseHeader) {
+	}
+
+	private Traced filter(MockHttpServletRequest request) throws Exception {
+		AtomicReference<String> traceId = new AtomicReference<>();
+		AtomicReference<String> spanId = new AtomicReference<>();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		new TraceIdFilter().doFilter(request, response, new MockFilterChain(new HttpServlet() {
+			@Override
+			protected void service(HttpServletRequest servletRequest, HttpServletResponse servletResponse) {
+				traceId.set(MDC.get(TraceIdFilter.TRACE_ID));
+				spanId.set(MDC.get(TraceIdFilter.SPAN_ID));
+			}
+		}));
+		assertThat(MDC.get(TraceIdFilter.TRACE_ID)).isNull();
+		assertThat(MDC.get(TraceIdFilter.SPAN_ID)).isNull();
+		return new Traced(traceId.get(), spanId.get(), response.getHeader(TraceIdFilter.REQUEST_ID_HEADER));
+	}
+
+	@Test
+	void generatesIdsWhenNoHeaderIsGiven() throws Exception {
+		Traced first = filter(new MockHttpServletRequest("GET", "/shops"));
+		Traced second = filter(new MockHttpServletRequest("GET", "/shops"));
+
+		assertThat(first.traceId()).matches("[0-9a-f]{32}");
+		assertThat(first.spanId()).matches("[0-9a-f]{16}");
+		assertThat(first.responseHeader()).isEqualTo(first.traceId());
+		assertThat(second.traceId()).isNotEqualTo(first.traceId());
+	}
+
+	@Test
+	void continuesTraceparent() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/shops");
+		request.addHeader("traceparent", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+		request.addHeader(TraceIdFilter.REQUEST_ID_HEADER, "ignored");
+
+		Traced traced = filter(request);
+
+		assertThat(traced.traceId()).isEqualTo("4bf92f3577b34da6a3ce929d0e0e4736");
+		assertThat(traced.spanId()).isNotEqualTo("00f067aa0ba902b7");
+		assertThat(traced.responseHeader()).isEqualTo("4bf92f3577b34da6a3ce929d0e0e4736");
+	}
+
+	@Test
+	void continuesRequestIdAndRejectsUnsafeValues() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/shops");
+		request.addHeader(TraceIdFilter.REQUEST_ID_HEADER, "lb-12345");
+		assertThat(filter(request).traceId()).isEqualTo("lb-12345");
+
+		MockHttpServletRequest unsafe = new MockHttpServletRequest("GET", "/shops");
+		unsafe.addHeader("traceparent", "00-00000000000000000000000000000000-00f067aa0ba902b7-01");
+		unsafe.addHeader(TraceIdFilter.REQUEST_ID_HEADER, "abc\nforged log line");
+		assertThat(filter(unsafe).traceId()).matches("[0-9a-f]{32}");
+	}
+}
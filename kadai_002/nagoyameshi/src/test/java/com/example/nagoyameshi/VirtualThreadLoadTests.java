@@ -0,0 +1,229 @@
+package com.example.nagoyameshi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.example.nagoyameshi.thread.PinnedThreadMonitor;
+import com.example.nagoyameshi.thread.TaskThreads;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+// Tomcatのリクエスト処理をプラットフォームスレッド（既定の最大200）と仮想スレッドで動かし、
+// 同時接続数ごとの応答時間（p50・p99）と処理件数を比べてログに出す
+// 1件の処理は「コネクションプール（最大5）から借りてクエリを実行 → 外部サービス（Stripe・SMTPなど）の応答待ち」を模している
+// あわせて、synchronizedの中で応答を待つと仮想スレッドがキャリアスレッドを固定し、PinnedThreadMonitorが記録することを確認する
+class VirtualThreadLoadTests {
+	private static final Logger logger = LoggerFactory.getLogger(VirtualThreadLoadTests.class);
+
+	private static final int MAXIMUM_POOL_SIZE = 5;
+	private static final long QUERY_MILLIS = 1;
+	private static final long REMOTE_MILLIS = 500;
+	private static final int ROUNDS = 2;
+
+	@TempDir
+	static Path baseDirectory;
+
+	private static HikariDataSource dataSource;
+	private static Tomcat platformTomcat;
+	private static Tomcat virtualTomcat;
+	private static ExecutorService clientExecutor;
+	private static HttpClient client;
+
+	@BeforeAll
+	static void start() throws Exception {
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:virtual-thread-load;DB_CLOSE_DELAY=-1");
+		config.setMaximumPoolSize(MAXIMUM_POOL_SIZE);
+		dataSource = new HikariDataSource(config);
+
+		platformTomcat = startTomcat("platform", false);
+		virtualTomcat = startTomcat("virtual", true);
+		clientExecutor = Executors.newFixedThreadPool(2);
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clientExecutor).build();
+	}
+
+	@AfterAll
+	static void stop() throws Exception {
+		for (Tomcat tomcat : new Tomcat[] { platformTomcat, virtualTomcat }) {
+			tomcat.stop();
+			tomcat.destroy();
+		}
+		dataSource.close();
+		clientExecutor.shutdownNow();
+	}
+
+	// spring.threads.virtual.enabled=true のときにSpring Bootが行う設定と同じく、コネクターの処理を仮想スレッドに任せる
+	private static Tomcat startTomcat(String name, boolean virtual) throws Exception {
+		Tomcat tomcat = new Tomcat();
+		tomcat.setBaseDir(Files.createDirectories(baseDirectory.resolve(name)).toString());
+		tomcat.setPort(0);
+		Context context = tomcat.addContext("", null);
+		Tomcat.addServlet(context, "page", new HttpServlet() {
+			@Override
+			protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+				try {
+					handle(request.getRequestURI().equals("/pinned"));
+				} catch (SQLException | InterruptedException e) {
+					throw new IOException(e);
+				}
+				response.setContentType("text/plain");
+				response.getWriter().write("ok");
+			}
+		});
+		context.addServletMappingDecoded("/", "page");
+		if (virtual) {
+			tomcat.getConnector().getProtocolHandler().setExecutor(new VirtualThreadExecutor("tomcat-handler-"));
+		}
+		tomcat.getConnector();
+		tomcat.start();
+		return tomcat;
+	}
+
+	private static void handle(boolean pinned) throws SQLException, InterruptedException {
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.executeQuery("SELECT 1").close();
+			Thread.sleep(QUERY_MILLIS);
+		}
+		if (pinned) {
+			// ロックを持ったまま外部サービスの応答を待つライブラリの代わり
+			synchronized (new Object()) {
+				Thread.sleep(REMOTE_MILLIS);
+			}
+		} else {
+			Thread.sleep(REMOTE_MILLIS);
+		}
+	}
+
+	private static String url(Tomcat tomcat, String path) {
+		return "http://localhost:" + tomcat.getConnector().getLocalPort() + path;
+	}
+
+	// 応答時間の比較は計測用のため既定のmvn testでは実行しない（mvn test -Pbenchmark で実行する）
+	@Tag("benchmark")
+	@ParameterizedTest
+	@ValueSource(ints = { 50, 400, 800 })
+	void compareLatency(int clients) throws Exception {
+		// 計測前に両方のサーバーを一度ずつ通しておく
+		run(url(platformTomcat, "/"), clients, 1);
+		run(url(virtualTomcat, "/"), clients, 1);
+
+		Result platform = run(url(platformTomcat, "/"), clients, ROUNDS);
+		Result virtual = run(url(virtualTomcat, "/"), clients, ROUNDS);
+
+		logger.info(String.format("リクエスト処理: 同時接続数=%d プール=%d プラットフォーム %s / 仮想スレッド %s（p99 %.2f倍）",
+				clients, MAXIMUM_POOL_SIZE, platform, virtual, (double) platform.p99Millis() / virtual.p99Millis()));
+		assertThat(platform.failures()).isZero();
+		assertThat(virtual.failures()).isZero();
+	}
+
+	@Test
+	void pinnedCarrierThreadsAreRecorded() throws Exception {
+		MockEnvironment environment = new MockEnvironment().withProperty("spring.threads.virtual.enabled", "true");
+		PinnedThreadMonitor monitor = new PinnedThreadMonitor(new TaskThreads(environment), dataSource, true, 20);
+		monitor.start();
+		try {
+			int clients = 10;
+			Result unpinned = run(url(virtualTomcat, "/"), clients, 1);
+			Result pinned = run(url(virtualTomcat, "/pinned"), clients, 1);
+			logger.info(String.format("キャリアスレッドの固定: 同時接続数=%d 固定なし %s / synchronizedの中で待つ %s", clients, unpinned, pinned));
+			assertThat(pinned.failures()).isZero();
+
+			// JFRのイベントは約1秒ごとにまとめて届く
+			for (int i = 0; i < 100 && monitor.getPinnedCount() == 0; i++) {
+				Thread.sleep(100);
+			}
+			logger.info(String.format("キャリアスレッドの固定: 記録 %d件（計%dms） %s", monitor.getPinnedCount(), monitor.getPinnedMillis(), monitor.getPinnedSites()));
+			assertThat(monitor.getPinnedCount()).isPositive();
+			assertThat(monitor.getPinnedSites().keySet()).anySatisfy(site -> assertThat(site).startsWith(VirtualThreadLoadTests.class.getName() + ".handle:"));
+		} finally {
+			monitor.stop();
+		}
+	}
+
+	private record Result(int requests, int failures, long p50Millis, long p99Millis, double throughput) {
+		@Override
+		public String toString() {
+			return String.format("p50=%dms p99=%dms %.0f件/秒", p50Millis, p99Millis, throughput);
+		}
+	}
+
+	// 各クライアントが rounds 回ずつ続けてリクエストを送る
+	// 送信は非同期APIで少数のスレッドから行う（クライアントのスレッドが多いと、CPUの少ない環境ではサーバーのスレッドと取り合って結果が偏るため）
+	private Result run(String url, int clients, int rounds) {
+		int requests = clients * rounds;
+		long[] latencies = new long[requests];
+		AtomicInteger index = new AtomicInteger();
+		AtomicInteger failures = new AtomicInteger();
+		CompletableFuture<Void> start = new CompletableFuture<>();
+		CompletableFuture<?>[] chains = new CompletableFuture<?>[clients];
+		for (int i = 0; i < clients; i++) {
+			CompletableFuture<Void> chain = start;
+			for (int round = 0; round < rounds; round++) {
+				chain = chain.thenCompose(ignored -> {
+					long startNanos = System.nanoTime();
+					return client.sendAsync(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString())
+							.handle((response, error) -> {
+								latencies[index.getAndIncrement()] = System.nanoTime() - startNanos;
+								if (error != null || response.statusCode() != 200) {
+									failures.incrementAndGet();
+								}
+								return null;
+							});
+				});
+			}
+			chains[i] = chain;
+		}
+		long startNanos = System.nanoTime();
+		start.complete(null);
+		CompletableFuture.allOf(chains).orTimeout(180, TimeUnit.SECONDS).join();
+		long elapsedNanos = System.nanoTime() - startNanos;
+
+		long[] completed = Arrays.copyOf(latencies, index.get());
+		Arrays.sort(completed);
+		return new Result(requests, failures.get(),
+				percentileMillis(completed, 0.50), percentileMillis(completed, 0.99),
+				completed.length / (elapsedNanos / 1_000_000_000.0));
+	}
+
+	private static long percentileMillis(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int position = (int) Math.ceil(percentile * sorted.length) - 1;
+		return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, position)]);
+	}
+}